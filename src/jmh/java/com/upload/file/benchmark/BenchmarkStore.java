@@ -0,0 +1,156 @@
+package com.upload.file.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import com.upload.file.util.FileSystemDocumentDao;
+import com.upload.file.util.FileUploadMetadata;
+import com.upload.file.util.FileUploadSource;
+
+/**
+ * Creates the data stores used by the benchmarks in the working directory.
+ *
+ * A store of a given number of small files is built once, in batches so
+ * the fsyncs are grouped, and reused by later trials with the same number
+ * of files. The meta data of files inserted by the benchmarks is not removed,
+ * so the store grows slightly while a benchmark runs.
+ *
+ * @author Poornima
+ */
+public final class BenchmarkStore {
+
+    /** Number of distinct authors in a generated store */
+    public static final int AUTHORS = 100;
+
+    /** Number of distinct dates in a generated store */
+    public static final int DATES = 365;
+
+    private static final String MARKER_FILE_NAME = FileSystemDocumentDao.DIRECTORY + ".benchmark";
+    private static final byte[] SMALL_FILE = "benchmark".getBytes(StandardCharsets.US_ASCII);
+    private static final int BATCH_SIZE = 1000;
+
+    private BenchmarkStore() {
+    }
+
+    /**
+     * Opens a store with the given number of files, building it if needed.
+     *
+     * @param storedFiles The number of files in the store
+     * @return The initialized data access object
+     * @throws IOException
+     */
+    public static FileSystemDocumentDao open(int storedFiles) throws IOException {
+        Path marker = Paths.get(MARKER_FILE_NAME);
+        boolean reuse = Files.exists(marker)
+                && new String(Files.readAllBytes(marker), StandardCharsets.US_ASCII).equals(String.valueOf(storedFiles));
+        if (!reuse) {
+            delete();
+        }
+        FileSystemDocumentDao dao = new FileSystemDocumentDao();
+        dao.setSnapshotInterval(Integer.MAX_VALUE);
+        dao.init();
+        if (!reuse) {
+            List<FileUploadSource> batch = new ArrayList<FileUploadSource>(BATCH_SIZE);
+            for (int i = 0; i < storedFiles; i++) {
+                batch.add(new SmallFile(new FileUploadMetadata("file-" + i + ".txt", date(i % DATES), author(i % AUTHORS))));
+                if (batch.size() == BATCH_SIZE || i == storedFiles - 1) {
+                    dao.insertAll(batch);
+                    batch.clear();
+                }
+            }
+            Files.write(marker, String.valueOf(storedFiles).getBytes(StandardCharsets.US_ASCII));
+        }
+        return dao;
+    }
+
+    /**
+     * Deletes the store in the working directory.
+     *
+     * @throws IOException
+     */
+    public static void delete() throws IOException {
+        for (String name : new String[] { FileSystemDocumentDao.DIRECTORY, FileSystemDocumentDao.JOURNAL_FILE_NAME,
+                FileSystemDocumentDao.SNAPSHOT_FILE_NAME, MARKER_FILE_NAME }) {
+            Path path = Paths.get(name);
+            if (!Files.exists(path)) {
+                continue;
+            }
+            try (Stream<Path> paths = Files.walk(path)) {
+                paths.sorted((a, b) -> b.getNameCount() - a.getNameCount()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    public static String author(int i) {
+        return "author-" + i;
+    }
+
+    public static LocalDate date(int day) {
+        return LocalDate.of(2017, 1, 1).plusDays(day);
+    }
+
+    /**
+     * Returns a stream of the given size which does not hold its data
+     * in memory.
+     *
+     * @param size The number of bytes of the stream
+     * @return A stream
+     */
+    public static InputStream data(final long size) {
+        return new InputStream() {
+
+            private long remaining = size;
+
+            @Override
+            public int read() {
+                if (remaining <= 0) {
+                    return -1;
+                }
+                remaining--;
+                return (int) (remaining & 0x7f);
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (remaining <= 0) {
+                    return -1;
+                }
+                int n = (int) Math.min(len, remaining);
+                for (int i = 0; i < n; i++) {
+                    b[off + i] = (byte) (remaining - i);
+                }
+                remaining -= n;
+                return n;
+            }
+        };
+    }
+
+    private static class SmallFile implements FileUploadSource {
+
+        private final FileUploadMetadata metadata;
+
+        SmallFile(FileUploadMetadata metadata) {
+            this.metadata = metadata;
+        }
+
+        @Override
+        public FileUploadMetadata getMetadata() {
+            return metadata;
+        }
+
+        @Override
+        public InputStream openStream() {
+            return new ByteArrayInputStream(SMALL_FILE);
+        }
+    }
+}
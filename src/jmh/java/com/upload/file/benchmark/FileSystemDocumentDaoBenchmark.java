@@ -0,0 +1,190 @@
+package com.upload.file.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.upload.file.util.FileSystemDocumentDao;
+import com.upload.file.util.FileUpload;
+import com.upload.file.util.FileUploadContent;
+import com.upload.file.util.FileUploadMetadata;
+import com.upload.file.util.ShardedDirectoryLayout;
+
+/**
+ * Benchmarks of inserting and loading files with FileSystemDocumentDao
+ * for stores of different sizes and for different file sizes.
+ *
+ * The data of the files inserted by insert is deleted after every
+ * iteration, so files of 1 GB do not fill the disk; their meta data stays
+ * in the store. load reads the whole file into a byte array and is only
+ * run for files which fit the heap of the fork.
+ *
+ * @author Poornima
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xms2g", "-Xmx2g" })
+public class FileSystemDocumentDaoBenchmark {
+
+    /**
+     * The data store with a given number of files.
+     */
+    @State(Scope.Benchmark)
+    public static class Store {
+
+        @Param({ "1000", "100000", "1000000" })
+        public int storedFiles;
+
+        FileSystemDocumentDao dao;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            dao = BenchmarkStore.open(storedFiles);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            dao.close();
+        }
+    }
+
+    /**
+     * A stored file which is streamed by loadContent.
+     */
+    @State(Scope.Benchmark)
+    public static class StoredFile {
+
+        @Param({ "1024", "1048576", "1073741824" })
+        public long fileSize;
+
+        String uuid;
+
+        @Setup(Level.Trial)
+        public void setUp(Store store) throws IOException {
+            uuid = insertSample(store.dao, fileSize);
+        }
+    }
+
+    /**
+     * A stored file which is loaded into memory by load, at most 1 MB.
+     */
+    @State(Scope.Benchmark)
+    public static class LoadedFile {
+
+        @Param({ "1024", "1048576" })
+        public long loadedFileSize;
+
+        String uuid;
+
+        @Setup(Level.Trial)
+        public void setUp(Store store) throws IOException {
+            uuid = insertSample(store.dao, loadedFileSize);
+        }
+    }
+
+    /**
+     * The files inserted in an iteration.
+     */
+    @State(Scope.Benchmark)
+    public static class Inserts {
+
+        @Param({ "1024", "1048576", "1073741824" })
+        public long insertedFileSize;
+
+        final List<FileUploadMetadata> inserted = new ArrayList<FileUploadMetadata>();
+        int counter;
+
+        @TearDown(Level.Iteration)
+        public void deleteInserted() throws IOException {
+            for (FileUploadMetadata metadata : inserted) {
+                Files.deleteIfExists(ShardedDirectoryLayout.resolve(Paths.get(FileSystemDocumentDao.DIRECTORY),
+                        metadata.getUuid()).resolve(metadata.getFileName()));
+            }
+            inserted.clear();
+        }
+    }
+
+    @Benchmark
+    public FileUploadMetadata insert(Store store, Inserts inserts) throws IOException {
+        int i = inserts.counter++;
+        FileUploadMetadata metadata = new FileUploadMetadata("insert-" + i + ".bin",
+                BenchmarkStore.date(i % BenchmarkStore.DATES), BenchmarkStore.author(i % BenchmarkStore.AUTHORS));
+        try (InputStream data = BenchmarkStore.data(inserts.insertedFileSize)) {
+            store.dao.insert(metadata, data);
+        }
+        inserts.inserted.add(metadata);
+        return metadata;
+    }
+
+    @Benchmark
+    public FileUpload load(Store store, LoadedFile file) {
+        return store.dao.load(file.uuid);
+    }
+
+    @Benchmark
+    public long loadContent(Store store, StoredFile file, Blackhole blackhole) throws IOException {
+        FileUploadContent content = store.dao.loadContent(file.uuid);
+        return content.transferTo(0, content.getLength(), new BlackholeChannel(blackhole));
+    }
+
+    private static String insertSample(FileSystemDocumentDao dao, long fileSize) throws IOException {
+        FileUploadMetadata sample = new FileUploadMetadata("sample-" + fileSize + ".bin",
+                BenchmarkStore.date(0), BenchmarkStore.author(0));
+        try (InputStream data = BenchmarkStore.data(fileSize)) {
+            dao.insert(sample, data);
+        }
+        return sample.getUuid();
+    }
+
+    /**
+     * A channel which consumes all bytes written to it.
+     */
+    static class BlackholeChannel implements WritableByteChannel {
+
+        private final Blackhole blackhole;
+
+        BlackholeChannel(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            int n = src.remaining();
+            blackhole.consume(src.get(src.limit() - 1));
+            src.position(src.limit());
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
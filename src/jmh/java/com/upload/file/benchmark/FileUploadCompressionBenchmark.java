@@ -0,0 +1,93 @@
+package com.upload.file.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.upload.file.util.FileSystemDocumentDao;
+import com.upload.file.util.FileUploadCompression;
+
+/**
+ * Benchmarks of the compression of file data: the decision from a sample,
+ * compressing and decompressing 1 MB of CSV text or random bytes.
+ *
+ * @author Poornima
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileUploadCompressionBenchmark {
+
+    private static final int SIZE = 1024 * 1024;
+
+    @Param({ "csv", "random" })
+    public String content;
+
+    private byte[] data;
+    private byte[] compressed;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        if ("csv".equals(content)) {
+            StringBuilder sb = new StringBuilder(SIZE + 64);
+            for (int i = 0; sb.length() < SIZE; i++) {
+                sb.append(i).append(",author-").append(i % 100).append(",01-").append(i % 28 + 10)
+                        .append("-2017,").append(random.nextInt(1000)).append('\n');
+            }
+            data = sb.substring(0, SIZE).getBytes(StandardCharsets.US_ASCII);
+        } else {
+            data = new byte[SIZE];
+            random.nextBytes(data);
+        }
+        compressed = compress();
+    }
+
+    @Benchmark
+    public boolean isCompressible() {
+        return FileUploadCompression.isCompressible("data.dat", data, FileSystemDocumentDao.CHUNK_SIZE);
+    }
+
+    @Benchmark
+    public byte[] compress() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(SIZE);
+        try (OutputStream out = FileUploadCompression.compress(bytes)) {
+            out.write(data);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public long decompress() throws IOException {
+        byte[] buffer = new byte[FileSystemDocumentDao.CHUNK_SIZE];
+        long count = 0;
+        try (InputStream in = FileUploadCompression.decompress(new ByteArrayInputStream(compressed), FileUploadCompression.GZIP)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                count += read;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,92 @@
+package com.upload.file.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.upload.file.util.FileUploadMetadata;
+import com.upload.file.util.FileUploadMetadataCodec;
+
+/**
+ * Benchmarks of reading and writing the meta data of a file as properties
+ * and in the binary format of FileUploadMetadataCodec.
+ *
+ * @author Poornima
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileUploadMetadataBenchmark {
+
+    private Properties properties;
+    private byte[] propertiesFile;
+    private byte[] binaryFile;
+    private FileUploadMetadata metadata;
+
+    @Setup
+    public void setUp() throws IOException {
+        metadata = new FileUploadMetadata("report-2017.csv", BenchmarkStore.date(42), "author-42");
+        metadata.setSize(123456);
+        properties = metadata.createProperties();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        properties.store(out, "FileUpload meta data");
+        propertiesFile = out.toByteArray();
+        binaryFile = FileUploadMetadataCodec.encode(metadata);
+    }
+
+    @Benchmark
+    public FileUploadMetadata parseProperties() {
+        return new FileUploadMetadata(properties);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public FileUploadMetadata parsePropertiesConcurrently() {
+        return new FileUploadMetadata(properties);
+    }
+
+    @Benchmark
+    public FileUploadMetadata loadAndParsePropertiesFile() throws IOException {
+        Properties loaded = new Properties();
+        loaded.load(new ByteArrayInputStream(propertiesFile));
+        return new FileUploadMetadata(loaded);
+    }
+
+    @Benchmark
+    public Properties createProperties() {
+        return metadata.createProperties();
+    }
+
+    @Benchmark
+    public FileUploadMetadata decodeBinary() throws IOException {
+        return FileUploadMetadataCodec.decode(binaryFile);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public FileUploadMetadata decodeBinaryConcurrently() throws IOException {
+        return FileUploadMetadataCodec.decode(binaryFile);
+    }
+
+    @Benchmark
+    public byte[] encodeBinary() {
+        return FileUploadMetadataCodec.encode(metadata);
+    }
+}
@@ -0,0 +1,112 @@
+package com.upload.file.benchmark;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.upload.file.util.FileSystemDocumentDao;
+import com.upload.file.util.FileUploadMetadata;
+import com.upload.file.util.FileUploadPage;
+import com.upload.file.util.FileUploadQuery;
+import com.upload.file.util.FileUploadSort;
+
+/**
+ * Benchmarks of FileSystemDocumentDao.findByAuthorNameDate, of range and
+ * prefix queries and of sorted pages for stores of different sizes. Also measures the startup of the data access object,
+ * which recovers or builds its index.
+ *
+ * @author Poornima
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xms2g", "-Xmx2g" })
+public class MetadataQueryBenchmark {
+
+    @Param({ "1000", "100000", "1000000" })
+    public int storedFiles;
+
+    private FileSystemDocumentDao dao;
+    private String author;
+    private LocalDate date;
+    private FileUploadQuery dateRange;
+    private FileUploadQuery namePrefix;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dao = BenchmarkStore.open(storedFiles);
+        author = BenchmarkStore.author(7);
+        date = BenchmarkStore.date(7);
+        dateRange = new FileUploadQuery();
+        dateRange.setFrom(BenchmarkStore.date(0));
+        dateRange.setTo(BenchmarkStore.date(30));
+        namePrefix = new FileUploadQuery();
+        namePrefix.setNamePrefix("file-77");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dao.close();
+    }
+
+    @Benchmark
+    public List<FileUploadMetadata> findAll() {
+        return dao.findByAuthorNameDate(null, null);
+    }
+
+    @Benchmark
+    public List<FileUploadMetadata> findByAuthor() {
+        return dao.findByAuthorNameDate(author, null);
+    }
+
+    @Benchmark
+    public List<FileUploadMetadata> findByDate() {
+        return dao.findByAuthorNameDate(null, date);
+    }
+
+    @Benchmark
+    public List<FileUploadMetadata> findByAuthorNameDate() {
+        return dao.findByAuthorNameDate(author, date);
+    }
+
+    @Benchmark
+    public FileUploadPage findFirstPageByName() {
+        return dao.findPage(new FileUploadQuery(), new FileUploadPage.Cursor(FileUploadSort.NAME, false), 100);
+    }
+
+    @Benchmark
+    public List<FileUploadMetadata> findDateRange() {
+        return dao.find(dateRange);
+    }
+
+    @Benchmark
+    public List<FileUploadMetadata> findNamePrefix() {
+        return dao.find(namePrefix);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public FileSystemDocumentDao startup() {
+        FileSystemDocumentDao startedDao = new FileSystemDocumentDao();
+        startedDao.init();
+        return startedDao;
+    }
+}
@@ -0,0 +1,129 @@
+package com.upload.file.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.embedded.EmbeddedWebApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.upload.file.Application;
+import com.upload.file.util.FileSystemDocumentDao;
+import com.upload.file.util.FileUploadMetadata;
+
+/**
+ * End to end benchmarks of the upload and download endpoints. The
+ * application is started on a random port with a store of the given size.
+ *
+ * @author Poornima
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xms2g", "-Xmx2g" })
+public class RestEndpointBenchmark {
+
+    private static final String BOUNDARY = "benchmark-boundary";
+
+    @Param({ "1000", "100000" })
+    public int storedFiles;
+
+    @Param({ "1024", "1048576" })
+    public long fileSize;
+
+    private ConfigurableApplicationContext context;
+    private String baseUrl;
+    private String sampleUuid;
+    private byte[] buffer = new byte[FileSystemDocumentDao.CHUNK_SIZE];
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BenchmarkStore.open(storedFiles).close();
+        context = SpringApplication.run(Application.class, "--server.port=0", "--logging.level.root=WARN");
+        int port = ((EmbeddedWebApplicationContext) context).getEmbeddedServletContainer().getPort();
+        baseUrl = "http://localhost:" + port + "/rest";
+        FileUploadMetadata sample = new FileUploadMetadata("sample-" + fileSize + ".bin",
+                BenchmarkStore.date(0), BenchmarkStore.author(0));
+        try (InputStream data = BenchmarkStore.data(fileSize)) {
+            context.getBean(FileSystemDocumentDao.class).insert(sample, data);
+        }
+        sampleUuid = sample.getUuid();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int upload() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + "/upload").openConnection();
+        connection.setDoOutput(true);
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", "multipart/form-data; boundary=" + BOUNDARY);
+        connection.setChunkedStreamingMode(FileSystemDocumentDao.CHUNK_SIZE);
+        try (OutputStream out = connection.getOutputStream()) {
+            writePart(out, "name=\"author\"", BenchmarkStore.author(1));
+            out.write(("--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"file\"; filename=\"upload.bin\"\r\n"
+                    + "Content-Type: application/octet-stream\r\n\r\n").getBytes("US-ASCII"));
+            try (InputStream data = BenchmarkStore.data(fileSize)) {
+                int n;
+                while ((n = data.read(buffer)) != -1) {
+                    out.write(buffer, 0, n);
+                }
+            }
+            out.write(("\r\n--" + BOUNDARY + "--\r\n").getBytes("US-ASCII"));
+        }
+        return readResponse(connection);
+    }
+
+    @Benchmark
+    public long download() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + "/file/" + sampleUuid).openConnection();
+        long size = 0;
+        try (InputStream in = connection.getInputStream()) {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                size += n;
+            }
+        }
+        return size;
+    }
+
+    private void writePart(OutputStream out, String disposition, String value) throws IOException {
+        out.write(("--" + BOUNDARY + "\r\nContent-Disposition: form-data; " + disposition + "\r\n\r\n" + value + "\r\n")
+                .getBytes("US-ASCII"));
+    }
+
+    private int readResponse(HttpURLConnection connection) throws IOException {
+        int status = connection.getResponseCode();
+        try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            while (in != null && in.read(buffer) != -1) {
+                // drain the response so the connection is reused
+            }
+        }
+        if (status >= 400) {
+            throw new IOException("Upload failed with status " + status);
+        }
+        return status;
+    }
+}
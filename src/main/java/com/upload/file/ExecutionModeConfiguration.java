@@ -0,0 +1,89 @@
+package com.upload.file;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.coyote.AbstractProtocol;
+import org.apache.coyote.ProtocolHandler;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.embedded.ConfigurableEmbeddedServletContainer;
+import org.springframework.boot.context.embedded.EmbeddedServletContainerCustomizer;
+import org.springframework.boot.context.embedded.tomcat.TomcatEmbeddedServletContainerFactory;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Execution mode of the request handlers.
+ *
+ * In the mode platform (default) the requests are handled by the thread
+ * pool of Tomcat. In the mode virtual each request is handled by its own
+ * virtual thread, and the handlers and the data access objects keep their
+ * blocking code. Virtual threads need Java 21 or later, see the profile
+ * jdk17 in pom.xml. On older Java versions the mode virtual falls back to
+ * the thread pool of Tomcat.
+ *
+ * The blocking servlet I/O of Tomcat 8.5 waits for the client inside
+ * synchronized code, which pins a virtual thread to its carrier thread
+ * before Java 24. A slow client then blocks a carrier thread, so the mode
+ * virtual does not protect against slow clients; the endpoints under
+ * /rest/async do.
+ *
+ * The virtual threads do not limit the number of concurrent requests, the
+ * concurrent disk operations are limited by the data access object, see
+ * upload.disk.max-concurrent-operations.
+ *
+ * @author Poornima
+ */
+@Configuration
+public class ExecutionModeConfiguration implements EmbeddedServletContainerCustomizer {
+
+    private static final Logger LOG = Logger.getLogger(ExecutionModeConfiguration.class);
+
+    public static final String MODE_PLATFORM = "platform";
+    public static final String MODE_VIRTUAL = "virtual";
+
+    @Value("${upload.execution.mode:platform}")
+    private String mode = MODE_PLATFORM;
+
+    @Override
+    public void customize(ConfigurableEmbeddedServletContainer container) {
+        if(!MODE_VIRTUAL.equals(mode) || !(container instanceof TomcatEmbeddedServletContainerFactory)) {
+            return;
+        }
+        // virtual threads are daemon threads, the executor is not shut down
+        ExecutorService executor = createVirtualThreadExecutor();
+        if(executor==null) {
+            LOG.warn("Virtual threads need Java 21 or later, requests are handled by platform threads");
+            return;
+        }
+        ((TomcatEmbeddedServletContainerFactory) container).addConnectorCustomizers(connector -> {
+            ProtocolHandler handler = connector.getProtocolHandler();
+            if(handler instanceof AbstractProtocol) {
+                ((AbstractProtocol<?>) handler).setExecutor(executor);
+            }
+        });
+        LOG.info("Requests are handled by virtual threads");
+    }
+
+    /**
+     * Returns an executor starting a virtual thread per task, or null if
+     * the Java version has no virtual threads. The executor is looked up
+     * by reflection, so the project still compiles for Java 8.
+     */
+    static ExecutorService createVirtualThreadExecutor() {
+        try {
+            Method method = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    public void setMode(String mode) {
+        this.mode = mode;
+    }
+}
@@ -0,0 +1,442 @@
+package com.upload.file.rest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.upload.file.service.IAsyncUploadService;
+import com.upload.file.util.AsyncFileDownload;
+import com.upload.file.util.AsyncFileUpload;
+import com.upload.file.util.FileSystemDocumentDao;
+import com.upload.file.util.FileUploadContent;
+import com.upload.file.util.FileUploadMetadata;
+import com.upload.file.util.FileUploadMetrics;
+
+/**
+ * Non-blocking variants of the upload and download endpoints.
+ *
+ * The requests are put in asynchronous mode and the body is transferred
+ * with the non-blocking I/O of Servlet 3.1 (ReadListener, WriteListener)
+ * and asynchronous file channels. No thread is held while the client or
+ * the disk is not ready, so slow clients do not use up the worker threads.
+ * One chunk of CHUNK_SIZE bytes is in flight per transfer: the next chunk
+ * is only read from the client or the disk when the previous one was
+ * written, which gives backpressure in both directions.
+ *
+ * @author Poornima
+ */
+@Controller
+@RequestMapping(value = "/rest/async")
+public class AsyncRestServiceController {
+
+    private static final Logger LOG = Logger.getLogger(AsyncRestServiceController.class);
+
+    @Autowired
+    IAsyncUploadService asyncUploadService;
+
+    @Autowired
+    FileContentWriter contentWriter;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    FileUploadMetrics metrics;
+
+    @Value("${upload.async.timeout:0}")
+    long timeout;
+
+    /**
+     * Adds a file to the file system. The request body is the file data
+     * (application/octet-stream).
+     *
+     * Url: /rest/async/upload?fileName={fileName}&author={author}&date={date} [POST]
+     *
+     * @param fileName The name of the file
+     * @param author The name of the uploading author
+     * @param date The date of the file
+     */
+    @RequestMapping(value = "/upload", method = RequestMethod.POST,
+            consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public void handleFileUpload(
+            @RequestParam(value="fileName", required=true) String fileName,
+            @RequestParam(value="author", required=false) String author,
+            @RequestParam(value="date", required=false) @DateTimeFormat(pattern=FileUploadMetadata.DATE_FORMAT_PATTERN) LocalDate date,
+            HttpServletRequest request, HttpServletResponse response) throws IOException {
+        AsyncFileUpload upload = getAsyncUploadService().startUpload(new FileUploadMetadata(fileName, date, author));
+        AsyncContext asyncContext = startAsync(request);
+        UploadReadListener listener = new UploadReadListener(asyncContext, request.getInputStream(), upload);
+        asyncContext.addListener(listener);
+        request.getInputStream().setReadListener(listener);
+    }
+
+    /**
+     * Returns the file from the file system with the given UUID.
+     * A compressed file is sent compressed if the client accepts its
+     * content coding, otherwise it is decompressed and sent with blocking
+     * I/O like /rest/file/{id}. Requests with a Range header are served
+     * with blocking I/O like /rest/file/{id} as well, which handles the
+     * ranges and If-Range.
+     *
+     * Url: /rest/async/file/{id} [GET]
+     *
+     * @param id The UUID of a file
+     */
+    @RequestMapping(value = "/file/{id}", method = RequestMethod.GET)
+    public void getFileUpload(@PathVariable String id,
+            HttpServletRequest request, HttpServletResponse response) throws IOException {
+        AsyncFileDownload download = getAsyncUploadService().startDownload(id);
+        if(download==null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        FileUploadContent content = download.getContent();
+        if(request.getHeader(HttpHeaders.RANGE)!=null
+                || (content.isCompressed() && !getContentWriter().isEncodingAccepted(content, request))) {
+            download.close();
+            getContentWriter().write(content, request, response);
+            return;
+        }
+        String etag = getContentWriter().getETag(content, true);
+        if(content.isCompressed()) {
+            response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+        if(new ServletWebRequest(request, response).checkNotModified(etag, content.getLastModified())) {
+            download.close();
+            return;
+        }
+        if(content.isCompressed()) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, content.getContentEncoding());
+        }
+        getContentWriter().setDigest(content, true, response);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, FileContentWriter.BYTES_UNIT);
+        response.setContentType(getContentWriter().getContentType(content, request.getServletContext()));
+        response.setHeader(HttpHeaders.CONTENT_LENGTH, Long.toString(content.getLength()));
+        AsyncContext asyncContext = startAsync(request);
+        DownloadWriteListener listener = new DownloadWriteListener(asyncContext, response.getOutputStream(), download);
+        asyncContext.addListener(listener);
+        response.getOutputStream().setWriteListener(listener);
+    }
+
+    /**
+     * Answers requests with an invalid parameter, e.g. a file name which
+     * is empty or . or .., with 400 (bad request).
+     *
+     * @param e The exception thrown by the handler
+     * @return An empty response with status 400
+     */
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Void> handleIllegalArgument(IllegalArgumentException e) {
+        LOG.warn("Invalid request: " + e.getMessage());
+        return new ResponseEntity<Void>(HttpStatus.BAD_REQUEST);
+    }
+
+    private AsyncContext startAsync(HttpServletRequest request) {
+        AsyncContext asyncContext = request.startAsync();
+        asyncContext.setTimeout(timeout);
+        return asyncContext;
+    }
+
+    public IAsyncUploadService getAsyncUploadService() {
+        return asyncUploadService;
+    }
+
+    public void setAsyncUploadService(IAsyncUploadService asyncUploadService) {
+        this.asyncUploadService = asyncUploadService;
+    }
+
+    public FileContentWriter getContentWriter() {
+        return contentWriter;
+    }
+
+    public void setContentWriter(FileContentWriter contentWriter) {
+        this.contentWriter = contentWriter;
+    }
+
+    public ObjectMapper getObjectMapper() {
+        return objectMapper;
+    }
+
+    public void setObjectMapper(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    public FileUploadMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(FileUploadMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Base class of the listeners of an asynchronous transfer. Ends the
+     * request exactly once, on success, error or timeout.
+     */
+    private abstract class Transfer implements AsyncListener {
+
+        protected final AsyncContext asyncContext;
+        protected final ByteBuffer buffer = ByteBuffer.allocate(FileSystemDocumentDao.CHUNK_SIZE);
+        private final AtomicBoolean ended = new AtomicBoolean();
+
+        Transfer(AsyncContext asyncContext) {
+            this.asyncContext = asyncContext;
+        }
+
+        /**
+         * Ends the request. Returns false if it was ended before.
+         */
+        protected boolean end() {
+            if(!ended.compareAndSet(false, true)) {
+                return false;
+            }
+            release();
+            asyncContext.complete();
+            return true;
+        }
+
+        protected void fail(Throwable e) {
+            if(ended.get()) {
+                return;
+            }
+            LOG.error("Error in asynchronous transfer", e);
+            HttpServletResponse response = (HttpServletResponse) asyncContext.getResponse();
+            if(!response.isCommitted()) {
+                response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            }
+            end();
+        }
+
+        /**
+         * Releases the file of the transfer.
+         */
+        protected abstract void release();
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            // the request is ended by end
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            LOG.warn("Asynchronous transfer timed out");
+            end();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            fail(event.getThrowable());
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // not restarted
+        }
+    }
+
+    /**
+     * Reads the request body whenever data is available and writes it to
+     * the upload. While a chunk is written to the disk no data is read.
+     */
+    private class UploadReadListener extends Transfer implements ReadListener {
+
+        private final ServletInputStream input;
+        private final AsyncFileUpload upload;
+        private boolean writing;
+        private boolean completing;
+
+        UploadReadListener(AsyncContext asyncContext, ServletInputStream input, AsyncFileUpload upload) {
+            super(asyncContext);
+            this.input = input;
+            this.upload = upload;
+        }
+
+        @Override
+        public void onDataAvailable() {
+            pump();
+        }
+
+        @Override
+        public void onAllDataRead() {
+            pump();
+        }
+
+        private synchronized void pump() {
+            if(writing || completing) {
+                return;
+            }
+            try {
+                while (input.isReady()) {
+                    int read = input.read(buffer.array());
+                    if(read == -1) {
+                        break;
+                    }
+                    if(read > 0) {
+                        buffer.clear();
+                        buffer.limit(read);
+                        writing = true;
+                        upload.write(buffer).whenCompleteAsync((written, e) -> written(e),
+                                getAsyncUploadService().getExecutor());
+                        return;
+                    }
+                }
+                if(input.isFinished()) {
+                    complete();
+                }
+            } catch (IOException | RuntimeException e) {
+                fail(e);
+            }
+        }
+
+        private void written(Throwable e) {
+            synchronized (this) {
+                writing = false;
+            }
+            if(e != null) {
+                fail(e);
+            } else {
+                pump();
+            }
+        }
+
+        private void complete() {
+            // the container may call onAllDataRead from within read, so
+            // complete can be reached twice by the same pump
+            if(completing) {
+                return;
+            }
+            completing = true;
+            getAsyncUploadService().complete(upload).whenComplete((metadata, e) -> {
+                if(e != null) {
+                    fail(e);
+                    return;
+                }
+                try {
+                    HttpServletResponse response = (HttpServletResponse) asyncContext.getResponse();
+                    response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+                    getObjectMapper().writeValue(response.getOutputStream(), metadata);
+                    end();
+                } catch (IOException | RuntimeException writeError) {
+                    fail(writeError);
+                }
+            });
+        }
+
+        @Override
+        protected void release() {
+            if(!completing) {
+                getAsyncUploadService().abort(upload);
+            }
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Writes the file to the response whenever the client can take data.
+     * While a chunk is read from the disk nothing is written.
+     */
+    private class DownloadWriteListener extends Transfer implements WriteListener {
+
+        private final ServletOutputStream output;
+        private final AsyncFileDownload download;
+        private boolean reading;
+        private boolean finished;
+
+        DownloadWriteListener(AsyncContext asyncContext, ServletOutputStream output, AsyncFileDownload download) {
+            super(asyncContext);
+            this.output = output;
+            this.download = download;
+            this.buffer.limit(0);
+        }
+
+        @Override
+        public void onWritePossible() {
+            pump();
+        }
+
+        private synchronized void pump() {
+            try {
+                while (!reading && output.isReady()) {
+                    if(buffer.hasRemaining()) {
+                        output.write(buffer.array(), buffer.position(), buffer.remaining());
+                        metrics.increment(FileUploadMetrics.BYTES_SENT, buffer.remaining());
+                        buffer.position(buffer.limit());
+                        continue;
+                    }
+                    if(finished) {
+                        end();
+                        return;
+                    }
+                    buffer.clear();
+                    reading = true;
+                    download.read(buffer).whenCompleteAsync((read, e) -> read(read, e),
+                            getAsyncUploadService().getExecutor());
+                    return;
+                }
+            } catch (IOException | RuntimeException e) {
+                fail(e);
+            }
+        }
+
+        private void read(Integer read, Throwable e) {
+            synchronized (this) {
+                reading = false;
+                if(e == null) {
+                    buffer.flip();
+                    finished = (read == -1);
+                }
+            }
+            if(e != null) {
+                fail(e);
+            } else {
+                pump();
+            }
+        }
+
+        @Override
+        protected void release() {
+            try {
+                download.close();
+            } catch (IOException e) {
+                LOG.warn("Error while closing download", e);
+            }
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            fail(e);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.upload.file.rest;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.function.LongConsumer;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.Part;
+
+/**
+ * Passes the number of bytes of the request body to a consumer as they
+ * are read, also for requests sent without Content-Length (chunked).
+ *
+ * Multipart requests are parsed by the servlet container, which does not
+ * read the body through the wrapper; their parts are counted with their
+ * sizes when they are requested.
+ *
+ * @author Poornima
+ */
+class CountingRequest extends HttpServletRequestWrapper {
+
+    private final LongConsumer counter;
+    private ServletInputStream inputStream;
+    private boolean partsCounted;
+
+    CountingRequest(HttpServletRequest request, LongConsumer counter) {
+        super(request);
+        this.counter = counter;
+    }
+
+    @Override
+    public ServletInputStream getInputStream() throws IOException {
+        if(inputStream==null) {
+            inputStream = new CountingInputStream(super.getInputStream());
+        }
+        return inputStream;
+    }
+
+    @Override
+    public Collection<Part> getParts() throws IOException, ServletException {
+        Collection<Part> parts = super.getParts();
+        if(!partsCounted) {
+            partsCounted = true;
+            long size = 0;
+            for (Part part : parts) {
+                size += part.getSize();
+            }
+            counter.accept(size);
+        }
+        return parts;
+    }
+
+    private class CountingInputStream extends ServletInputStream {
+
+        private final ServletInputStream in;
+
+        CountingInputStream(ServletInputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if(b >= 0) {
+                counter.accept(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = in.read(b, off, len);
+            if(read > 0) {
+                counter.accept(read);
+            }
+            return read;
+        }
+
+        @Override
+        public boolean isFinished() {
+            return in.isFinished();
+        }
+
+        @Override
+        public boolean isReady() {
+            return in.isReady();
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            in.setReadListener(readListener);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return in.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,406 @@
+package com.upload.file.rest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import com.upload.file.util.FileUploadChecksums;
+import com.upload.file.util.FileUploadContent;
+import com.upload.file.util.FileUploadMetadata;
+import com.upload.file.util.FileUploadMetrics;
+
+/**
+ * Writes the content of a stored file to a HTTP response.
+ *
+ * The file data is never read into the heap. If the servlet container
+ * supports sendfile (Tomcat NIO connector) the container is asked to send
+ * the file, which lets the kernel copy it to the socket directly.
+ * Otherwise the file is transferred with FileChannel.transferTo. Content
+ * held in memory by the cache is written from its buffer.
+ *
+ * Conditional requests (If-None-Match, If-Modified-Since) are answered
+ * with 304 from the ETag and the last modified time without touching the
+ * file data. Range requests are answered with 206, multiple ranges are
+ * sent as multipart/byteranges. Each range is read at its position in the
+ * stored file.
+ *
+ * Compressed content is sent as it is stored, with the Content-Encoding
+ * header, if the client accepts the content coding (Accept-Encoding).
+ * Ranges then refer to the compressed data. Otherwise the content is
+ * decompressed while it is written and ranges are read by skipping the
+ * decompressed data.
+ *
+ * The ETag is derived from the checksums of the file data if they were
+ * recorded, and the checksums are sent in the Digest header (RFC 3230),
+ * so clients can verify a download without a second request.
+ *
+ * The bytes of the written bodies are counted in FileUploadMetrics.
+ *
+ * @author Poornima
+ */
+@Component
+public class FileContentWriter {
+
+    static final String SENDFILE_SUPPORTED_ATTR = "org.apache.tomcat.sendfile.support";
+    static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
+    /** Files smaller than this are written directly, sendfile does not pay off */
+    public static final long SENDFILE_THRESHOLD = 48 * 1024;
+    
+    /** Maximum number of ranges accepted in one request */
+    public static final int MAX_RANGES = 64;
+    
+    /** Header with the checksums of the file data, see RFC 3230 */
+    public static final String DIGEST = "Digest";
+    
+    public static final String BYTES_UNIT = "bytes";
+    private static final String CRLF = "\r\n";
+
+    @Autowired
+    private FileUploadMetrics metrics;
+
+    /**
+     * Writes the content to the response. Depending on the request headers 
+     * the status is 304 (not modified), 206 (partial content), 
+     * 416 (range not satisfiable) or 200 with the whole content.
+     *
+     * @param content The content of a file
+     * @param request The HTTP request
+     * @param response The HTTP response
+     * @throws IOException
+     */
+    public void write(FileUploadContent content, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        boolean encoded = isEncodingAccepted(content, request);
+        boolean decompress = content.isCompressed() && !encoded;
+        String etag = getETag(content, encoded);
+        long lastModified = content.getLastModified();
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, BYTES_UNIT);
+        if (content.isCompressed()) {
+            response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+        if (new ServletWebRequest(request, response).checkNotModified(etag, lastModified)) {
+            return;
+        }
+        if (encoded) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, content.getContentEncoding());
+        }
+        setDigest(content, encoded, response);
+        String contentType = getContentType(content, request.getServletContext());
+        long length = decompress ? content.getSize() : content.getLength();
+        List<HttpRange> ranges = getRanges(request, etag, lastModified);
+        if (ranges.isEmpty()) {
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.setContentType(contentType);
+            writeRange(content, 0, length, decompress, request, response);
+            return;
+        }
+        if (!isSatisfiable(ranges, length)) {
+            response.setHeader(HttpHeaders.CONTENT_RANGE, BYTES_UNIT + " */" + length);
+            response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            return;
+        }
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        if (ranges.size() == 1) {
+            HttpRange range = ranges.get(0);
+            long start = range.getRangeStart(length);
+            long end = range.getRangeEnd(length);
+            response.setContentType(contentType);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, getContentRange(start, end, length));
+            writeRange(content, start, end - start + 1, decompress, request, response);
+        } else {
+            writeRanges(content, ranges, length, contentType, decompress, response);
+        }
+    }
+
+    /**
+     * Sets the content length and writes a range of the content.
+     * The status and headers have to be set by the caller.
+     *
+     * @param content The content of a file
+     * @param start The position of the first byte
+     * @param length The number of bytes to write
+     * @param decompress True if the range refers to the decompressed content
+     * @param request The HTTP request
+     * @param response The HTTP response
+     * @throws IOException
+     */
+    public void writeRange(FileUploadContent content, long start, long length, boolean decompress,
+            HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setHeader(HttpHeaders.CONTENT_LENGTH, String.valueOf(length));
+        metrics.increment(FileUploadMetrics.BYTES_SENT, length);
+        if (decompress) {
+            writeDecompressed(content, start, length, response.getOutputStream());
+            return;
+        }
+        if (isSendfileSupported(request) && length >= SENDFILE_THRESHOLD && !content.isInMemory()) {
+            long offset = content.getOffset() + start;
+            request.setAttribute(SENDFILE_FILENAME_ATTR, content.getFile().getCanonicalPath());
+            request.setAttribute(SENDFILE_START_ATTR, Long.valueOf(offset));
+            request.setAttribute(SENDFILE_END_ATTR, Long.valueOf(offset + length));
+            return;
+        }
+        content.transferTo(start, length, Channels.newChannel(response.getOutputStream()));
+    }
+
+    /**
+     * Writes multiple ranges as multipart/byteranges body.
+     */
+    private void writeRanges(FileUploadContent content, List<HttpRange> ranges, long length, String contentType,
+            boolean decompress, HttpServletResponse response) throws IOException {
+        String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+        long contentLength = 0;
+        String[] partHeaders = new String[ranges.size()];
+        for (int i = 0; i < ranges.size(); i++) {
+            HttpRange range = ranges.get(i);
+            long start = range.getRangeStart(length);
+            long end = range.getRangeEnd(length);
+            partHeaders[i] = CRLF + "--" + boundary + CRLF 
+                    + HttpHeaders.CONTENT_TYPE + ": " + contentType + CRLF
+                    + HttpHeaders.CONTENT_RANGE + ": " + getContentRange(start, end, length) + CRLF + CRLF;
+            contentLength += partHeaders[i].length() + (end - start + 1);
+        }
+        String endBoundary = CRLF + "--" + boundary + "--" + CRLF;
+        contentLength += endBoundary.length();
+        
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        response.setHeader(HttpHeaders.CONTENT_LENGTH, String.valueOf(contentLength));
+        metrics.increment(FileUploadMetrics.BYTES_SENT, contentLength);
+        ServletOutputStream out = response.getOutputStream();
+        WritableByteChannel channel = Channels.newChannel(out);
+        for (int i = 0; i < ranges.size(); i++) {
+            HttpRange range = ranges.get(i);
+            long start = range.getRangeStart(length);
+            long end = range.getRangeEnd(length);
+            out.write(partHeaders[i].getBytes(StandardCharsets.US_ASCII));
+            if (decompress) {
+                writeDecompressed(content, start, end - start + 1, out);
+            } else {
+                content.transferTo(start, end - start + 1, channel);
+            }
+        }
+        out.write(endBoundary.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Writes a range of the decompressed content. The decompressed data
+     * before the range is skipped.
+     */
+    private void writeDecompressed(FileUploadContent content, long start, long length, OutputStream out) throws IOException {
+        try (InputStream in = content.openStream()) {
+            long copied = StreamUtils.copyRange(in, out, start, start + length - 1);
+            if (copied < length) {
+                throw new IOException("File was truncated: " + content.getFile());
+            }
+        }
+    }
+
+    /**
+     * Returns true if the content is compressed and the client accepts its
+     * content coding, so it can be sent without decompressing it.
+     *
+     * @param content The content of a file
+     * @param request The HTTP request
+     * @return true if the content can be sent as stored
+     */
+    public boolean isEncodingAccepted(FileUploadContent content, HttpServletRequest request) {
+        if (!content.isCompressed()) {
+            return false;
+        }
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        if (acceptEncoding == null) {
+            return false;
+        }
+        boolean wildcard = false;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim().toLowerCase(Locale.ROOT);
+            boolean accepted = !isQualityZero(parts);
+            if (name.equals(content.getContentEncoding())) {
+                return accepted;
+            }
+            if (name.equals("*")) {
+                wildcard = accepted;
+            }
+        }
+        return wildcard;
+    }
+
+    private boolean isQualityZero(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String parameter = parts[i].trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2)) == 0;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the ranges requested by the Range header. An empty list is 
+     * returned if the whole content has to be sent: no Range header, 
+     * an invalid Range header or an If-Range header which does not match
+     * the current version of the file.
+     */
+    private List<HttpRange> getRanges(HttpServletRequest request, String etag, long lastModified) {
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader == null || !isIfRangeMatched(request, etag, lastModified)) {
+            return Collections.emptyList();
+        }
+        try {
+            return HttpRange.parseRanges(rangeHeader);
+        } catch (IllegalArgumentException e) {
+            return Collections.emptyList();
+        }
+    }
+
+    private boolean isIfRangeMatched(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // weak entity tags never match for If-Range
+            return ifRange.equals(etag);
+        }
+        try {
+            long date = request.getDateHeader(HttpHeaders.IF_RANGE);
+            return date / 1000 == lastModified / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private boolean isSatisfiable(List<HttpRange> ranges, long length) {
+        if (ranges.size() > MAX_RANGES) {
+            return false;
+        }
+        for (HttpRange range : ranges) {
+            long start = range.getRangeStart(length);
+            if (start < 0 || start >= length || range.getRangeEnd(length) < start) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String getContentRange(long start, long end, long length) {
+        return BYTES_UNIT + " " + start + "-" + end + "/" + length;
+    }
+
+    /**
+     * Returns the entity tag of the content, the SHA-256 hash or the CRC32C
+     * and the size of the file data if they were recorded. Otherwise the tag
+     * changes whenever the stored file is replaced. The compressed and the
+     * decompressed content have different tags.
+     *
+     * @param content The content of a file
+     * @param encoded True for the content as it is stored (compressed)
+     * @return A strong entity tag
+     */
+    public String getETag(FileUploadContent content, boolean encoded) {
+        FileUploadMetadata metadata = content.getMetadata();
+        StringBuilder sb = new StringBuilder();
+        sb.append('"');
+        if (metadata.getSha256() != null) {
+            sb.append(metadata.getSha256());
+        } else if (metadata.getCrc32c() != null) {
+            sb.append(metadata.getCrc32c()).append('-').append(Long.toHexString(content.getSize()));
+        } else {
+            sb.append(metadata.getUuid());
+            sb.append('-').append(Long.toHexString(content.getLength()));
+            sb.append('-').append(Long.toHexString(content.getLastModified()));
+        }
+        if (encoded && content.isCompressed()) {
+            sb.append('-').append(content.getContentEncoding());
+        }
+        sb.append('"');
+        return sb.toString();
+    }
+
+    /**
+     * Sets the Digest header with the recorded checksums of the file data.
+     * The checksums are of the uncompressed data, so no header is set if
+     * the content is sent compressed.
+     *
+     * @param content The content of a file
+     * @param encoded True for the content as it is stored (compressed)
+     * @param response The HTTP response
+     */
+    public void setDigest(FileUploadContent content, boolean encoded, HttpServletResponse response) {
+        if (encoded && content.isCompressed()) {
+            return;
+        }
+        FileUploadMetadata metadata = content.getMetadata();
+        StringBuilder sb = new StringBuilder();
+        if (metadata.getSha256() != null) {
+            sb.append("sha-256=").append(FileUploadChecksums.hexToBase64(metadata.getSha256()));
+        }
+        if (metadata.getCrc32c() != null) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append("crc32c=").append(FileUploadChecksums.hexToBase64(metadata.getCrc32c()));
+        }
+        if (sb.length() > 0) {
+            response.setHeader(DIGEST, sb.toString());
+        }
+    }
+
+    /**
+     * Returns the content type of a file derived from the file name
+     * of its meta data.
+     *
+     * @param content The content of a file
+     * @param servletContext The servlet context providing the mime mappings
+     * @return The content type
+     */
+    public String getContentType(FileUploadContent content, ServletContext servletContext) {
+        String fileName = content.getMetadata().getFileName();
+        String contentType = null;
+        if (fileName != null) {
+            contentType = servletContext.getMimeType(fileName);
+        }
+        if (contentType == null) {
+            contentType = MediaType.APPLICATION_OCTET_STREAM_VALUE;
+        }
+        return contentType;
+    }
+
+    private boolean isSendfileSupported(HttpServletRequest request) {
+        return Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED_ATTR));
+    }
+
+    public FileUploadMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(FileUploadMetrics metrics) {
+        this.metrics = metrics;
+    }
+}
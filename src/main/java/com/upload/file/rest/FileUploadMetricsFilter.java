@@ -0,0 +1,149 @@
+package com.upload.file.rest;
+
+import java.io.IOException;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import com.upload.file.util.FileUploadMetrics;
+
+/**
+ * Records the latency of the requests of the upload, download and find
+ * endpoints from the arrival of the request to the end of the response,
+ * including the parsing of multipart requests and the serialization of
+ * the result. Counts the uploads and downloads in progress and the bytes
+ * of upload request bodies as they are read, see CountingRequest, so
+ * uploads without Content-Length are counted as well.
+ *
+ * Compared with the latencies of UploadService and FileSystemDocumentDao
+ * this tells how much of the time of a request is spent outside the data
+ * store. Requests in asynchronous mode are recorded when they complete.
+ *
+ * @author Poornima
+ */
+@Component
+public class FileUploadMetricsFilter extends OncePerRequestFilter {
+
+    @Autowired
+    private FileUploadMetrics metrics;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String timer = getTimer(request);
+        if(timer==null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        String gauge = getGauge(timer);
+        long start = System.nanoTime();
+        if(gauge!=null) {
+            metrics.add(gauge, 1);
+        }
+        if(FileUploadMetrics.HTTP_UPLOAD.equals(timer)) {
+            request = new CountingRequest(request, bytes -> metrics.increment(FileUploadMetrics.BYTES_RECEIVED, bytes));
+        }
+        boolean async = false;
+        try {
+            filterChain.doFilter(request, response);
+            if(request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new CompletionListener(timer, gauge, start));
+                async = true;
+            }
+        } finally {
+            if(!async) {
+                complete(timer, gauge, start);
+            }
+        }
+    }
+
+    private void complete(String timer, String gauge, long start) {
+        metrics.record(timer, start);
+        if(gauge!=null) {
+            metrics.add(gauge, -1);
+        }
+    }
+
+    /**
+     * Returns the timer of a request, null if the request is not recorded.
+     */
+    static String getTimer(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if(path.startsWith("/rest/async/")) {
+            path = "/rest" + path.substring("/rest/async".length());
+        }
+        if(path.equals("/rest/files") || path.startsWith("/rest/files/")) {
+            return FileUploadMetrics.HTTP_FIND;
+        }
+        if(path.equals("/rest/file") || path.startsWith("/rest/file/")) {
+            return FileUploadMetrics.HTTP_DOWNLOAD;
+        }
+        if(path.equals("/rest/upload") || path.startsWith("/rest/upload/")
+                || (path.startsWith("/rest/uploads/") && "PUT".equals(request.getMethod()))) {
+            return FileUploadMetrics.HTTP_UPLOAD;
+        }
+        return null;
+    }
+
+    private static String getGauge(String timer) {
+        if(FileUploadMetrics.HTTP_UPLOAD.equals(timer)) {
+            return FileUploadMetrics.ACTIVE_UPLOADS;
+        }
+        if(FileUploadMetrics.HTTP_DOWNLOAD.equals(timer)) {
+            return FileUploadMetrics.ACTIVE_DOWNLOADS;
+        }
+        return null;
+    }
+
+    public FileUploadMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(FileUploadMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Records a request in asynchronous mode when it is completed.
+     */
+    private class CompletionListener implements AsyncListener {
+
+        private final String timer;
+        private final String gauge;
+        private final long start;
+
+        CompletionListener(String timer, String gauge, long start) {
+            this.timer = timer;
+            this.gauge = gauge;
+            this.start = start;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            complete(timer, gauge, start);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            // followed by onComplete
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            // followed by onComplete
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.upload.file.rest;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import com.upload.file.util.FileUploadMetrics;
+import com.upload.file.util.FileUploadRateLimiter;
+
+/**
+ * Admission control of the upload and download endpoints, see
+ * FileUploadRateLimiter. Clients are identified by their IP address.
+ *
+ * An upload is charged with its Content-Length at admission; an upload
+ * without Content-Length (chunked) is charged with the bytes of its body
+ * as they are read, see CountingRequest. A download is charged with its
+ * Content-Length once the response sets it. A request within the
+ * limits waits until its tokens are available; a request which would wait
+ * longer than the maximum wait is answered at once with 429 Too Many
+ * Requests and a Retry-After header, before its body is read.
+ *
+ * @author Poornima
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 1)
+public class FileUploadRateLimitFilter extends OncePerRequestFilter {
+
+    @Autowired
+    private FileUploadRateLimiter rateLimiter;
+
+    @Autowired
+    private FileUploadMetrics metrics;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        // the routes of the upload and download timers
+        String route = rateLimiter.isEnabled() ? FileUploadMetricsFilter.getTimer(request) : null;
+        boolean upload = FileUploadMetrics.HTTP_UPLOAD.equals(route);
+        if(!upload && !FileUploadMetrics.HTTP_DOWNLOAD.equals(route)) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        String client = request.getRemoteAddr();
+        long length = upload ? request.getContentLengthLong() : 0;
+        long wait = rateLimiter.admit(client, Math.max(0, length));
+        if(wait < 0) {
+            metrics.increment(FileUploadMetrics.RATE_LIMIT_REJECTED, 1);
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(-wait - 1) + 1)));
+            return;
+        }
+        if(wait > 0) {
+            long start = System.nanoTime();
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ServletException("Interrupted while waiting for admission", e);
+            }
+            metrics.record(FileUploadMetrics.RATE_LIMIT_WAIT, start);
+        }
+        if(!upload) {
+            filterChain.doFilter(request, new ChargingResponse(response, client));
+        } else if(length < 0) {
+            filterChain.doFilter(new CountingRequest(request, bytes -> rateLimiter.charge(client, bytes)), response);
+        } else {
+            filterChain.doFilter(request, response);
+        }
+    }
+
+    public FileUploadRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public void setRateLimiter(FileUploadRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    public FileUploadMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(FileUploadMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Charges the Content-Length of a download to the client.
+     */
+    private class ChargingResponse extends HttpServletResponseWrapper {
+
+        private final String client;
+
+        ChargingResponse(HttpServletResponse response, String client) {
+            super(response);
+            this.client = client;
+        }
+
+        @Override
+        public void setContentLength(int len) {
+            super.setContentLength(len);
+            rateLimiter.charge(client, len);
+        }
+
+        @Override
+        public void setContentLengthLong(long len) {
+            super.setContentLengthLong(len);
+            rateLimiter.charge(client, len);
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            super.setHeader(name, value);
+            if(HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name) && value!=null) {
+                try {
+                    rateLimiter.charge(client, Long.parseLong(value));
+                } catch (NumberFormatException e) {
+                    // not charged
+                }
+            }
+        }
+    }
+}
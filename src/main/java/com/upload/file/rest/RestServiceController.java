@@ -1,7 +1,16 @@
 package com.upload.file.rest;
 
-import java.util.Date;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -9,18 +18,31 @@ import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.upload.file.service.ChunkedUploadService;
+import com.upload.file.service.IChunkedUploadService;
 import com.upload.file.service.IUploadService;
-import com.upload.file.util.FileUpload;
+import com.upload.file.util.ChunkedUploadSession;
+import com.upload.file.util.FileUploadContent;
 import com.upload.file.util.FileUploadMetadata;
+import com.upload.file.util.FileUploadPage;
+import com.upload.file.util.FileUploadQuery;
+import com.upload.file.util.FileUploadSort;
+import com.upload.file.util.FileUploadSource;
 
 @Controller
 @RequestMapping(value = "/rest")
@@ -29,8 +51,20 @@ public class RestServiceController {
 	
 private static final Logger LOG = Logger.getLogger(RestServiceController.class);
     
+    /** Maximum number of files of a page of findFileUpload */
+    public static final int MAX_PAGE_SIZE = 10000;
+    
     @Autowired
     IUploadService uploadService;
+    
+    @Autowired
+    IChunkedUploadService chunkedUploadService;
+    
+    @Autowired
+    FileContentWriter contentWriter;
+    
+    @Autowired
+    ObjectMapper objectMapper;
 
     /**
      * Adds a file to the file system.
@@ -46,12 +80,13 @@ private static final Logger LOG = Logger.getLogger(RestServiceController.class);
     public @ResponseBody FileUploadMetadata handleFileUpload(
             @RequestParam(value="file", required=true) MultipartFile fileReceived ,
             @RequestParam(value="author", required=false) String author,
-            @RequestParam(value="date", required=false) @DateTimeFormat(pattern="mm-dd-yyyy") Date date) {
+            @RequestParam(value="date", required=false) @DateTimeFormat(pattern=FileUploadMetadata.DATE_FORMAT_PATTERN) LocalDate date) {
         
         try {
-            FileUpload file = new FileUpload(fileReceived.getBytes(), fileReceived.getOriginalFilename(), date, author );
-            getUploadService().save(file);
-            return file.getMetadata();
+            FileUploadMetadata metadata = new FileUploadMetadata(fileReceived.getOriginalFilename(), date, author);
+            try (InputStream data = fileReceived.getInputStream()) {
+                return getUploadService().save(metadata, data);
+            }
         } catch (RuntimeException e) {
             LOG.error("Error while uploading.", e);
             throw e;
@@ -61,58 +96,332 @@ private static final Logger LOG = Logger.getLogger(RestServiceController.class);
         }      
     }
     
+    /**
+     * Adds a batch of files to the file system. All files get the same 
+     * author and date. The files are written together with grouped fsyncs.
+     * 
+     * Url: /rest/upload/batch?file={file}&file={file}&author={author}&date={date} [POST]
+     * 
+     * @param files The files posted in a multipart request
+     * @param author The name of the uploading author
+     * @param date The date of the files
+     * @return The meta data of the added files in the order of the files
+     */
+    @RequestMapping(value = "/upload/batch", method = RequestMethod.POST)
+    public @ResponseBody List<FileUploadMetadata> handleFileUploads(
+            @RequestParam(value="file", required=true) List<MultipartFile> filesReceived,
+            @RequestParam(value="author", required=false) String author,
+            @RequestParam(value="date", required=false) @DateTimeFormat(pattern=FileUploadMetadata.DATE_FORMAT_PATTERN) LocalDate date) {
+        List<FileUploadSource> files = new ArrayList<FileUploadSource>(filesReceived.size());
+        for (MultipartFile fileReceived : filesReceived) {
+            files.add(new MultipartFileSource(fileReceived, 
+                    new FileUploadMetadata(fileReceived.getOriginalFilename(), date, author)));
+        }
+        try {
+            return getUploadService().saveAll(files);
+        } catch (RuntimeException e) {
+            LOG.error("Error while uploading.", e);
+            throw e;
+        }
+    }
+    
+    /**
+     * Starts a chunked upload. The parts of the file are uploaded with 
+     * uploadPart and the file is saved with completeUpload.
+     * 
+     * Url: /rest/uploads?fileName={fileName}&author={author}&date={date} [POST]
+     * 
+     * @param fileName The name of the file
+     * @param author The name of the uploading author
+     * @param date The date of the file
+     * @return The upload session including the upload id
+     */
+    @RequestMapping(value = "/uploads", method = RequestMethod.POST)
+    public @ResponseBody ChunkedUploadSession initiateUpload(
+            @RequestParam(value="fileName", required=true) String fileName,
+            @RequestParam(value="author", required=false) String author,
+            @RequestParam(value="date", required=false) @DateTimeFormat(pattern=FileUploadMetadata.DATE_FORMAT_PATTERN) LocalDate date) {
+        return getChunkedUploadService().initiate(fileName, author, date);
+    }
+    
+    /**
+     * Returns a chunked upload including the parts received so far.
+     * Used to find out which parts have to be sent again to resume an upload.
+     * 
+     * Url: /rest/uploads/{uploadId} [GET]
+     * 
+     * @param uploadId The id of the upload
+     * @return The upload session
+     */
+    @RequestMapping(value = "/uploads/{uploadId}", method = RequestMethod.GET)
+    public ResponseEntity<ChunkedUploadSession> getUpload(@PathVariable String uploadId) {
+        ChunkedUploadSession session = getChunkedUploadService().getSession(uploadId);
+        if(session==null) {
+            return new ResponseEntity<ChunkedUploadSession>(HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<ChunkedUploadSession>(session, HttpStatus.OK);
+    }
+    
+    /**
+     * Uploads a part of a chunked upload. The request body is the data of 
+     * the part (application/octet-stream). Parts may be uploaded in parallel, a part which is uploaded 
+     * again replaces the previous one.
+     * 
+     * Url: /rest/uploads/{uploadId}/parts/{partNumber} [PUT]
+     * 
+     * @param uploadId The id of the upload
+     * @param partNumber The number of the part, starting with 1
+     * @return The received part
+     */
+    @RequestMapping(value = "/uploads/{uploadId}/parts/{partNumber}", method = RequestMethod.PUT, 
+            consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<ChunkedUploadSession.Part> uploadPart(@PathVariable String uploadId, 
+            @PathVariable int partNumber, HttpServletRequest request) throws IOException {
+        if(partNumber < 1 || partNumber > ChunkedUploadService.MAX_PARTS) {
+            return new ResponseEntity<ChunkedUploadSession.Part>(HttpStatus.BAD_REQUEST);
+        }
+        try (InputStream data = request.getInputStream()) {
+            return new ResponseEntity<ChunkedUploadSession.Part>(
+                    getChunkedUploadService().savePart(uploadId, partNumber, data), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            // unknown, or completed while the part was sent
+            LOG.warn("Part can not be saved: " + e.getMessage());
+            return new ResponseEntity<ChunkedUploadSession.Part>(HttpStatus.NOT_FOUND);
+        }
+    }
+    
+    /**
+     * Completes a chunked upload. The parts are assembled and the file is saved.
+     * 
+     * Url: /rest/uploads/{uploadId}/complete [POST]
+     * 
+     * @param uploadId The id of the upload
+     * @return The meta data of the added file
+     */
+    @RequestMapping(value = "/uploads/{uploadId}/complete", method = RequestMethod.POST)
+    public ResponseEntity<FileUploadMetadata> completeUpload(@PathVariable String uploadId) {
+        if(!getChunkedUploadService().exists(uploadId)) {
+            return new ResponseEntity<FileUploadMetadata>(HttpStatus.NOT_FOUND);
+        }
+        try {
+            return new ResponseEntity<FileUploadMetadata>(getChunkedUploadService().complete(uploadId), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            LOG.warn("Chunked upload can not be completed: " + e.getMessage());
+            return new ResponseEntity<FileUploadMetadata>(HttpStatus.CONFLICT);
+        }
+    }
+    
+    /**
+     * Cancels a chunked upload and deletes the received parts.
+     * 
+     * Url: /rest/uploads/{uploadId} [DELETE]
+     * 
+     * @param uploadId The id of the upload
+     */
+    @RequestMapping(value = "/uploads/{uploadId}", method = RequestMethod.DELETE)
+    public ResponseEntity<Void> abortUpload(@PathVariable String uploadId) {
+        getChunkedUploadService().abort(uploadId);
+        return new ResponseEntity<Void>(HttpStatus.NO_CONTENT);
+    }
+    
     /**
      * Finds file in the file system. Returns a list of files meta data 
      * which does not include the file data. Use getFileUpload to get the file.
      * Returns an empty list if no file was found.
      * 
-     * Url: /rest/uploads?author={author}&date={date} [GET]
+     * Files can be filtered by exact author or author prefix, file name
+     * prefix, extension, date or date range and size range in bytes, see
+     * FileUploadQuery. All given filters have to match.
      * 
-     * @param author The name of the uploading author
-     * @param date The date of the file
+     * If a sort order, a limit or a cursor is given, a sorted page of at 
+     * most limit files is returned. If there are more files, the cursor of
+     * the next page is returned in the header X-Next-Cursor and the url of 
+     * the next page in the Link header. The sort order is kept in the cursor.
+     * 
+     * Url: /rest/files?author={author}&authorPrefix={prefix}&namePrefix={prefix}&extension={extension}
+     *      &date={date}&from={date}&to={date}&minSize={bytes}&maxSize={bytes}
+     *      &sort={uuid|date|name}&order={asc|desc}&limit={limit}&cursor={cursor} [GET]
+     * 
+     * @param query The filters of the query
+     * @param sort The sort order: uuid (default), date or name
+     * @param order The direction of the sort order: asc (default) or desc
+     * @param limit The maximum number of files, at most MAX_PAGE_SIZE
+     * @param cursor The cursor of the page returned with the previous page
      * @return A list of file meta data
      */
     @RequestMapping(value = "/files", method = RequestMethod.GET)
-    public HttpEntity<List<FileUploadMetadata>> findFileUpload(
-            @RequestParam(value="author", required=false) String author,
-            @RequestParam(value="date", required=false) @DateTimeFormat(pattern="mm-dd-yyyy") Date date) {
+    public HttpEntity<List<FileUploadMetadata>> findFileUpload(FileUploadQuery query,
+            @RequestParam(value="sort", required=false) String sort,
+            @RequestParam(value="order", required=false) String order,
+            @RequestParam(value="limit", required=false) Integer limit,
+            @RequestParam(value="cursor", required=false) String cursor) {
         HttpHeaders httpHeaders = new HttpHeaders();
-        return new ResponseEntity<List<FileUploadMetadata>>(getUploadService().findFileUploads(author,date), httpHeaders,HttpStatus.OK);
+        if(sort==null && limit==null && cursor==null) {
+            return new ResponseEntity<List<FileUploadMetadata>>(getUploadService().findFileUploads(query), httpHeaders,HttpStatus.OK);
+        }
+        FileUploadPage.Cursor pageCursor;
+        try {
+            pageCursor = (cursor!=null) ? FileUploadPage.Cursor.decode(cursor) 
+                    : new FileUploadPage.Cursor(parseSort(sort), "desc".equalsIgnoreCase(order));
+        } catch (IllegalArgumentException e) {
+            LOG.warn("Invalid page request: " + e.getMessage());
+            return new ResponseEntity<List<FileUploadMetadata>>(HttpStatus.BAD_REQUEST);
+        }
+        if(limit!=null && limit < 1) {
+            return new ResponseEntity<List<FileUploadMetadata>>(HttpStatus.BAD_REQUEST);
+        }
+        int pageSize = (limit==null) ? MAX_PAGE_SIZE : Math.min(limit, MAX_PAGE_SIZE);
+        FileUploadPage page = getUploadService().findFileUploadPage(query, pageCursor, pageSize);
+        if(page.getNextCursor()!=null) {
+            httpHeaders.set(FileUploadPage.NEXT_CURSOR_HEADER, page.getNextCursor());
+            httpHeaders.set(HttpHeaders.LINK, "<" + ServletUriComponentsBuilder.fromCurrentRequest()
+                    .replaceQueryParam("cursor", page.getNextCursor()).build().toUriString() + ">; rel=\"next\"");
+        }
+        return new ResponseEntity<List<FileUploadMetadata>>(page.getFiles(), httpHeaders, HttpStatus.OK);
+    }
+    
+    /**
+     * Finds file in the file system like findFileUpload, but streams the
+     * meta data as newline delimited JSON, one file per line, as the files
+     * are found. The files are not sorted. Used by clients which request
+     * application/x-ndjson.
+     * 
+     * Url: /rest/files?author={author}&date={date}&... [GET, Accept: application/x-ndjson]
+     * 
+     * @param query The filters of the query
+     */
+    @RequestMapping(value = "/files", method = RequestMethod.GET, produces = FileUploadPage.NDJSON_VALUE)
+    public void streamFileUpload(FileUploadQuery query, HttpServletResponse response) throws IOException {
+        response.setContentType(FileUploadPage.NDJSON_VALUE);
+        ObjectWriter writer = getObjectMapper().writerFor(FileUploadMetadata.class);
+        OutputStream output = response.getOutputStream();
+        try {
+            getUploadService().forEachFileUpload(query, metadata -> {
+                try {
+                    output.write(writer.writeValueAsBytes(metadata));
+                    output.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            // the client closed the connection
+            throw e.getCause();
+        }
+    }
+    
+    private static FileUploadSort parseSort(String sort) {
+        if(sort==null) {
+            return FileUploadSort.UUID;
+        }
+        return FileUploadSort.valueOf(sort.toUpperCase(Locale.ROOT));
+    }
+    
+    
+    /**
+     * Returns the meta data of the files with the given UUIDs. 
+     * UUIDs of files which were not found are skipped.
+     * 
+     * Url: /rest/files/batch?id={id}&id={id} [GET]
+     * 
+     * @param ids The UUIDs of files
+     * @return A list of file meta data
+     */
+    @RequestMapping(value = "/files/batch", method = RequestMethod.GET)
+    public @ResponseBody List<FileUploadMetadata> getFileUploadMetadata(
+            @RequestParam(value="id", required=true) List<String> ids) {
+        return getUploadService().getFileUploadMetadata(ids);
     }
     
+    /**
+     * Returns the meta data of the files with the UUIDs posted as JSON array.
+     * Used for lists of UUIDs which are too long for a URL.
+     * 
+     * Url: /rest/files/batch [POST]
+     * 
+     * @param ids The UUIDs of files
+     * @return A list of file meta data
+     */
+    @RequestMapping(value = "/files/batch", method = RequestMethod.POST)
+    public @ResponseBody List<FileUploadMetadata> postFileUploadMetadata(@RequestBody List<String> ids) {
+        return getUploadService().getFileUploadMetadata(ids);
+    }
     
     /**
      * Returns the file from the file system with the given UUID.
+     * The file is streamed from the file system to the client.
      * 
-     * Url:  [GET]
+     * Url: /rest/file?id={id} [GET]
      * 
      * @param id The UUID of a file
-     * @return The file
      */
     @RequestMapping(value = "/file", method = RequestMethod.GET)
-    public HttpEntity<byte[]> getFileUpload(@RequestParam(value="id", required=true) String id) {         
-        // send it back to the client
-        HttpHeaders httpHeaders = new HttpHeaders();
-        return new ResponseEntity<byte[]>(getUploadService().getFileUploadFile(id), httpHeaders,HttpStatus.OK);
-        
+    public void getFileUpload(@RequestParam(value="id", required=true) String id,
+            HttpServletRequest request, HttpServletResponse response) throws IOException {         
+        writeFileUpload(id, request, response);
     }
 
  
     /**
      * Returns the document file from the archive with the given UUID.
+     * The file is streamed from the file system to the client.
      * 
-     * Url: /archive/document/{id} [GET]
+     * Url: /rest/file/{id} [GET]
      * 
      * @param id The UUID of a document
-     * @return The document file
      */
     @RequestMapping(value = "/file/{id}", method = RequestMethod.GET)
-    public HttpEntity<byte[]> getDocument(@PathVariable String id) {         
-        // send it back to the client
-        HttpHeaders httpHeaders = new HttpHeaders();
-        return new ResponseEntity<byte[]>(getUploadService().getFileUploadFile(id), httpHeaders, HttpStatus.OK);
+    public void getDocument(@PathVariable String id,
+            HttpServletRequest request, HttpServletResponse response) throws IOException {         
+        writeFileUpload(id, request, response);
     }
    
+    private void writeFileUpload(String id, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        FileUploadContent content = getUploadService().getFileUploadContent(id);
+        if(content==null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        getContentWriter().write(content, request, response);
+    }
+
+    /**
+     * Answers requests with an invalid parameter, e.g. a file name which
+     * is empty or . or .., with 400 (bad request).
+     *
+     * @param e The exception thrown by the handler
+     * @return An empty response with status 400
+     */
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Void> handleIllegalArgument(IllegalArgumentException e) {
+        LOG.warn("Invalid request: " + e.getMessage());
+        return new ResponseEntity<Void>(HttpStatus.BAD_REQUEST);
+    }
+    
+    	
+    /**
+     * A file of a multipart request to be saved in a batch.
+     */
+    private static class MultipartFileSource implements FileUploadSource {
+        
+        private final MultipartFile file;
+        private final FileUploadMetadata metadata;
+        
+        MultipartFileSource(MultipartFile file, FileUploadMetadata metadata) {
+            this.file = file;
+            this.metadata = metadata;
+        }
+
+        @Override
+        public FileUploadMetadata getMetadata() {
+            return metadata;
+        }
+
+        @Override
+        public InputStream openStream() throws IOException {
+            return file.getInputStream();
+        }
+    }
     	
     public IUploadService getUploadService() {
         return uploadService;
@@ -122,4 +431,28 @@ private static final Logger LOG = Logger.getLogger(RestServiceController.class);
         this.uploadService = uploadService;
     }
 
+    public IChunkedUploadService getChunkedUploadService() {
+        return chunkedUploadService;
+    }
+
+    public void setChunkedUploadService(IChunkedUploadService chunkedUploadService) {
+        this.chunkedUploadService = chunkedUploadService;
+    }
+
+    public FileContentWriter getContentWriter() {
+        return contentWriter;
+    }
+
+    public void setContentWriter(FileContentWriter contentWriter) {
+        this.contentWriter = contentWriter;
+    }
+
+    public ObjectMapper getObjectMapper() {
+        return objectMapper;
+    }
+
+    public void setObjectMapper(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
 }
@@ -0,0 +1,165 @@
+package com.upload.file.service;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.upload.file.util.AsyncFileDownload;
+import com.upload.file.util.AsyncFileUpload;
+import com.upload.file.util.FileSystemDocumentDao;
+import com.upload.file.util.FileUploadContent;
+import com.upload.file.util.FileUploadMetadata;
+
+/**
+ * A non-blocking service to upload and download files.
+ *
+ * Uploads are written to a staging directory next to the uploads directory
+ * and moved into the archive by IUploadService when they are completed.
+ * All asynchronous file channels share one small pool of threads
+ * (upload.async.io-threads). Completed uploads are saved on a second pool
+ * of the same size, since saving waits for the fsyncs of the upload.
+ *
+ * @author Poornima
+ */
+@Service("asyncUploadService")
+public class AsyncUploadService implements IAsyncUploadService {
+
+    private static final Logger LOG = Logger.getLogger(AsyncUploadService.class);
+
+    public static final String STAGING_DIRECTORY = FileSystemDocumentDao.DIRECTORY + ".async";
+
+    @Autowired
+    private IUploadService uploadService;
+
+    @Value("${upload.async.io-threads:4}")
+    private int ioThreads = 4;
+
+    private ExecutorService executor;
+    private ExecutorService commitExecutor;
+
+    @PostConstruct
+    public void init() {
+        Path stagingPath = Paths.get(STAGING_DIRECTORY);
+        try {
+            Files.createDirectories(stagingPath);
+            // uploads which were not completed before a restart cannot be resumed
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(stagingPath)) {
+                for (Path file : files) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            String message = "Error while creating staging directory: " + STAGING_DIRECTORY;
+            LOG.error(message, e);
+            throw new RuntimeException(message, e);
+        }
+        executor = Executors.newFixedThreadPool(ioThreads, createThreadFactory("upload-async-io-"));
+        commitExecutor = Executors.newFixedThreadPool(ioThreads, createThreadFactory("upload-async-commit-"));
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdown();
+        commitExecutor.shutdown();
+    }
+
+    @Override
+    public AsyncFileUpload startUpload(FileUploadMetadata metadata) {
+        try {
+            Path file = Paths.get(STAGING_DIRECTORY, metadata.getUuid());
+            return new AsyncFileUpload(metadata, file, executor);
+        } catch (IOException e) {
+            String message = "Error while starting upload";
+            LOG.error(message, e);
+            throw new RuntimeException(message, e);
+        }
+    }
+
+    /**
+     * Closes the staging file and moves it into the archive.
+     */
+    @Override
+    public CompletableFuture<FileUploadMetadata> complete(final AsyncFileUpload upload) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                upload.close();
+                return uploadService.save(upload.getMetadata(), upload.getFile());
+            } catch (IOException e) {
+                String message = "Error while completing upload: " + upload.getFile();
+                LOG.error(message, e);
+                throw new RuntimeException(message, e);
+            } finally {
+                upload.abort();
+            }
+        }, commitExecutor);
+    }
+
+    @Override
+    public void abort(AsyncFileUpload upload) {
+        upload.abort();
+    }
+
+    @Override
+    public AsyncFileDownload startDownload(String id) {
+        FileUploadContent content = uploadService.getFileUploadContent(id);
+        if(content==null) {
+            return null;
+        }
+        try {
+            return new AsyncFileDownload(content, executor);
+        } catch (IOException e) {
+            String message = "Error while starting download of file with id: " + id;
+            LOG.error(message, e);
+            throw new RuntimeException(message, e);
+        }
+    }
+
+    @Override
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    private static ThreadFactory createThreadFactory(final String prefix) {
+        final AtomicInteger count = new AtomicInteger();
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    public IUploadService getUploadService() {
+        return uploadService;
+    }
+
+    public void setUploadService(IUploadService uploadService) {
+        this.uploadService = uploadService;
+    }
+
+    public int getIoThreads() {
+        return ioThreads;
+    }
+
+    public void setIoThreads(int ioThreads) {
+        this.ioThreads = ioThreads;
+    }
+}
@@ -0,0 +1,475 @@
+package com.upload.file.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.upload.file.util.ChunkedUploadSession;
+import com.upload.file.util.FileSystemDocumentDao;
+import com.upload.file.util.FileUploadMetadata;
+import com.upload.file.util.FileUploadMetadataCodec;
+
+/**
+ * A service to upload a file in parts.
+ *
+ * Each upload session has a folder in the staging directory. The folder
+ * contains the meta data of the upload and one file per received part.
+ * A part is written to a temporary file and renamed when it is complete,
+ * so a part which was interrupted is never used. Since the session is kept
+ * in the file system an upload can be resumed after a restart.
+ *
+ * On completion the parts are joined in order to one file in the session
+ * folder, which IUploadService takes over like the file of an asynchronous
+ * upload, so the data is not streamed through the request thread again. The session is
+ * claimed first by renaming its folder, so concurrent completions of the
+ * same upload save the file only once. If the parts are incomplete or the
+ * file can not be saved, the session is restored and can be completed
+ * again.
+ *
+ * The meta data of a session is stored with FileUploadMetadataCodec.
+ * Sessions which did not receive a part for upload.chunked.session-ttl
+ * seconds are abandoned, a background thread deletes them every
+ * upload.chunked.sweep-interval seconds. A session being completed is
+ * only deleted upload.chunked.completion-ttl seconds after it was
+ * claimed, when its completion was interrupted by a crash.
+ *
+ * @author Poornima
+ */
+@Service("chunkedUploadService")
+public class ChunkedUploadService implements IChunkedUploadService {
+
+    private static final Logger LOG = Logger.getLogger(ChunkedUploadService.class);
+
+    public static final String STAGING_DIRECTORY = FileSystemDocumentDao.DIRECTORY + ".staging";
+    public static final String SESSION_FILE_NAME = "session.bin";
+    /** Session file of sessions initiated by older versions */
+    public static final String LEGACY_SESSION_FILE_NAME = "session.properties";
+    public static final String PART_PREFIX = "part-";
+    /** File with the assembled parts, taken over by the upload service */
+    public static final String ASSEMBLED_FILE_NAME = "assembled.tmp";
+    /** Suffix of the folder of a session which is being completed */
+    public static final String COMPLETING_SUFFIX = ".completing";
+    public static final int MAX_PARTS = 10000;
+
+    @Autowired
+    private IUploadService uploadService;
+
+    @Value("${upload.chunked.session-ttl:86400}")
+    private long sessionTtl = 86400;
+
+    @Value("${upload.chunked.completion-ttl:86400}")
+    private long completionTtl = 86400;
+
+    @Value("${upload.chunked.sweep-interval:3600}")
+    private long sweepInterval = 3600;
+
+    /** Next to the directory of the store, so the assembled file can be renamed into it */
+    private String stagingDirectory = STAGING_DIRECTORY;
+
+    private ScheduledExecutorService sweeper;
+
+    @PostConstruct
+    public void init() {
+        new File(stagingDirectory).mkdirs();
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "upload-chunked-sweep");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweep, sweepInterval, sweepInterval, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void close() {
+        sweeper.shutdownNow();
+    }
+
+    @Override
+    public ChunkedUploadSession initiate(String fileName, String authorName, LocalDate date) {
+        String uploadId = UUID.randomUUID().toString();
+        FileUploadMetadata sessionMetadata = new FileUploadMetadata(uploadId, fileName, authorName, date);
+        Path sessionPath = getSessionPath(uploadId);
+        try {
+            Files.createDirectories(sessionPath);
+            Files.write(sessionPath.resolve(SESSION_FILE_NAME), FileUploadMetadataCodec.encode(sessionMetadata));
+        } catch (IOException e) {
+            String message = "Error while initiating chunked upload";
+            LOG.error(message, e);
+            throw new RuntimeException(message, e);
+        }
+        return new ChunkedUploadSession(uploadId, sessionMetadata.getFileName(), authorName, date);
+    }
+
+    @Override
+    public ChunkedUploadSession getSession(String uploadId) {
+        if(!isValidId(uploadId)) {
+            return null;
+        }
+        try {
+            return readSession(uploadId, getSessionPath(uploadId));
+        } catch (IOException e) {
+            String message = "Error while reading chunked upload: " + uploadId;
+            LOG.error(message, e);
+            throw new RuntimeException(message, e);
+        }
+    }
+
+    @Override
+    public boolean exists(String uploadId) {
+        if(!isValidId(uploadId)) {
+            return false;
+        }
+        Path sessionPath = getSessionPath(uploadId);
+        return Files.exists(sessionPath.resolve(SESSION_FILE_NAME))
+                || Files.exists(sessionPath.resolve(LEGACY_SESSION_FILE_NAME));
+    }
+
+    /**
+     * Reads the session in the folder, null if the folder has no session.
+     */
+    private ChunkedUploadSession readSession(String uploadId, Path sessionPath) throws IOException {
+        byte[] bytes = readSessionFile(sessionPath);
+        if(bytes==null) {
+            return null;
+        }
+        FileUploadMetadata metadata = FileUploadMetadataCodec.decode(bytes);
+        ChunkedUploadSession session = new ChunkedUploadSession(uploadId, metadata.getFileName(),
+                metadata.getAuthorName(), metadata.getUploadDate());
+        session.setParts(listParts(sessionPath));
+        return session;
+    }
+
+    private byte[] readSessionFile(Path sessionPath) throws IOException {
+        try {
+            return Files.readAllBytes(sessionPath.resolve(SESSION_FILE_NAME));
+        } catch (NoSuchFileException e) {
+            // initiated by an older version or no session
+        }
+        try {
+            return Files.readAllBytes(sessionPath.resolve(LEGACY_SESSION_FILE_NAME));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public ChunkedUploadSession.Part savePart(String uploadId, int partNumber, InputStream data) {
+        if(partNumber < 1 || partNumber > MAX_PARTS) {
+            throw new IllegalArgumentException("Part number has to be between 1 and " + MAX_PARTS + ": " + partNumber);
+        }
+        if(!exists(uploadId)) {
+            throw new IllegalArgumentException("Unknown chunked upload: " + uploadId);
+        }
+        Path sessionPath = getSessionPath(uploadId);
+        Path tempFile = null;
+        try {
+            tempFile = Files.createTempFile(sessionPath, PART_PREFIX, ".tmp");
+            long size = Files.copy(data, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tempFile, sessionPath.resolve(getPartFileName(partNumber)),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return new ChunkedUploadSession.Part(partNumber, size);
+        } catch (NoSuchFileException e) {
+            // the session was claimed or deleted meanwhile
+            throw new IllegalArgumentException("Unknown or completed chunked upload: " + uploadId);
+        } catch (IOException e) {
+            String message = "Error while saving part " + partNumber + " of chunked upload: " + uploadId;
+            LOG.error(message, e);
+            throw new RuntimeException(message, e);
+        } finally {
+            deleteQuietly(tempFile);
+        }
+    }
+
+    @Override
+    public FileUploadMetadata complete(String uploadId) {
+        if(!isValidId(uploadId)) {
+            throw new IllegalArgumentException("Unknown chunked upload: " + uploadId);
+        }
+        Path sessionPath = getSessionPath(uploadId);
+        Path claimedPath = sessionPath.resolveSibling(uploadId + COMPLETING_SUFFIX);
+        try {
+            Files.move(sessionPath, claimedPath, StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            throw new IllegalArgumentException("Unknown or completed chunked upload: " + uploadId);
+        } catch (IOException e) {
+            String message = "Error while claiming chunked upload: " + uploadId;
+            LOG.error(message, e);
+            throw new RuntimeException(message, e);
+        }
+        try {
+            // the rename keeps the time of the last part, sweep measures the completion from the claim
+            Files.setLastModifiedTime(claimedPath, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            LOG.warn("Error while setting the claim time of chunked upload: " + uploadId, e);
+        }
+        FileUploadMetadata metadata;
+        try {
+            metadata = assemble(uploadId, claimedPath);
+        } catch (RuntimeException e) {
+            restore(uploadId, claimedPath, sessionPath);
+            throw e;
+        }
+        deleteSession(uploadId, claimedPath);
+        return metadata;
+    }
+
+    /**
+     * Saves the file from the parts of a claimed session.
+     */
+    private FileUploadMetadata assemble(String uploadId, Path claimedPath) {
+        ChunkedUploadSession session;
+        try {
+            session = readSession(uploadId, claimedPath);
+        } catch (IOException e) {
+            String message = "Error while reading chunked upload: " + uploadId;
+            LOG.error(message, e);
+            throw new RuntimeException(message, e);
+        }
+        if(session==null) {
+            throw new IllegalArgumentException("Unknown chunked upload: " + uploadId);
+        }
+        List<ChunkedUploadSession.Part> parts = session.getParts();
+        if(parts.isEmpty()) {
+            throw new IllegalArgumentException("Chunked upload has no parts: " + uploadId);
+        }
+        for (int i = 0; i < parts.size(); i++) {
+            if(parts.get(i).getPartNumber() != i + 1) {
+                throw new IllegalArgumentException("Part " + (i + 1) + " of chunked upload is missing: " + uploadId);
+            }
+        }
+        FileUploadMetadata metadata = new FileUploadMetadata(session.getFileName(), session.getUploadDate(), session.getAuthorName());
+        Path file = claimedPath.resolve(ASSEMBLED_FILE_NAME);
+        try {
+            concat(claimedPath, parts, file);
+            uploadService.save(metadata, file);
+        } catch (IOException e) {
+            String message = "Error while completing chunked upload: " + uploadId;
+            LOG.error(message, e);
+            throw new RuntimeException(message, e);
+        } finally {
+            deleteQuietly(file);
+        }
+        return metadata;
+    }
+
+    /**
+     * Writes the parts to one file, which is taken over by the upload
+     * service. A single part is linked, so it is kept if the file can not
+     * be saved. Otherwise the parts are copied with FileChannel.transferTo,
+     * which does not copy the data through the heap.
+     */
+    private void concat(Path claimedPath, List<ChunkedUploadSession.Part> parts, Path file) throws IOException {
+        Files.deleteIfExists(file);
+        if(parts.size()==1) {
+            try {
+                Files.createLink(file, claimedPath.resolve(getPartFileName(parts.get(0).getPartNumber())));
+                return;
+            } catch (UnsupportedOperationException | IOException e) {
+                LOG.debug("Part can not be linked, copying it", e);
+            }
+        }
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            for (ChunkedUploadSession.Part part : parts) {
+                try (FileChannel in = FileChannel.open(claimedPath.resolve(getPartFileName(part.getPartNumber())),
+                        StandardOpenOption.READ)) {
+                    long size = in.size();
+                    long position = 0;
+                    while (position < size) {
+                        position += in.transferTo(position, size - position, out);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a claimed session which could not be completed, so it can be
+     * completed again.
+     */
+    private void restore(String uploadId, Path claimedPath, Path sessionPath) {
+        try {
+            Files.move(claimedPath, sessionPath, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.error("Error while restoring chunked upload: " + uploadId, e);
+        }
+    }
+
+    @Override
+    public void abort(String uploadId) {
+        if(!isValidId(uploadId)) {
+            return;
+        }
+        deleteSession(uploadId, getSessionPath(uploadId));
+    }
+
+    /**
+     * Deletes the sessions which did not receive a part for the session
+     * TTL, and the folders of completions which were interrupted by a
+     * crash and were claimed more than the completion TTL ago. The last
+     * modified time of a folder changes with every part saved in it and
+     * is set when the session is claimed.
+     *
+     * @return The number of deleted sessions
+     */
+    public int sweep() {
+        long now = System.currentTimeMillis();
+        long expired = now - TimeUnit.SECONDS.toMillis(sessionTtl);
+        long completionExpired = now - TimeUnit.SECONDS.toMillis(completionTtl);
+        int count = 0;
+        try (DirectoryStream<Path> sessions = Files.newDirectoryStream(Paths.get(stagingDirectory))) {
+            for (Path sessionPath : sessions) {
+                String name = sessionPath.getFileName().toString();
+                boolean completing = name.endsWith(COMPLETING_SUFFIX);
+                String uploadId = completing ? name.substring(0, name.length() - COMPLETING_SUFFIX.length()) : name;
+                long lastModified = Files.getLastModifiedTime(sessionPath).toMillis();
+                if(!isValidId(uploadId) || lastModified >= (completing ? completionExpired : expired)) {
+                    continue;
+                }
+                try {
+                    deleteSession(uploadId, sessionPath);
+                    count++;
+                } catch (RuntimeException e) {
+                    // logged by deleteSession, the next sweep tries again
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Error while deleting expired chunked uploads", e);
+        }
+        if(count > 0) {
+            LOG.info("Deleted " + count + " expired chunked uploads");
+        }
+        return count;
+    }
+
+    private void deleteSession(String uploadId, Path sessionPath) {
+        if(!Files.isDirectory(sessionPath)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(sessionPath)) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+            Files.deleteIfExists(sessionPath);
+        } catch (IOException e) {
+            String message = "Error while deleting chunked upload: " + uploadId;
+            LOG.error(message, e);
+            throw new RuntimeException(message, e);
+        }
+    }
+
+    private List<ChunkedUploadSession.Part> listParts(Path sessionPath) throws IOException {
+        List<ChunkedUploadSession.Part> parts = new ArrayList<ChunkedUploadSession.Part>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(sessionPath, PART_PREFIX + "[0-9]*[0-9]")) {
+            for (Path file : files) {
+                int partNumber = Integer.parseInt(file.getFileName().toString().substring(PART_PREFIX.length()));
+                parts.add(new ChunkedUploadSession.Part(partNumber, Files.size(file)));
+            }
+        }
+        Collections.sort(parts, new Comparator<ChunkedUploadSession.Part>() {
+            @Override
+            public int compare(ChunkedUploadSession.Part a, ChunkedUploadSession.Part b) {
+                return Integer.compare(a.getPartNumber(), b.getPartNumber());
+            }
+        });
+        return parts;
+    }
+
+    private boolean isValidId(String uploadId) {
+        if(uploadId==null) {
+            return false;
+        }
+        try {
+            return UUID.fromString(uploadId).toString().equals(uploadId);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private Path getSessionPath(String uploadId) {
+        return Paths.get(stagingDirectory, uploadId);
+    }
+
+    private static String getPartFileName(int partNumber) {
+        return PART_PREFIX + String.format("%05d", partNumber);
+    }
+
+    private void deleteQuietly(Path path) {
+        if(path==null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            LOG.warn("Error while deleting file: " + path, e);
+        }
+    }
+
+    public String getStagingDirectory() {
+        return stagingDirectory;
+    }
+
+    /**
+     * Sets the directory of the sessions. Has to be set before init.
+     */
+    public void setStagingDirectory(String stagingDirectory) {
+        this.stagingDirectory = stagingDirectory;
+    }
+
+    public IUploadService getUploadService() {
+        return uploadService;
+    }
+
+    public void setUploadService(IUploadService uploadService) {
+        this.uploadService = uploadService;
+    }
+
+    public long getSessionTtl() {
+        return sessionTtl;
+    }
+
+    public void setSessionTtl(long sessionTtl) {
+        this.sessionTtl = sessionTtl;
+    }
+
+    public long getCompletionTtl() {
+        return completionTtl;
+    }
+
+    public void setCompletionTtl(long completionTtl) {
+        this.completionTtl = completionTtl;
+    }
+
+    public long getSweepInterval() {
+        return sweepInterval;
+    }
+
+    public void setSweepInterval(long sweepInterval) {
+        this.sweepInterval = sweepInterval;
+    }
+}
@@ -0,0 +1,59 @@
+package com.upload.file.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import com.upload.file.util.AsyncFileDownload;
+import com.upload.file.util.AsyncFileUpload;
+import com.upload.file.util.FileUploadMetadata;
+
+/**
+ * A non-blocking service to upload and download files. The file data is
+ * written and read with asynchronous file channels, so no thread waits
+ * for the disk while a file is transferred.
+ *
+ */
+public interface IAsyncUploadService {
+
+    /**
+     * Starts an upload. The file data is written with AsyncFileUpload.write
+     * and the upload is finished with complete or abort.
+     *
+     * @param metadata The meta data of the file
+     * @return The upload
+     */
+    AsyncFileUpload startUpload(FileUploadMetadata metadata);
+
+    /**
+     * Saves an upload whose data is completely written in the archive.
+     *
+     * @param upload An upload
+     * @return A future completed with the meta data of the saved file
+     */
+    CompletableFuture<FileUploadMetadata> complete(AsyncFileUpload upload);
+
+    /**
+     * Cancels an upload and deletes its data.
+     *
+     * @param upload An upload
+     */
+    void abort(AsyncFileUpload upload);
+
+    /**
+     * Starts the download of the file with the given id.
+     * Returns null if no file was found.
+     *
+     * @param id The id of a file
+     * @return The download
+     */
+    AsyncFileDownload startDownload(String id);
+
+    /**
+     * Returns the executor which runs the completion of asynchronous
+     * reads and writes. Callbacks which start the next read or write
+     * should run on it, so they do not nest on the caller's stack.
+     *
+     * @return The executor
+     */
+    Executor getExecutor();
+}
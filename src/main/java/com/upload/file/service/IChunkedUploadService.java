@@ -0,0 +1,74 @@
+package com.upload.file.service;
+
+import java.io.InputStream;
+import java.time.LocalDate;
+
+import com.upload.file.util.ChunkedUploadSession;
+import com.upload.file.util.FileUploadMetadata;
+
+/**
+ * A service to upload a file in parts. An upload is initiated, then the
+ * parts are uploaded in any order, possibly in parallel, and finally the
+ * upload is completed. A part which failed can be uploaded again, so an
+ * interrupted upload can be resumed.
+ *
+ */
+public interface IChunkedUploadService {
+
+    /**
+     * Starts a chunked upload.
+     *
+     * @param fileName The name of the file
+     * @param authorName The name of the uploading author, may be null
+     * @param date The date of the file, may be null
+     * @return The new upload session
+     */
+    ChunkedUploadSession initiate(String fileName, String authorName, LocalDate date);
+
+    /**
+     * Returns the upload session with the given id including the parts
+     * received so far. Returns null if no session was found.
+     *
+     * @param uploadId The id of an upload session
+     * @return The upload session
+     */
+    ChunkedUploadSession getSession(String uploadId);
+
+    /**
+     * Returns true if an upload session with the given id exists and is
+     * not being completed. Unlike getSession the parts are not listed.
+     *
+     * @param uploadId The id of an upload session
+     * @return true if the session exists
+     */
+    boolean exists(String uploadId);
+
+    /**
+     * Saves a part of a file. A part with the same number is replaced.
+     * The stream is not closed.
+     *
+     * @param uploadId The id of an upload session
+     * @param partNumber The number of the part, starting with 1
+     * @param data The data of the part
+     * @return The saved part
+     * @throws IllegalArgumentException If the part number is invalid or
+     *         the upload is unknown or completed
+     */
+    ChunkedUploadSession.Part savePart(String uploadId, int partNumber, InputStream data);
+
+    /**
+     * Assembles the parts in the order of their numbers and saves the file
+     * in the archive. The parts have to be numbered without gaps.
+     *
+     * @param uploadId The id of an upload session
+     * @return The meta data of the saved file
+     */
+    FileUploadMetadata complete(String uploadId);
+
+    /**
+     * Cancels an upload and deletes its parts.
+     *
+     * @param uploadId The id of an upload session
+     */
+    void abort(String uploadId);
+}
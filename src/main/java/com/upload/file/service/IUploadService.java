@@ -1,10 +1,17 @@
 package com.upload.file.service;
 
-import java.util.Date;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.LocalDate;
 import java.util.List;
+import java.util.function.Consumer;
 
 import com.upload.file.util.FileUpload;
+import com.upload.file.util.FileUploadContent;
 import com.upload.file.util.FileUploadMetadata;
+import com.upload.file.util.FileUploadPage;
+import com.upload.file.util.FileUploadQuery;
+import com.upload.file.util.FileUploadSource;
 
 /**
  * A service to save, find and get files from an file system. 
@@ -20,6 +27,35 @@ public interface IUploadService {
      */
     FileUploadMetadata save(FileUpload document);
     
+    /**
+     * Saves a document in the archive streaming the file data from 
+     * the given stream. The stream is not closed.
+     * 
+     * @param metadata The meta data of the document
+     * @param data The file data
+     * @return FileUploadMetadata The meta data of the saved document
+     */
+    FileUploadMetadata save(FileUploadMetadata metadata, InputStream data);
+    
+    /**
+     * Saves a document in the archive taking over a file which was already
+     * written, e.g. by an asynchronous upload. The file is moved into the 
+     * archive or deleted.
+     * 
+     * @param metadata The meta data of the document
+     * @param file The file with the file data
+     * @return FileUploadMetadata The meta data of the saved document
+     */
+    FileUploadMetadata save(FileUploadMetadata metadata, Path file);
+    
+    /**
+     * Saves a batch of documents in the archive.
+     * 
+     * @param files The documents to save
+     * @return The meta data of the saved documents in the same order
+     */
+    List<FileUploadMetadata> saveAll(List<? extends FileUploadSource> files);
+    
     /**
      * Finds document in the archive matching the given parameter.
      * A list of document meta data which does not include the file data.
@@ -30,7 +66,48 @@ public interface IUploadService {
      * @param date The date of a document, may be null
      * @return A list of document meta data
      */
-    List<FileUploadMetadata> findFileUploads(String personName, Date date);
+    List<FileUploadMetadata> findFileUploads(String personName, LocalDate date);
+    
+    /**
+     * Finds document in the archive matching the query, e.g. by author 
+     * prefix, file name prefix, extension, date range or size range.
+     * Returns an empty list if no document was found.
+     * 
+     * @param query The query
+     * @return A list of document meta data
+     */
+    List<FileUploadMetadata> findFileUploads(FileUploadQuery query);
+    
+    /**
+     * Finds a page of the documents in the archive matching the query.
+     * The documents are sorted in the order of the cursor and start after
+     * its position. The next page is found with the cursor returned in 
+     * the page.
+     * 
+     * @param query The query
+     * @param cursor The cursor of the page
+     * @param limit The maximum number of documents of the page
+     * @return A page of document meta data
+     */
+    FileUploadPage findFileUploadPage(FileUploadQuery query, FileUploadPage.Cursor cursor, int limit);
+    
+    /**
+     * Passes the documents in the archive matching the query to the
+     * consumer as they are found. The order is undefined.
+     * 
+     * @param query The query
+     * @param consumer The consumer of the document meta data
+     */
+    void forEachFileUpload(FileUploadQuery query, Consumer<FileUploadMetadata> consumer);
+    
+    /**
+     * Returns the meta data of the documents with the given ids.
+     * Ids of documents which were not found are skipped.
+     * 
+     * @param ids The ids of documents
+     * @return A list of document meta data in the order of the ids
+     */
+    List<FileUploadMetadata> getFileUploadMetadata(List<String> ids);
     
     
     /**
@@ -41,4 +118,15 @@ public interface IUploadService {
      * @return A document file
      */
     byte[] getFileUploadFile(String id);
-}
\ No newline at end of file
+    
+    /**
+     * Returns the content of the document file with the given id.
+     * The content references the stored file data so it can be streamed
+     * without reading it into memory.
+     * Returns null if no document was found.
+     * 
+     * @param id The id of a document
+     * @return The content of a document file
+     */
+    FileUploadContent getFileUploadContent(String id);
+}
@@ -1,19 +1,31 @@
 package com.upload.file.service;
 
+import java.io.InputStream;
 import java.io.Serializable;
-import java.util.Date;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.upload.file.util.FileUpload;
+import com.upload.file.util.FileUploadContent;
 import com.upload.file.util.FileUploadMetadata;
+import com.upload.file.util.FileUploadMetrics;
+import com.upload.file.util.FileUploadPage;
+import com.upload.file.util.FileUploadQuery;
+import com.upload.file.util.FileUploadSource;
 import com.upload.file.util.IFileUploadDao;
 
 /**
  * A service to save, find and get files from a file system. 
  * 
+ * The latencies of saving, loading and finding files are recorded in
+ * FileUploadMetrics.
+ * 
  * @author Poornima
  */
 @Service("uploadService")
@@ -23,22 +35,114 @@ public class UploadService implements IUploadService, Serializable {
     
     @Autowired
     private IFileUploadDao FileUploadDao;
+    
+    @Autowired
+    private FileUploadMetrics metrics;
 
     /**
      * Saves a document in the file system.
      */
     @Override
     public FileUploadMetadata save(FileUpload document) {
+        long start = System.nanoTime();
         getFileUploadDao().insert(document); 
+        getMetrics().record(FileUploadMetrics.SERVICE_INSERT, start);
         return document.getMetadata();
     }
     
+    /**
+     * Saves a document in the file system streaming the file data.
+     */
+    @Override
+    public FileUploadMetadata save(FileUploadMetadata metadata, InputStream data) {
+        long start = System.nanoTime();
+        getFileUploadDao().insert(metadata, data); 
+        getMetrics().record(FileUploadMetrics.SERVICE_INSERT, start);
+        return metadata;
+    }
+    
+    /**
+     * Saves a document in the file system moving the given file.
+     */
+    @Override
+    public FileUploadMetadata save(FileUploadMetadata metadata, Path file) {
+        long start = System.nanoTime();
+        getFileUploadDao().insert(metadata, file); 
+        getMetrics().record(FileUploadMetrics.SERVICE_INSERT, start);
+        return metadata;
+    }
+    
+    /**
+     * Saves a batch of documents in the file system.
+     */
+    @Override
+    public List<FileUploadMetadata> saveAll(List<? extends FileUploadSource> files) {
+        long start = System.nanoTime();
+        getFileUploadDao().insertAll(files);
+        getMetrics().record(FileUploadMetrics.SERVICE_INSERT, start);
+        List<FileUploadMetadata> metadataList = new ArrayList<FileUploadMetadata>(files.size());
+        for (FileUploadSource file : files) {
+            metadataList.add(file.getMetadata());
+        }
+        return metadataList;
+    }
+    
     /**
      * Finds document in the file system
      */
     @Override
-    public List<FileUploadMetadata> findFileUploads(String authorName, Date date) {
-        return getFileUploadDao().findByAuthorNameDate(authorName, date);
+    public List<FileUploadMetadata> findFileUploads(String authorName, LocalDate date) {
+        long start = System.nanoTime();
+        List<FileUploadMetadata> files = getFileUploadDao().findByAuthorNameDate(authorName, date);
+        getMetrics().record(FileUploadMetrics.SERVICE_FIND, start);
+        return files;
+    }
+    
+    /**
+     * Finds document in the file system matching the query
+     */
+    @Override
+    public List<FileUploadMetadata> findFileUploads(FileUploadQuery query) {
+        long start = System.nanoTime();
+        List<FileUploadMetadata> files = getFileUploadDao().find(query);
+        getMetrics().record(FileUploadMetrics.SERVICE_FIND, start);
+        return files;
+    }
+    
+    /**
+     * Finds a page of documents in the file system
+     */
+    @Override
+    public FileUploadPage findFileUploadPage(FileUploadQuery query, FileUploadPage.Cursor cursor, int limit) {
+        long start = System.nanoTime();
+        FileUploadPage page = getFileUploadDao().findPage(query, cursor, limit);
+        getMetrics().record(FileUploadMetrics.SERVICE_FIND, start);
+        return page;
+    }
+    
+    /**
+     * Passes documents in the file system to the consumer
+     */
+    @Override
+    public void forEachFileUpload(FileUploadQuery query, Consumer<FileUploadMetadata> consumer) {
+        getFileUploadDao().forEach(query, consumer);
+    }
+    
+    /**
+     * Returns the meta data of documents from the file system
+     */
+    @Override
+    public List<FileUploadMetadata> getFileUploadMetadata(List<String> ids) {
+        long start = System.nanoTime();
+        List<FileUploadMetadata> metadataList = new ArrayList<FileUploadMetadata>(ids.size());
+        for (String id : ids) {
+            FileUploadMetadata metadata = getFileUploadDao().loadMetadata(id);
+            if(metadata!=null) {
+                metadataList.add(metadata);
+            }
+        }
+        getMetrics().record(FileUploadMetrics.SERVICE_LOAD, start);
+        return metadataList;
     }
     
     /**
@@ -46,13 +150,26 @@ public class UploadService implements IUploadService, Serializable {
      */
     @Override
     public byte[] getFileUploadFile(String id) {
+        long start = System.nanoTime();
         FileUpload document = getFileUploadDao().load(id);
+        getMetrics().record(FileUploadMetrics.SERVICE_LOAD, start);
         if(document!=null) {
             return document.getFileData();
         } else {
             return null;
         }
     }
+    
+    /**
+     * Returns the content of the document file from the file system
+     */
+    @Override
+    public FileUploadContent getFileUploadContent(String id) {
+        long start = System.nanoTime();
+        FileUploadContent content = getFileUploadDao().loadContent(id);
+        getMetrics().record(FileUploadMetrics.SERVICE_LOAD, start);
+        return content;
+    }
 
 
     public IFileUploadDao getFileUploadDao() {
@@ -63,5 +180,13 @@ public class UploadService implements IUploadService, Serializable {
         FileUploadDao = documentDao;
     }
 
+    public FileUploadMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(FileUploadMetrics metrics) {
+        this.metrics = metrics;
+    }
+
 
 }
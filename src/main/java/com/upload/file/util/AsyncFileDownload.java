@@ -0,0 +1,99 @@
+package com.upload.file.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * A download of the content of a file which is read with an
+ * AsynchronousFileChannel.
+ *
+ * Content held in memory is copied from its buffer, the reads then
+ * complete at once.
+ *
+ * Only one read may be pending at a time.
+ *
+ * @author Poornima
+ */
+public class AsyncFileDownload {
+
+    private final FileUploadContent content;
+    private final AsynchronousFileChannel channel;
+    private final long end;
+    private volatile long position;
+
+    /**
+     * Opens the file of the content for reading.
+     *
+     * @param content The content to download
+     * @param executor The executor of the channel's completion handlers
+     * @throws IOException
+     */
+    public AsyncFileDownload(FileUploadContent content, ExecutorService executor) throws IOException {
+        this.content = content;
+        this.channel = content.isInMemory() ? null : AsynchronousFileChannel.open(content.getFile().toPath(),
+                Collections.singleton(StandardOpenOption.READ), executor);
+        this.position = content.getOffset();
+        this.end = content.getOffset() + content.getLength();
+    }
+
+    /**
+     * Reads the next bytes of the content into the buffer.
+     *
+     * @param buffer The buffer to fill
+     * @return A future completed with the number of bytes read, -1 at the end of the content
+     */
+    public CompletableFuture<Integer> read(ByteBuffer buffer) {
+        final CompletableFuture<Integer> future = new CompletableFuture<Integer>();
+        long remaining = end - position;
+        if(remaining <= 0) {
+            future.complete(-1);
+            return future;
+        }
+        if(buffer.remaining() > remaining) {
+            buffer.limit(buffer.position() + (int) remaining);
+        }
+        if(channel==null) {
+            ByteBuffer source = content.getData();
+            source.position((int) position);
+            source.limit((int) position + buffer.remaining());
+            int read = source.remaining();
+            buffer.put(source);
+            position += read;
+            future.complete(read);
+            return future;
+        }
+        channel.read(buffer, position, null, new CompletionHandler<Integer, Void>() {
+            @Override
+            public void completed(Integer read, Void attachment) {
+                if(read < 0) {
+                    future.completeExceptionally(new IOException("File was truncated: " + content.getFile()));
+                    return;
+                }
+                position += read;
+                future.complete(read);
+            }
+
+            @Override
+            public void failed(Throwable e, Void attachment) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    public void close() throws IOException {
+        if(channel!=null) {
+            channel.close();
+        }
+    }
+
+    public FileUploadContent getContent() {
+        return content;
+    }
+}
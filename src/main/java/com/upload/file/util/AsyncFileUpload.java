@@ -0,0 +1,121 @@
+package com.upload.file.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.Checksum;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A file upload in progress which is written with an AsynchronousFileChannel.
+ * The data is written to a staging file which is moved into the archive
+ * when the upload is completed.
+ *
+ * Only one write may be pending at a time. The CRC32C of the data is
+ * computed while it is written and set in the meta data on close.
+ *
+ * @author Poornima
+ */
+public class AsyncFileUpload {
+
+    private static final Logger LOG = Logger.getLogger(AsyncFileUpload.class);
+
+    private final FileUploadMetadata metadata;
+    private final Path file;
+    private final AsynchronousFileChannel channel;
+    private final Checksum crc = FileUploadChecksums.newCrc32c();
+    private volatile long size;
+
+    /**
+     * Creates the staging file and opens it for writing.
+     *
+     * @param metadata The meta data of the uploaded file
+     * @param file The staging file
+     * @param executor The executor of the channel's completion handlers
+     * @throws IOException
+     */
+    public AsyncFileUpload(FileUploadMetadata metadata, Path file, ExecutorService executor) throws IOException {
+        this.metadata = metadata;
+        this.file = file;
+        this.channel = AsynchronousFileChannel.open(file,
+                EnumSet.of(StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE), executor);
+    }
+
+    /**
+     * Appends the remaining bytes of the buffer to the file. The returned
+     * future completes when all bytes are written.
+     *
+     * @param buffer The data to write
+     * @return A future completed with the number of written bytes
+     */
+    public CompletableFuture<Integer> write(ByteBuffer buffer) {
+        CompletableFuture<Integer> future = new CompletableFuture<Integer>();
+        FileUploadChecksums.update(crc, buffer);
+        write(buffer, buffer.remaining(), future);
+        return future;
+    }
+
+    private void write(final ByteBuffer buffer, final int count, final CompletableFuture<Integer> future) {
+        channel.write(buffer, size, null, new CompletionHandler<Integer, Void>() {
+            @Override
+            public void completed(Integer written, Void attachment) {
+                size += written;
+                if(buffer.hasRemaining()) {
+                    write(buffer, count, future);
+                } else {
+                    future.complete(count);
+                }
+            }
+
+            @Override
+            public void failed(Throwable e, Void attachment) {
+                future.completeExceptionally(e);
+            }
+        });
+    }
+
+    /**
+     * Closes the file. The file is kept for the archive.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        channel.close();
+        metadata.setCrc32c(FileUploadChecksums.toHex(crc));
+    }
+
+    /**
+     * Closes and deletes the file.
+     */
+    public void abort() {
+        try {
+            channel.close();
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOG.warn("Error while deleting aborted upload: " + file, e);
+        }
+    }
+
+    public FileUploadMetadata getMetadata() {
+        return metadata;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the number of bytes written so far.
+     */
+    public long getSize() {
+        return size;
+    }
+}
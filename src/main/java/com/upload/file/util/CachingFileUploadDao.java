@@ -0,0 +1,160 @@
+package com.upload.file.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StreamUtils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * Data access object which caches the content of small files of another
+ * data access object.
+ *
+ * The stored data of files up to upload.cache.body.max-file-size is kept
+ * in memory, so downloads of frequently requested files (loadContent) are
+ * written from the cache instead of the file system. The cache uses the
+ * W-TinyLFU eviction policy of Caffeine and is bounded by the total size
+ * of the cached files. The data may be stored in direct buffers outside of
+ * the heap. Larger files are streamed from the file system.
+ *
+ * The meta data is not cached, it is served from the in-memory index of
+ * the data access object.
+ *
+ * @author Poornima
+ */
+@Service("cachingFileDao")
+@Primary
+@ConditionalOnProperty(name = "upload.cache.enabled", havingValue = "true", matchIfMissing = true)
+public class CachingFileUploadDao implements IFileUploadDao {
+
+    private static final Logger LOG = Logger.getLogger(CachingFileUploadDao.class);
+
+    private final IFileUploadDao fileUploadDao;
+    private final Cache<String, FileUploadContent> bodyCache;
+    private final long maxCachedFileSize;
+    private final boolean offHeap;
+
+    @Autowired
+    public CachingFileUploadDao(@Qualifier("fileDao") IFileUploadDao fileUploadDao,
+            @Value("${upload.cache.body.max-weight:67108864}") long maxBodyWeight,
+            @Value("${upload.cache.body.max-file-size:1048576}") long maxCachedFileSize,
+            @Value("${upload.cache.body.off-heap:false}") boolean offHeap) {
+        super();
+        this.fileUploadDao = fileUploadDao;
+        this.maxCachedFileSize = maxCachedFileSize;
+        this.offHeap = offHeap;
+        this.bodyCache = Caffeine.newBuilder()
+                .maximumWeight(maxBodyWeight)
+                .weigher((String uuid, FileUploadContent content) -> (int) Math.min(Integer.MAX_VALUE, content.getLength()))
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public void insert(FileUpload file) {
+        fileUploadDao.insert(file);
+    }
+
+    @Override
+    public void insert(FileUploadMetadata metadata, InputStream data) {
+        fileUploadDao.insert(metadata, data);
+    }
+
+    @Override
+    public void insert(FileUploadMetadata metadata, Path file) {
+        fileUploadDao.insert(metadata, file);
+    }
+
+    @Override
+    public void insertAll(List<? extends FileUploadSource> files) {
+        fileUploadDao.insertAll(files);
+    }
+
+    @Override
+    public List<FileUploadMetadata> findByAuthorNameDate(String authorName, LocalDate date) {
+        return fileUploadDao.findByAuthorNameDate(authorName, date);
+    }
+
+    @Override
+    public List<FileUploadMetadata> find(FileUploadQuery query) {
+        return fileUploadDao.find(query);
+    }
+
+    @Override
+    public FileUploadPage findPage(FileUploadQuery query, FileUploadPage.Cursor cursor, int limit) {
+        return fileUploadDao.findPage(query, cursor, limit);
+    }
+
+    @Override
+    public void forEach(FileUploadQuery query, Consumer<FileUploadMetadata> consumer) {
+        fileUploadDao.forEach(query, consumer);
+    }
+
+    /**
+     * Returns the file with the data of the cached content if the file
+     * is cached, otherwise the file is loaded.
+     */
+    @Override
+    public FileUpload load(String uuid) {
+        FileUploadContent content = bodyCache.getIfPresent(uuid);
+        if(content==null) {
+            return fileUploadDao.load(uuid);
+        }
+        FileUpload file = new FileUpload(content.getMetadata());
+        try (InputStream in = content.openStream()) {
+            file.setFileData(StreamUtils.copyToByteArray(in));
+        } catch (IOException e) {
+            String message = "Error while loading file with id: " + uuid;
+            LOG.error(message, e);
+            throw new RuntimeException(message, e);
+        }
+        return file;
+    }
+
+    @Override
+    public FileUploadMetadata loadMetadata(String uuid) {
+        return fileUploadDao.loadMetadata(uuid);
+    }
+
+    /**
+     * Returns the content from the cache. If the content is not cached and
+     * the file is not larger than the maximum file size, its stored data
+     * is read into memory and cached.
+     */
+    @Override
+    public FileUploadContent loadContent(String uuid) {
+        FileUploadContent cached = bodyCache.getIfPresent(uuid);
+        if(cached!=null) {
+            return cached;
+        }
+        FileUploadContent content = fileUploadDao.loadContent(uuid);
+        if(content==null || content.getLength() > maxCachedFileSize) {
+            return content;
+        }
+        try {
+            FileUploadContent inMemory = content.loadIntoMemory(offHeap);
+            bodyCache.put(uuid, inMemory);
+            return inMemory;
+        } catch (IOException e) {
+            LOG.warn("Error while caching file with id: " + uuid, e);
+            return content;
+        }
+    }
+
+    public Cache<String, FileUploadContent> getBodyCache() {
+        return bodyCache;
+    }
+}
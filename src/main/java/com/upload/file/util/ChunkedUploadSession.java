@@ -0,0 +1,111 @@
+package com.upload.file.util;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+/**
+ * A chunked upload in progress. The parts of the file are uploaded
+ * separately and assembled when the upload is completed.
+ *
+ * @author Poornima
+ */
+public class ChunkedUploadSession implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String uploadId;
+    private String fileName;
+    private String authorName;
+    private LocalDate uploadDate;
+    private List<Part> parts = new ArrayList<Part>();
+
+    public ChunkedUploadSession() {
+        super();
+    }
+
+    public ChunkedUploadSession(String uploadId, String fileName, String authorName, LocalDate uploadDate) {
+        super();
+        this.uploadId = uploadId;
+        this.fileName = fileName;
+        this.authorName = authorName;
+        this.uploadDate = uploadDate;
+    }
+
+    public String getUploadId() {
+        return uploadId;
+    }
+    public void setUploadId(String uploadId) {
+        this.uploadId = uploadId;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public String getAuthorName() {
+        return authorName;
+    }
+    public void setAuthorName(String authorName) {
+        this.authorName = authorName;
+    }
+
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = FileUploadMetadata.DATE_FORMAT_PATTERN)
+    public LocalDate getUploadDate() {
+        return uploadDate;
+    }
+    public void setUploadDate(LocalDate uploadDate) {
+        this.uploadDate = uploadDate;
+    }
+
+    /**
+     * Returns the parts received so far ordered by part number.
+     */
+    public List<Part> getParts() {
+        return parts;
+    }
+    public void setParts(List<Part> parts) {
+        this.parts = parts;
+    }
+
+    /**
+     * A received part of a chunked upload.
+     */
+    public static class Part implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private int partNumber;
+        private long size;
+
+        public Part() {
+            super();
+        }
+
+        public Part(int partNumber, long size) {
+            super();
+            this.partNumber = partNumber;
+            this.size = size;
+        }
+
+        public int getPartNumber() {
+            return partNumber;
+        }
+        public void setPartNumber(int partNumber) {
+            this.partNumber = partNumber;
+        }
+
+        public long getSize() {
+            return size;
+        }
+        public void setSize(long size) {
+            this.size = size;
+        }
+    }
+}
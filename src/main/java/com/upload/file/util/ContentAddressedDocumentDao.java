@@ -0,0 +1,203 @@
+package com.upload.file.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.log4j.Logger;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+/**
+ * Data access object which stores the data of identical files only once.
+ *
+ * The meta data of a file is saved in the folder of the file like in
+ * FileSystemDocumentDao. The file data is hashed with SHA-256 while it is
+ * streamed to a temporary file and then stored as blob under its hash:
+ * uploads.blobs/ab/cd/abcd... The hash is saved in the meta data as the
+ * reference to the blob. If the blob already exists the temporary file is
+ * deleted without being forced to disk, and only the reference count of
+ * the blob is incremented.
+ *
+ * The reference count is advisory: it counts the files stored with a
+ * reference to the blob, for statistics and for a future delete to tell
+ * when a blob is unreferenced. The data store has no delete, so it is
+ * never decremented, and an upload which fails after its blob was stored
+ * leaves it one too high. The counts are kept in memory and rebuilt from
+ * the meta data at startup, so storing a duplicate writes nothing but the
+ * meta data of the file.
+ *
+ * Files uploaded before content addressing was enabled have no hash in
+ * their meta data and are still read from their folder.
+ *
+ * The hash is computed from the uncompressed data. Compressed blobs are
+ * stored under the hash with the suffix of their content encoding, so a
+ * blob is only shared by files stored with the same encoding.
+ *
+ * Enabled with upload.storage=dedup.
+ *
+ * @author Poornima
+ */
+@Service("fileDao")
+@ConditionalOnProperty(name = "upload.storage", havingValue = "dedup")
+public class ContentAddressedDocumentDao extends FileSystemDocumentDao {
+
+    private static final Logger LOG = Logger.getLogger(ContentAddressedDocumentDao.class);
+
+    public static final String BLOB_SUFFIX = ".blobs";
+    public static final String BLOB_DIRECTORY = DIRECTORY + BLOB_SUFFIX;
+    public static final String TEMP_DIRECTORY = BLOB_DIRECTORY + File.separator + "tmp";
+
+    private static final int LOCK_STRIPES = 64;
+
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private final ConcurrentMap<String, Long> referenceCounts = new ConcurrentHashMap<String, Long>();
+
+    public ContentAddressedDocumentDao() {
+        super();
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    @Override
+    public void init() {
+        getTempDirectory().toFile().mkdirs();
+        super.init();
+        countReferences();
+    }
+
+    /**
+     * Counts the references of the files in the store to their blobs.
+     */
+    private void countReferences() {
+        long start = System.currentTimeMillis();
+        referenceCounts.clear();
+        forEach(new FileUploadQuery(), metadata -> {
+            if(metadata.getSha256()!=null) {
+                referenceCounts.merge(getBlobName(metadata), 1L, Long::sum);
+            }
+        });
+        LOG.info("Counted references to " + referenceCounts.size() + " blobs in " 
+                + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * Streams the file data to a temporary file, writeFileData computes its
+     * SHA-256 hash.
+     */
+    @Override
+    protected Path writeFileData(FileUploadMetadata metadata, InputStream data) throws IOException {
+        Path tempFile = Files.createTempFile(getTempDirectory(), metadata.getUuid(), null);
+        try (OutputStream stream = Files.newOutputStream(tempFile)) {
+            writeFileData(metadata, data, stream);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+        return tempFile;
+    }
+
+    /**
+     * The hash is the name of the blob, so it is always computed.
+     */
+    @Override
+    public boolean isSha256Enabled() {
+        return true;
+    }
+
+    /**
+     * Returns true if a blob with the hash of the file exists, so the
+     * temporary file is not forced before it is deleted. Blobs are never
+     * removed, so the blob still exists when the file is published.
+     */
+    @Override
+    protected boolean isFileDataStored(FileUploadMetadata metadata) {
+        return metadata.getSha256()!=null && Files.exists(getBlobPath(getBlobName(metadata)));
+    }
+
+    /**
+     * Moves the temporary file to the blob store unless a blob with the
+     * same hash exists. The temporary file of an existing blob is deleted
+     * by the caller.
+     */
+    @Override
+    protected void publishFileData(FileUploadMetadata metadata, Path tempFile) throws IOException {
+        storeBlob(getBlobName(metadata), tempFile);
+    }
+
+    /**
+     * Returns the path of the blob of a file, or the path in the folder of
+     * the file if the file was stored without hash.
+     */
+    @Override
+    protected String getFilePath(FileUploadMetadata metadata) {
+        if(metadata.getSha256()==null) {
+            return super.getFilePath(metadata);
+        }
+        return getBlobPath(getBlobName(metadata)).toString();
+    }
+
+    /**
+     * Returns the number of files referencing the blob with the given name.
+     *
+     * @param name The name of a blob, the SHA-256 hash of the file data,
+     *        followed by .gzip for a compressed blob
+     * @return The reference count
+     */
+    public long getReferenceCount(String name) {
+        Long count = referenceCounts.get(name);
+        return count==null ? 0 : count;
+    }
+
+    private String getBlobName(FileUploadMetadata metadata) {
+        if(metadata.getContentEncoding()==null) {
+            return metadata.getSha256();
+        }
+        return metadata.getSha256() + "." + metadata.getContentEncoding();
+    }
+
+    private void storeBlob(String name, Path tempFile) throws IOException {
+        Path blobPath = getBlobPath(name);
+        if(!Files.exists(blobPath)) {
+            synchronized (getLock(name)) {
+                if(!Files.exists(blobPath)) {
+                    Files.createDirectories(blobPath.getParent());
+                    try {
+                        Files.move(tempFile, blobPath, StandardCopyOption.ATOMIC_MOVE);
+                    } catch (FileAlreadyExistsException e) {
+                        LOG.debug("Blob exists already: " + name);
+                    }
+                }
+            }
+        }
+        referenceCounts.merge(name, 1L, Long::sum);
+    }
+
+    /**
+     * Returns the directory of the blobs, next to the directory of the store.
+     */
+    private Path getBlobDirectory() {
+        return Paths.get(getDirectory() + BLOB_SUFFIX);
+    }
+
+    private Path getTempDirectory() {
+        return getBlobDirectory().resolve("tmp");
+    }
+
+    private Path getBlobPath(String name) {
+        return getBlobDirectory().resolve(Paths.get(name.substring(0, 2), name.substring(2, 4), name));
+    }
+
+    private Object getLock(String name) {
+        return locks[(name.hashCode() & 0x7fffffff) % LOCK_STRIPES];
+    }
+}
@@ -1,85 +1,534 @@
 package com.upload.file.util;
 
-import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Date;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Checksum;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.apache.log4j.Logger;
- 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StreamUtils;
 
 /**
  * Data access object to insert, find and load files.
  * 
  * FileSystemDocumentDao saves files in the file system.  
  * For each file a folder is created. The folder contains the file
- * and a properties files with the meta data of the file.
+ * and a file with the meta data of the file, see FileUploadMetadataCodec.
+ * Folders stored by older versions have a properties file instead.
  * Each file in the file system has a Universally Unique Identifier (UUID).
- * The name of the files folder is the UUID of the file.
+ * The name of the files folder is the UUID of the file. The folders are
+ * sharded by the first characters of the UUID, see ShardedDirectoryLayout.
+ * 
+ * The meta data of all files is kept in an in-memory index which is built
+ * once at startup and updated on every insert, so queries do not read 
+ * the file system. Inserts are recorded in an append-only journal next to
+ * the uploads directory. Snapshots of the index are written by a background
+ * thread. At startup the index is recovered from the latest snapshot and
+ * the journal. If they are missing or corrupt the index is rebuilt from the
+ * meta data files.
+ * 
+ * The index can be disabled for deployments which keep the meta data on
+ * disk only. Queries then scan the meta data files in parallel, see
+ * FileUploadMetadataScanner; a query for a page sorted by UUID stops 
+ * scanning once the page is complete. Rebuilding the index uses the same
+ * parallel scan.
+ * 
+ * Files are written crash consistent: the file data and the meta data are
+ * written to temporary files in the folder and forced to disk, then they
+ * are renamed atomically, the meta data last. A folder without meta data
+ * is an incomplete upload and is ignored. The files are forced by the
+ * uploading thread, the fsyncs of the folders and the journal are done in
+ * group commits, so concurrent uploads share them, see GroupCommitter.
+ * 
+ * The number of concurrent disk operations can be limited, so a large
+ * number of request threads (e.g. virtual threads) does not overload the
+ * disk. A permit is held while a chunk is written or a file is read, not
+ * while the data of a slow client or a group commit is awaited.
+ * 
+ * If compression is enabled the file data is stored compressed with gzip
+ * when it pays off for the file, see FileUploadCompression. The content
+ * encoding is recorded in the meta data and the data is decompressed 
+ * while it is read.
+ * 
+ * The latencies of the disk writes, the fsyncs, the meta data files, the
+ * index and the directory scans are recorded in FileUploadMetrics, so the
+ * time of an upload or download can be split into its parts.
  * 
  * @author Poornima
  */
 @Service("fileDao")
+@ConditionalOnProperty(name = "upload.storage", havingValue = "filesystem", matchIfMissing = true)
 public class FileSystemDocumentDao implements IFileUploadDao {
 
     private static final Logger LOG = Logger.getLogger(FileSystemDocumentDao.class);
     
     public static final String DIRECTORY = "uploads";
-    public static final String META_DATA_FILE_NAME = "metadata.properties";
+    public static final String META_DATA_FILE_NAME = "metadata.bin";
+    /** Meta data file of folders stored by older versions */
+    public static final String LEGACY_META_DATA_FILE_NAME = "metadata.properties";
+    public static final String JOURNAL_SUFFIX = ".journal";
+    public static final String SNAPSHOT_SUFFIX = ".snapshot";
+    public static final String JOURNAL_FILE_NAME = DIRECTORY + JOURNAL_SUFFIX;
+    public static final String SNAPSHOT_FILE_NAME = DIRECTORY + SNAPSHOT_SUFFIX;
+    
+    /** Size of the buffer used to copy file data to the file system */
+    public static final int CHUNK_SIZE = 64 * 1024;
+    
+    /** Threads of the meta data scan per processor, the threads mostly wait for the disk */
+    public static final int SCAN_THREADS_PER_PROCESSOR = 4;
+    
+    /** Maximum number of threads of the meta data scan */
+    public static final int MAX_SCAN_THREADS = 64;
+    
+    private static final String TEMP_FILE_PREFIX = ".upload-";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+    
+    private final FileUploadMetadataIndex index = new FileUploadMetadataIndex();
+    
+    /** The folders of the files, the journal and other files of the store are its siblings */
+    private String directory = DIRECTORY;
+    
+    @Value("${upload.index.enabled:true}")
+    private boolean indexEnabled = true;
+    
+    @Value("${upload.scan.parallelism:0}")
+    private int scanParallelism = 0;
+    
+    @Value("${upload.journal.enabled:true}")
+    private boolean journalEnabled = true;
+    
+    @Value("${upload.journal.snapshot-interval:10000}")
+    private int snapshotInterval = 10000;
+    
+    @Value("${upload.fsync.enabled:true}")
+    private boolean fsyncEnabled = true;
+    
+    @Value("${upload.disk.max-concurrent-operations:0}")
+    private int maxConcurrentDiskOperations = 0;
+    
+    @Value("${upload.compression.enabled:false}")
+    private boolean compressionEnabled = false;
+    
+    @Value("${upload.checksum.sha256.enabled:false}")
+    private boolean sha256Enabled = false;
+    
+    @Autowired(required = false)
+    private FileUploadMetrics metrics = new FileUploadMetrics();
+    
+    private FileUploadMetadataJournal journal;
+    private ExecutorService snapshotExecutor;
+    private final AtomicBoolean snapshotPending = new AtomicBoolean();
+    private GroupCommitter committer;
+    private Semaphore diskPermits;
+    private FileUploadMetadataScanner scanner;
     
     @PostConstruct
     public void init() {
-        createDirectory(DIRECTORY);
+        if(maxConcurrentDiskOperations > 0) {
+            diskPermits = new Semaphore(maxConcurrentDiskOperations, true);
+        }
+        createDirectory(directory);
+        migrateLayout();
+        scanner = new FileUploadMetadataScanner(Paths.get(directory), getScanThreads(), uuid -> {
+            metrics.increment(FileUploadMetrics.SCAN_FILES, 1);
+            return loadMetadataFromFileSystem(uuid);
+        });
+        if(indexEnabled && journalEnabled) {
+            journal = new FileUploadMetadataJournal(new File(directory + JOURNAL_SUFFIX), 
+                    new File(directory + SNAPSHOT_SUFFIX), snapshotInterval);
+            snapshotExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "upload-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        if(fsyncEnabled) {
+            committer = new GroupCommitter("upload-group-commit", journal);
+        }
+        if(indexEnabled) {
+            buildIndex();
+        } else {
+            LOG.info("Meta data index is disabled, queries scan the meta data files with " 
+                    + scanner.getParallelism() + " threads");
+        }
+    }
+    
+    private int getScanThreads() {
+        if(scanParallelism > 0) {
+            return scanParallelism;
+        }
+        return Math.min(MAX_SCAN_THREADS, SCAN_THREADS_PER_PROCESSOR * Runtime.getRuntime().availableProcessors());
+    }
+    
+    /**
+     * Writes a final snapshot so the next startup does not need to 
+     * replay the journal.
+     */
+    @PreDestroy
+    public void close() {
+        if(committer!=null) {
+            committer.close();
+        }
+        if(scanner!=null) {
+            scanner.close();
+        }
+        if(journal==null) {
+            return;
+        }
+        snapshotExecutor.shutdown();
+        try {
+            snapshotExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            journal.snapshot(this::getAllMetadata);
+            journal.close();
+        } catch (IOException e) {
+            LOG.error("Error while closing meta data journal", e);
+        }
+    }
+    
+    /**
+     * Moves folders of a store with the flat layout of older versions to
+     * the sharded layout.
+     */
+    protected void migrateLayout() {
+        try {
+            ShardedDirectoryLayout.migrate(Paths.get(directory));
+        } catch (IOException e) {
+            String message = "Error while migrating " + directory + " to the sharded layout";
+            LOG.error(message, e);
+            throw new RuntimeException(message, e);
+        }
+    }
+    
+    /**
+     * Builds the in-memory index. The index is recovered from the journal
+     * if possible, otherwise it is built from the meta data files in the 
+     * file system and a new snapshot is written.
+     */
+    protected void buildIndex() {
+        try {
+            long start = System.currentTimeMillis();
+            if(journal!=null && journal.recover(index)) {
+                LOG.info("Recovered meta data index of " + index.size() + " files from journal in " 
+                        + (System.currentTimeMillis() - start) + " ms");
+                return;
+            }
+            index.clear();
+            forEachInFileSystem(index::add);
+            LOG.info("Built meta data index of " + index.size() + " files in " 
+                    + (System.currentTimeMillis() - start) + " ms");
+            if(journal!=null) {
+                journal.snapshot(this::getAllMetadata);
+            }
+        } catch (IOException e) {
+            String message = "Error while building meta data index";
+            LOG.error(message, e);
+            throw new RuntimeException(message, e);
+        }
     }
     
     /**
      * Inserts a file to the file system by creating a folder with the UUID
-     * of the file. In the folder the file is saved and a properties file
-     * with the meta data of the file. 
+     * of the file. In the folder the file is saved and a file with the
+     * meta data of the file. 
      * 
      */
     @Override
     public void insert(FileUpload file) {
+        insert(file, new ByteArrayInputStream(file.getFileData()));
+    }
+    
+    /**
+     * Inserts a file to the file system streaming the file data 
+     * to disk in chunks of CHUNK_SIZE bytes.
+     * 
+     */
+    @Override
+    public void insert(FileUploadMetadata metadata, InputStream data) {
+        List<Path> dataFiles = new ArrayList<Path>(1);
         try {
-            createDirectory(file);
-            saveFileData(file);
-            saveMetaData(file);
+            dataFiles.add(writeFileData(metadata, data));
+            publish(Collections.singletonList(metadata), dataFiles);
         } catch (IOException e) {
             String message = "Error while inserting file";
             LOG.error(message, e);
             throw new RuntimeException(message, e);
+        } finally {
+            deleteTempFiles(dataFiles);
+        }
+    }
+    
+    /**
+     * Inserts a file written by the caller, the file is renamed into
+     * the folder of the file.
+     * 
+     */
+    @Override
+    public void insert(FileUploadMetadata metadata, Path file) {
+        List<Path> dataFiles = new ArrayList<Path>(1);
+        try {
+            dataFiles.add(stageFileData(metadata, file));
+            publish(Collections.singletonList(metadata), dataFiles);
+        } catch (IOException e) {
+            String message = "Error while inserting file";
+            LOG.error(message, e);
+            throw new RuntimeException(message, e);
+        } finally {
+            deleteTempFiles(dataFiles);
+        }
+    }
+    
+    /**
+     * Inserts a batch of files. All files are written first, then the whole
+     * batch is forced and published in the same group commits.
+     * 
+     */
+    @Override
+    public void insertAll(List<? extends FileUploadSource> files) {
+        List<FileUploadMetadata> metadataList = new ArrayList<FileUploadMetadata>(files.size());
+        List<Path> dataFiles = new ArrayList<Path>(files.size());
+        try {
+            for (FileUploadSource file : files) {
+                FileUploadMetadata metadata = file.getMetadata();
+                try (InputStream data = file.openStream()) {
+                    dataFiles.add(writeFileData(metadata, data));
+                }
+                metadataList.add(metadata);
+            }
+            publish(metadataList, dataFiles);
+        } catch (IOException e) {
+            String message = "Error while inserting batch of " + files.size() + " files";
+            LOG.error(message, e);
+            throw new RuntimeException(message, e);
+        } finally {
+            deleteTempFiles(dataFiles);
+        }
+    }
+    
+    /**
+     * Publishes written files. The temporary files of the file data and the
+     * meta data are forced, then renamed, the meta data last. File data
+     * which is stored already is not forced, see isFileDataStored. Finally the
+     * folders and the journal are forced.
+     * 
+     * @param metadataList The meta data of the files
+     * @param dataFiles The temporary files with the file data
+     * @throws IOException
+     */
+    private void publish(List<FileUploadMetadata> metadataList, List<Path> dataFiles) throws IOException {
+        List<Path> metadataFiles = new ArrayList<Path>(metadataList.size());
+        Set<Path> directories = new LinkedHashSet<Path>();
+        try {
+            acquireDisk();
+            try {
+                long start = System.nanoTime();
+                for (int i = 0; i < metadataList.size(); i++) {
+                    metadataFiles.add(writeMetaData(metadataList.get(i)));
+                }
+                metrics.record(FileUploadMetrics.DAO_METADATA_WRITE, start);
+                List<Path> tempFiles = new ArrayList<Path>(metadataFiles);
+                for (int i = 0; i < metadataList.size(); i++) {
+                    if(!isFileDataStored(metadataList.get(i))) {
+                        tempFiles.add(dataFiles.get(i));
+                    }
+                }
+                sync(tempFiles, false);
+                for (int i = 0; i < metadataList.size(); i++) {
+                    FileUploadMetadata metadata = metadataList.get(i);
+                    Path folder = Paths.get(getDirectoryPath(metadata));
+                    publishFileData(metadata, dataFiles.get(i));
+                    Files.move(metadataFiles.get(i), folder.resolve(META_DATA_FILE_NAME), 
+                            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    directories.add(Paths.get(getFilePath(metadata)).getParent());
+                    directories.add(folder);
+                    directories.add(folder.getParent());
+                }
+            } finally {
+                releaseDisk();
+            }
+            // the group commit waits for other uploads, so no permit is held
+            for (FileUploadMetadata metadata : metadataList) {
+                addToIndex(metadata);
+            }
+            sync(directories, true);
+        } finally {
+            deleteTempFiles(metadataFiles);
+        }
+    }
+    
+    /**
+     * Returns true if the data of the file is stored already, e.g. as the
+     * data of an identical file, so its temporary file is not published
+     * and need not be forced.
+     */
+    protected boolean isFileDataStored(FileUploadMetadata metadata) {
+        return false;
+    }
+    
+    /**
+     * Forces files, and directories and, if requested, the journal in a
+     * group commit. Does nothing if fsync is disabled.
+     */
+    protected void sync(Collection<Path> paths, boolean forceJournal) throws IOException {
+        if(committer!=null) {
+            long start = System.nanoTime();
+            committer.sync(paths, forceJournal);
+            metrics.record(FileUploadMetrics.DAO_SYNC, start);
+        }
+    }
+    
+    private void deleteTempFiles(List<Path> tempFiles) {
+        for (Path tempFile : tempFiles) {
+            try {
+                Files.deleteIfExists(tempFile);
+            } catch (IOException e) {
+                LOG.warn("Error while deleting temporary file: " + tempFile, e);
+            }
         }
     }
     
     /**
      * Find files in the data store matching the given parameter.
-     * To find a file all file meta data sets are iterated to check if they match
-     * the parameter.
+     * The files are looked up in the in-memory index by author name 
+     * and date.
      * 
      */
     @Override
-    public List<FileUploadMetadata> findByAuthorNameDate(String personName, Date date) {
+    public List<FileUploadMetadata> findByAuthorNameDate(String personName, LocalDate date) {
+        return find(new FileUploadQuery(personName, date));
+    }
+    
+    /**
+     * Find files in the in-memory index matching the query. The query is 
+     * answered by the sorted secondary indexes of the in-memory index,
+     * or by a scan of the meta data files if the index is disabled.
+     * 
+     */
+    @Override
+    public List<FileUploadMetadata> find(FileUploadQuery query) {
+        long start = System.nanoTime();
+        try {
+            if(!indexEnabled) {
+                return scanFileSystem(query::matches, false, Integer.MAX_VALUE);
+            }
+            return index.find(query);
+        } finally {
+            metrics.record(FileUploadMetrics.DAO_FIND, start);
+        }
+    }
+    
+    /**
+     * Finds a page of files in the in-memory index, or in the meta data
+     * files if the index is disabled.
+     * 
+     */
+    @Override
+    public FileUploadPage findPage(FileUploadQuery query, FileUploadPage.Cursor cursor, int limit) {
+        long start = System.nanoTime();
+        try {
+            if(!indexEnabled) {
+                return findPageInFileSystem(query, cursor, limit);
+            }
+            return index.findPage(query, cursor, limit);
+        } finally {
+            metrics.record(FileUploadMetrics.DAO_FIND, start);
+        }
+    }
+    
+    /**
+     * Finds a page of files by scanning the meta data files. A page in
+     * UUID order is read in the order of the shards and the scan stops
+     * once the page is complete, other orders need a full scan.
+     */
+    private FileUploadPage findPageInFileSystem(FileUploadQuery query, FileUploadPage.Cursor cursor, int limit) {
+        if(limit < 1) {
+            throw new IllegalArgumentException("Invalid limit: " + limit);
+        }
+        Predicate<FileUploadMetadata> filter = metadata -> cursor.isBefore(metadata) && query.matches(metadata);
+        // one file more than the limit tells if there is a next page
+        int size = (limit == Integer.MAX_VALUE) ? limit : limit + 1;
+        List<FileUploadMetadata> files;
+        if(cursor.getSort()==FileUploadSort.UUID) {
+            files = scanFileSystem(filter, cursor.isDescending(), size);
+        } else {
+            files = scanFileSystem(filter, false, Integer.MAX_VALUE);
+            files.sort(cursor.getComparator());
+            if(files.size() > size) {
+                files = new ArrayList<FileUploadMetadata>(files.subList(0, size));
+            }
+        }
+        return FileUploadMetadataIndex.createPage(files, cursor, limit);
+    }
+    
+    /**
+     * Passes the files in the in-memory index matching the query to the
+     * consumer. If the index is disabled the files are passed after the
+     * scan of the meta data files.
+     * 
+     */
+    @Override
+    public void forEach(FileUploadQuery query, Consumer<FileUploadMetadata> consumer) {
+        if(!indexEnabled) {
+            scanFileSystem(query::matches, false, Integer.MAX_VALUE).forEach(consumer);
+            return;
+        }
+        index.forEach(query, consumer);
+    }
+    
+    /**
+     * Scans the meta data files in parallel.
+     * 
+     * @param filter The filter of the files, null for all files
+     * @param descending True for the descending UUID order
+     * @param limit The maximum number of files
+     * @return The matching files in UUID order
+     */
+    private List<FileUploadMetadata> scanFileSystem(Predicate<FileUploadMetadata> filter, boolean descending, int limit) {
+        long start = System.nanoTime();
         try {
-            return findInFileSystem(personName,date);
+            return scanner.scan(filter, descending, limit);
         } catch (IOException e) {
-            String message = "Error while finding file, person name: " + personName + ", date:" + date;
+            String message = "Error while scanning meta data files";
             LOG.error(message, e);
             throw new RuntimeException(message, e);
+        } finally {
+            metrics.record(FileUploadMetrics.DAO_SCAN, start);
         }
     }
     
@@ -99,124 +548,406 @@ public class FileSystemDocumentDao implements IFileUploadDao {
         
     }
     
-
-    private List<FileUploadMetadata> findInFileSystem(String personName, Date date) throws IOException  {
-        List<String> uuidList = getUuidList();
-        List<FileUploadMetadata> metadataList = new ArrayList<FileUploadMetadata>(uuidList.size());
-        for (String uuid : uuidList) {
-            FileUploadMetadata metadata = loadMetadataFromFileSystem(uuid);
-            if(isMatched(metadata, personName, date)) {
-                metadataList.add(metadata);
+    /**
+     * Returns the meta data from the data store with the given UUID.
+     * 
+     */
+    @Override
+    public FileUploadMetadata loadMetadata(String uuid) {
+        FileUploadMetadata metadata = index.get(uuid);
+        if(metadata!=null) {
+            return metadata;
+        }
+        try {
+            metadata = loadMetadataFromFileSystem(uuid);
+            if(metadata!=null) {
+                addToIndex(metadata);
             }
+            return metadata;
+        } catch (IOException e) {
+            String message = "Error while loading meta data of file with id: " + uuid;
+            LOG.error(message, e);
+            throw new RuntimeException(message, e);
         }
-        return metadataList;
     }
-
-    private boolean isMatched(FileUploadMetadata metadata, String authorName, Date date) {
+    
+    /**
+     * Returns the content of the file with the given UUID. 
+     * The file data is not read.
+     * 
+     */
+    @Override
+    public FileUploadContent loadContent(String uuid) {
+        FileUploadMetadata metadata = loadMetadata(uuid);
         if(metadata==null) {
-            return false;
+            return null;
         }
-        boolean match = true;
-        if(authorName!=null) {
-            match = (authorName.equals(metadata.getAuthorName()));
+        File file = new File(getFilePath(metadata));
+        if(!file.isFile()) {
+            return null;
         }
-        if(date!=null) {
-            match = (date.equals(metadata.getUploadDate()));
+        return new FileUploadContent(metadata, file);
+    }
+
+    /**
+     * Adds the meta data of a published file to the index and the journal.
+     * Does nothing if the index is disabled. The meta data is added to the
+     * index before it is appended to the journal, so a snapshot contains
+     * every record in the journal before it is started.
+     */
+    protected void addToIndex(FileUploadMetadata metadata) throws IOException {
+        if(!indexEnabled) {
+            return;
         }
-        if(authorName!=null && date!=null) {
-            match = (authorName.equals(metadata.getAuthorName()) && date.equals(metadata.getUploadDate()));
+        long start = System.nanoTime();
+        index.add(metadata);
+        if(journal!=null && journal.append(metadata)) {
+            scheduleSnapshot();
         }
-        return match;
+        metrics.record(FileUploadMetrics.DAO_INDEX, start);
+    }
+
+    /**
+     * Writes a snapshot of the index in the background, unless one is
+     * pending already. Uploads do not wait for the snapshot.
+     */
+    private void scheduleSnapshot() {
+        if(!snapshotPending.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            snapshotExecutor.execute(() -> {
+                try {
+                    journal.snapshot(this::getAllMetadata);
+                } catch (IOException | RuntimeException e) {
+                    LOG.error("Error while writing meta data snapshot", e);
+                } finally {
+                    snapshotPending.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // closing, the final snapshot is written by close
+            snapshotPending.set(false);
+        }
+    }
+
+    private List<FileUploadMetadata> getAllMetadata() {
+        return index.find(null, null);
+    }
+
+    /**
+     * Passes the meta data of all files in the file system to the consumer,
+     * used to rebuild the index. The meta data files are read in parallel.
+     */
+    protected void forEachInFileSystem(Consumer<FileUploadMetadata> consumer) throws IOException  {
+        long start = System.nanoTime();
+        List<FileUploadMetadata> metadataList = scanner.scan(null, false, Integer.MAX_VALUE);
+        metrics.record(FileUploadMetrics.DAO_SCAN, start);
+        metadataList.forEach(consumer);
     }
 
     private FileUploadMetadata loadMetadataFromFileSystem(String uuid) throws IOException {
-        FileUploadMetadata file = null;
-        String dirPath = getDirectoryPath(uuid);
-        File file1 = new File(dirPath);
-        if(file1.exists()) {
-            Properties properties = readProperties(uuid);
-            file = new FileUploadMetadata(properties);
-        } 
+        byte[] bytes;
+        acquireDisk();
+        long start = System.nanoTime();
+        try {
+            bytes = readMetaData(uuid);
+        } finally {
+            releaseDisk();
+        }
+        if(bytes==null) {
+            return null;
+        }
+        FileUploadMetadata file;
+        try {
+            file = FileUploadMetadataCodec.decode(bytes);
+        } catch (IOException e) {
+            // damaged or written by a newer version, the file can not be found
+            LOG.warn("Invalid meta data of file: " + uuid, e);
+            return null;
+        }
+        metrics.record(FileUploadMetrics.DAO_METADATA_READ, start);
+        if(file.getSize()==FileUploadMetadata.UNKNOWN_SIZE) {
+            // stored by an older version
+            File data = new File(getFilePath(file));
+            if(data.isFile()) {
+                file.setSize(data.length());
+            }
+        }
         return file;
     }
     
     private FileUpload loadFromFileSystem(String uuid) throws IOException {
-       FileUploadMetadata metadata = loadMetadataFromFileSystem(uuid);
+       FileUploadMetadata metadata = loadMetadata(uuid);
        if(metadata==null) {
            return null;
        }
        Path path = Paths.get(getFilePath(metadata));
        FileUpload file = new FileUpload(metadata);
-       file.setFileData(Files.readAllBytes(path));
+       acquireDisk();
+       long start = System.nanoTime();
+       try {
+           if(metadata.getContentEncoding()==null) {
+               file.setFileData(Files.readAllBytes(path));
+           } else {
+               try (InputStream in = FileUploadCompression.decompress(Files.newInputStream(path), metadata.getContentEncoding())) {
+                   file.setFileData(StreamUtils.copyToByteArray(in));
+               }
+           }
+       } finally {
+           releaseDisk();
+           metrics.record(FileUploadMetrics.DAO_DATA_READ, start);
+       }
        return file;
     }
 
-    private String getFilePath(FileUploadMetadata metadata) {
+    /**
+     * Returns the path of the file containing the file data.
+     */
+    protected String getFilePath(FileUploadMetadata metadata) {
         String dirPath = getDirectoryPath(metadata.getUuid());
         StringBuilder sb = new StringBuilder();
         sb.append(dirPath).append(File.separator).append(metadata.getFileName());
         return sb.toString();
     }
     
-    private void saveFileData(FileUpload file) throws IOException {
-        String path = getDirectoryPath(file);
-        BufferedOutputStream stream = new BufferedOutputStream(new FileOutputStream(new File(new File(path), file.getFileName())));
-        stream.write(file.getFileData());
-        stream.close();
-    }
-    
-    public void saveMetaData(FileUpload file) throws IOException {
-            String path = getDirectoryPath(file);
-            Properties props = file.createProperties();
-            File f = new File(new File(path), META_DATA_FILE_NAME);
-            OutputStream out = new FileOutputStream( f );
-            props.store(out, "FileUpload meta data");       
-    }
-    
-    private List<String> getUuidList() {
-        File file = new File(DIRECTORY);
-        String[] directories = file.list(new FilenameFilter() {
-          @Override
-          public boolean accept(File current, String name) {
-            return new File(current, name).isDirectory();
-          }
-        });
-        return Arrays.asList(directories);
+    /**
+     * Writes the file data to a temporary file in the folder of the file.
+     * 
+     * @return The temporary file
+     */
+    protected Path writeFileData(FileUploadMetadata metadata, InputStream data) throws IOException {
+        Path tempFile = Files.createTempFile(Paths.get(createDirectory(metadata)), TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX);
+        try (OutputStream stream = Files.newOutputStream(tempFile)) {
+            writeFileData(metadata, data, stream);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+        return tempFile;
     }
     
-    private Properties readProperties(String uuid) throws IOException {
-        Properties prop = new Properties();
-        InputStream input = null;     
-        try {
-            input = new FileInputStream(new File(getDirectoryPath(uuid),META_DATA_FILE_NAME));
-            prop.load(input);
-        } finally {
-            if (input != null) {
+    /**
+     * Writes the file data to the stream, compressed if compression is 
+     * enabled and pays off for the file. Sets the size, the content 
+     * encoding and the checksums of the meta data. The checksums are
+     * computed while the data is copied.
+     */
+    protected void writeFileData(FileUploadMetadata metadata, InputStream data, OutputStream stream) throws IOException {
+        long start = System.nanoTime();
+        Checksum crc = FileUploadChecksums.newCrc32c();
+        MessageDigest digest = isSha256Enabled() ? FileUploadChecksums.newSha256() : null;
+        InputStream checked = new CheckedInputStream(data, crc);
+        if(digest!=null) {
+            checked = new DigestInputStream(checked, digest);
+        }
+        copyFileData(metadata, checked, stream);
+        metadata.setCrc32c(FileUploadChecksums.toHex(crc));
+        if(digest!=null) {
+            metadata.setSha256(FileUploadChecksums.toHex(digest.digest()));
+        }
+        metrics.record(FileUploadMetrics.DAO_DATA_WRITE, start);
+        metrics.increment(FileUploadMetrics.DAO_BYTES_WRITTEN, metadata.getSize());
+    }
+    
+    private void copyFileData(FileUploadMetadata metadata, InputStream data, OutputStream stream) throws IOException {
+        metadata.setContentEncoding(null);
+        if(!compressionEnabled) {
+            metadata.setSize(copy(data, stream));
+            return;
+        }
+        byte[] sample = new byte[CHUNK_SIZE];
+        int length = FileUploadCompression.readSample(data, sample);
+        if(!FileUploadCompression.isCompressible(metadata.getFileName(), sample, length)) {
+            write(stream, sample, length);
+            metadata.setSize(length + copy(data, stream));
+            return;
+        }
+        try (OutputStream compressed = FileUploadCompression.compress(stream)) {
+            write(compressed, sample, length);
+            metadata.setSize(length + copy(data, compressed));
+        }
+        metadata.setContentEncoding(FileUploadCompression.GZIP);
+    }
+    
+    /**
+     * Prepares a file written by the caller to be published like a 
+     * temporary file returned by writeFileData. The file is taken over
+     * as it is, unless it is compressed to a new temporary file. The file
+     * of the caller is not deleted.
+     * 
+     * The checksums are only computed from the file if the caller did not
+     * compute them while writing it, see AsyncFileUpload.
+     * 
+     * @return The temporary file
+     */
+    protected Path stageFileData(FileUploadMetadata metadata, Path file) throws IOException {
+        metadata.setContentEncoding(null);
+        metadata.setSize(Files.size(file));
+        if(compressionEnabled && isCompressible(metadata, file)) {
+            try (InputStream data = Files.newInputStream(file)) {
+                return writeFileData(metadata, data);
+            }
+        }
+        if(metadata.getCrc32c()==null || (isSha256Enabled() && metadata.getSha256()==null)) {
+            computeChecksums(metadata, file);
+        }
+        return file;
+    }
+    
+    private void computeChecksums(FileUploadMetadata metadata, Path file) throws IOException {
+        Checksum crc = FileUploadChecksums.newCrc32c();
+        MessageDigest digest = isSha256Enabled() ? FileUploadChecksums.newSha256() : null;
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[CHUNK_SIZE];
+            int read;
+            while (true) {
+                acquireDisk();
                 try {
-                    input.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
+                    read = in.read(buffer);
+                } finally {
+                    releaseDisk();
+                }
+                if(read == -1) {
+                    break;
+                }
+                crc.update(buffer, 0, read);
+                if(digest!=null) {
+                    digest.update(buffer, 0, read);
                 }
             }
         }
-        return prop;
+        metadata.setCrc32c(FileUploadChecksums.toHex(crc));
+        if(digest!=null) {
+            metadata.setSha256(FileUploadChecksums.toHex(digest.digest()));
+        }
     }
     
-    private String createDirectory(FileUpload file) {
+    /**
+     * Sets the checksums of file data held in memory.
+     */
+    protected void computeChecksums(FileUploadMetadata metadata, byte[] data) {
+        metadata.setCrc32c(FileUploadChecksums.crc32c(data, 0, data.length));
+        if(isSha256Enabled()) {
+            metadata.setSha256(FileUploadChecksums.sha256(data, 0, data.length));
+        }
+    }
+    
+    private boolean isCompressible(FileUploadMetadata metadata, Path file) throws IOException {
+        byte[] sample = new byte[CHUNK_SIZE];
+        int length;
+        acquireDisk();
+        try (InputStream data = Files.newInputStream(file)) {
+            length = FileUploadCompression.readSample(data, sample);
+        } finally {
+            releaseDisk();
+        }
+        return FileUploadCompression.isCompressible(metadata.getFileName(), sample, length);
+    }
+    
+    /**
+     * Moves the temporary file with the file data to its final path.
+     */
+    protected void publishFileData(FileUploadMetadata metadata, Path tempFile) throws IOException {
+        Files.move(tempFile, Paths.get(getFilePath(metadata)), 
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    /**
+     * Copies a stream in chunks of CHUNK_SIZE bytes.
+     * 
+     * @return The number of bytes copied
+     */
+    protected long copy(InputStream data, OutputStream stream) throws IOException {
+        byte[] buffer = new byte[CHUNK_SIZE];
+        long count = 0;
+        int read;
+        while ((read = data.read(buffer)) != -1) {
+            write(stream, buffer, read);
+            count += read;
+        }
+        return count;
+    }
+    
+    private void write(OutputStream stream, byte[] buffer, int length) throws IOException {
+        acquireDisk();
+        try {
+            stream.write(buffer, 0, length);
+        } finally {
+            releaseDisk();
+        }
+    }
+    
+    /**
+     * Waits for a permit to access the disk. Every call must be followed
+     * by a call of releaseDisk.
+     */
+    protected void acquireDisk() throws IOException {
+        if(diskPermits==null) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            diskPermits.acquire();
+            metrics.record(FileUploadMetrics.DAO_DISK_WAIT, start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for disk access");
+        }
+    }
+    
+    /**
+     * Returns a permit acquired with acquireDisk.
+     */
+    protected void releaseDisk() {
+        if(diskPermits!=null) {
+            diskPermits.release();
+        }
+    }
+    
+    /**
+     * Writes the meta data to a temporary file in the folder of the file.
+     * 
+     * @return The temporary file
+     */
+    private Path writeMetaData(FileUploadMetadata file) throws IOException {
+        Path tempFile = Files.createTempFile(Paths.get(createDirectory(file)), TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX);
+        Files.write(tempFile, FileUploadMetadataCodec.encode(file));
+        return tempFile;
+    }
+    
+    /**
+     * Reads the meta data file of a folder, the properties file if the
+     * folder was stored by an older version.
+     * 
+     * @return The content of the file, null if the folder has no meta data
+     */
+    private byte[] readMetaData(String uuid) throws IOException {
+        Path folder = Paths.get(getDirectoryPath(uuid));
+        try {
+            return Files.readAllBytes(folder.resolve(META_DATA_FILE_NAME));
+        } catch (NoSuchFileException e) {
+            // stored by an older version or not published
+        }
+        try {
+            return Files.readAllBytes(folder.resolve(LEGACY_META_DATA_FILE_NAME));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+    
+    private String createDirectory(FileUploadMetadata file) {
         String path = getDirectoryPath(file);
         createDirectory(path);
         return path;
     }
 
-    private String getDirectoryPath(FileUpload file) {
+    private String getDirectoryPath(FileUploadMetadata file) {
        return getDirectoryPath(file.getUuid());
     }
     
     private String getDirectoryPath(String uuid) {
-        StringBuilder sb = new StringBuilder();
-        sb.append(DIRECTORY).append(File.separator).append(uuid);
-        String path = sb.toString();
-        return path;
+        return ShardedDirectoryLayout.resolve(Paths.get(directory), uuid).toString();
     }
 
     private void createDirectory(String path) {
@@ -224,4 +955,92 @@ public class FileSystemDocumentDao implements IFileUploadDao {
         file.mkdirs();
     }
 
+    public String getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Sets the directory of the store, relative to the working directory
+     * or absolute. Has to be set before init.
+     */
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    public boolean isIndexEnabled() {
+        return indexEnabled;
+    }
+
+    public void setIndexEnabled(boolean indexEnabled) {
+        this.indexEnabled = indexEnabled;
+    }
+
+    public int getScanParallelism() {
+        return scanParallelism;
+    }
+
+    public void setScanParallelism(int scanParallelism) {
+        this.scanParallelism = scanParallelism;
+    }
+
+    public boolean isJournalEnabled() {
+        return journalEnabled;
+    }
+
+    public void setJournalEnabled(boolean journalEnabled) {
+        this.journalEnabled = journalEnabled;
+    }
+
+    public int getSnapshotInterval() {
+        return snapshotInterval;
+    }
+
+    public void setSnapshotInterval(int snapshotInterval) {
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    public boolean isFsyncEnabled() {
+        return fsyncEnabled;
+    }
+
+    public void setFsyncEnabled(boolean fsyncEnabled) {
+        this.fsyncEnabled = fsyncEnabled;
+    }
+
+    public boolean isCompressionEnabled() {
+        return compressionEnabled;
+    }
+
+    public void setCompressionEnabled(boolean compressionEnabled) {
+        this.compressionEnabled = compressionEnabled;
+    }
+
+    /**
+     * Returns true if the SHA-256 hash of the file data is computed
+     * besides the CRC32C.
+     */
+    public boolean isSha256Enabled() {
+        return sha256Enabled;
+    }
+
+    public void setSha256Enabled(boolean sha256Enabled) {
+        this.sha256Enabled = sha256Enabled;
+    }
+
+    public FileUploadMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(FileUploadMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public int getMaxConcurrentDiskOperations() {
+        return maxConcurrentDiskOperations;
+    }
+
+    public void setMaxConcurrentDiskOperations(int maxConcurrentDiskOperations) {
+        this.maxConcurrentDiskOperations = maxConcurrentDiskOperations;
+    }
+
 }
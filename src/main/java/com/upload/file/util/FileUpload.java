@@ -1,7 +1,7 @@
 package com.upload.file.util;
 
 import java.io.Serializable;
-import java.util.Date;
+import java.time.LocalDate;
 import java.util.Properties;
 
 /**
@@ -15,7 +15,7 @@ public class FileUpload extends FileUploadMetadata implements Serializable {
     
     private byte[] fileData;
     
-    public FileUpload( byte[] fileData, String fileName, Date documentDate, String authorName) {
+    public FileUpload( byte[] fileData, String fileName, LocalDate documentDate, String authorName) {
         super(fileName, documentDate, authorName);
         this.fileData = fileData;
     }
@@ -26,6 +26,8 @@ public class FileUpload extends FileUploadMetadata implements Serializable {
     
     public FileUpload(FileUploadMetadata metadata) {
         super(metadata.getUuid(), metadata.getFileName(), metadata.getAuthorName(), metadata.getUploadDate());
+        setSha256(metadata.getSha256());
+        setCrc32c(metadata.getCrc32c());
     }
 
     public byte[] getFileData() {
@@ -36,7 +38,10 @@ public class FileUpload extends FileUploadMetadata implements Serializable {
     }
     
     public FileUploadMetadata getMetadata() {
-        return new FileUploadMetadata(getUuid(), getFileName(), getAuthorName(), getUploadDate());
+        FileUploadMetadata metadata = new FileUploadMetadata(getUuid(), getFileName(), getAuthorName(), getUploadDate());
+        metadata.setSha256(getSha256());
+        metadata.setCrc32c(getCrc32c());
+        return metadata;
     }
     
 }
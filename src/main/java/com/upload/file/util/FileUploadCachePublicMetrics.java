@@ -0,0 +1,47 @@
+package com.upload.file.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+/**
+ * Exposes the statistics of the cache of CachingFileUploadDao
+ * through the actuator metrics endpoint (/metrics).
+ *
+ * @author Poornima
+ */
+@Component
+@ConditionalOnProperty(name = "upload.cache.enabled", havingValue = "true", matchIfMissing = true)
+public class FileUploadCachePublicMetrics implements PublicMetrics {
+
+    @Autowired
+    private CachingFileUploadDao cachingFileUploadDao;
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+        addMetrics(metrics, "cache.upload.body", cachingFileUploadDao.getBodyCache());
+        return metrics;
+    }
+
+    private void addMetrics(List<Metric<?>> metrics, String prefix, Cache<?, ?> cache) {
+        CacheStats stats = cache.stats();
+        metrics.add(new Metric<Long>(prefix + ".size", cache.estimatedSize()));
+        metrics.add(new Metric<Long>(prefix + ".hits", stats.hitCount()));
+        metrics.add(new Metric<Long>(prefix + ".misses", stats.missCount()));
+        metrics.add(new Metric<Long>(prefix + ".evictions", stats.evictionCount()));
+        metrics.add(new Metric<Double>(prefix + ".hit.ratio", stats.hitRate()));
+        if (cache.policy().eviction().isPresent() && cache.policy().eviction().get().isWeighted()) {
+            metrics.add(new Metric<Long>(prefix + ".weight", cache.policy().eviction().get().weightedSize().getAsLong()));
+        }
+    }
+}
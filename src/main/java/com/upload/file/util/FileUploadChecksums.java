@@ -0,0 +1,200 @@
+package com.upload.file.util;
+
+import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.zip.Checksum;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Checksums of the file data: CRC32C (Castagnoli) and SHA-256.
+ *
+ * CRC32C is computed by java.util.zip.CRC32C, which uses the CRC32
+ * instructions of the processor, on Java 9 and later. On Java 8 a table
+ * driven implementation (slicing-by-8) computes the same values, so the
+ * checksums do not depend on the Java version which stored a file.
+ *
+ * Checksums are stored as lower case hex strings.
+ *
+ * @author Poornima
+ */
+public final class FileUploadChecksums {
+
+    private static final Logger LOG = Logger.getLogger(FileUploadChecksums.class);
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final Constructor<?> CRC32C_CONSTRUCTOR = findCrc32c();
+
+    private FileUploadChecksums() {
+    }
+
+    /**
+     * Returns a new CRC32C checksum.
+     */
+    public static Checksum newCrc32c() {
+        if(CRC32C_CONSTRUCTOR!=null) {
+            try {
+                return (Checksum) CRC32C_CONSTRUCTOR.newInstance();
+            } catch (ReflectiveOperationException e) {
+                LOG.warn("Error while creating java.util.zip.CRC32C", e);
+            }
+        }
+        return new Crc32c();
+    }
+
+    /**
+     * Returns a new SHA-256 message digest.
+     */
+    public static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+
+    /**
+     * Returns the CRC32C of the data as hex string.
+     */
+    public static String crc32c(byte[] data, int offset, int length) {
+        Checksum crc = newCrc32c();
+        crc.update(data, offset, length);
+        return toHex(crc);
+    }
+
+    /**
+     * Updates a checksum with the remaining bytes of the buffer, without
+     * moving its position.
+     */
+    public static void update(Checksum checksum, ByteBuffer buffer) {
+        if(buffer.hasArray()) {
+            checksum.update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            return;
+        }
+        ByteBuffer source = buffer.duplicate();
+        byte[] bytes = new byte[Math.min(source.remaining(), 8192)];
+        while (source.hasRemaining()) {
+            int length = Math.min(source.remaining(), bytes.length);
+            source.get(bytes, 0, length);
+            checksum.update(bytes, 0, length);
+        }
+    }
+
+    /**
+     * Returns the SHA-256 hash of the data as hex string.
+     */
+    public static String sha256(byte[] data, int offset, int length) {
+        MessageDigest digest = newSha256();
+        digest.update(data, offset, length);
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Returns the value of a 32 bit checksum as hex string of 8 characters.
+     */
+    public static String toHex(Checksum checksum) {
+        long value = checksum.getValue();
+        char[] chars = new char[8];
+        for (int i = 7; i >= 0; i--) {
+            chars[i] = HEX[(int) (value & 0xf)];
+            value >>>= 4;
+        }
+        return new String(chars);
+    }
+
+    public static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Returns the bytes of a hex string in base64, the encoding of checksums
+     * in the HTTP Digest header.
+     */
+    public static String hexToBase64(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        return Base64.getEncoder().encodeToString(bytes);
+    }
+
+    private static Constructor<?> findCrc32c() {
+        try {
+            return Class.forName("java.util.zip.CRC32C").getConstructor();
+        } catch (ReflectiveOperationException e) {
+            LOG.debug("java.util.zip.CRC32C is not available, using slicing-by-8");
+            return null;
+        }
+    }
+
+    /**
+     * CRC32C with the reflected polynomial 0x82F63B78, processing 8 bytes
+     * per step with 8 lookup tables.
+     */
+    static final class Crc32c implements Checksum {
+
+        private static final int[][] TABLES = createTables();
+
+        private int crc = 0xFFFFFFFF;
+
+        @Override
+        public void update(int b) {
+            crc = (crc >>> 8) ^ TABLES[0][(crc ^ b) & 0xff];
+        }
+
+        @Override
+        public void update(byte[] b, int off, int len) {
+            int[] t0 = TABLES[0], t1 = TABLES[1], t2 = TABLES[2], t3 = TABLES[3];
+            int[] t4 = TABLES[4], t5 = TABLES[5], t6 = TABLES[6], t7 = TABLES[7];
+            int c = crc;
+            int end = off + len;
+            while (end - off >= 8) {
+                c ^= (b[off] & 0xff) | (b[off + 1] & 0xff) << 8 | (b[off + 2] & 0xff) << 16 | (b[off + 3] & 0xff) << 24;
+                c = t7[c & 0xff] ^ t6[(c >>> 8) & 0xff] ^ t5[(c >>> 16) & 0xff] ^ t4[c >>> 24]
+                        ^ t3[b[off + 4] & 0xff] ^ t2[b[off + 5] & 0xff] ^ t1[b[off + 6] & 0xff] ^ t0[b[off + 7] & 0xff];
+                off += 8;
+            }
+            while (off < end) {
+                c = (c >>> 8) ^ t0[(c ^ b[off++]) & 0xff];
+            }
+            crc = c;
+        }
+
+        @Override
+        public long getValue() {
+            return ~crc & 0xFFFFFFFFL;
+        }
+
+        @Override
+        public void reset() {
+            crc = 0xFFFFFFFF;
+        }
+
+        private static int[][] createTables() {
+            int[][] tables = new int[8][256];
+            for (int i = 0; i < 256; i++) {
+                int c = i;
+                for (int k = 0; k < 8; k++) {
+                    c = (c & 1) != 0 ? (c >>> 1) ^ 0x82F63B78 : c >>> 1;
+                }
+                tables[0][i] = c;
+            }
+            for (int t = 1; t < 8; t++) {
+                for (int i = 0; i < 256; i++) {
+                    int c = tables[t - 1][i];
+                    tables[t][i] = (c >>> 8) ^ tables[0][c & 0xff];
+                }
+            }
+            return tables;
+        }
+    }
+}
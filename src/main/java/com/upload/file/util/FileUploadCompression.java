@@ -0,0 +1,154 @@
+package com.upload.file.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compression of stored file data.
+ *
+ * File data is compressed with gzip at the fastest level. gzip is the
+ * content coding every HTTP client accepts, so compressed data can be sent
+ * to clients as it is stored. Whether a file is compressed is decided by
+ * its extension: text formats are always compressed, formats which are
+ * already compressed (archives, images, media) never. For other files the
+ * first SAMPLE_SIZE bytes of the data are compressed as a sample and the
+ * file is only compressed if the sample shrinks by at least
+ * MIN_SAVING_PERCENT.
+ *
+ * @author Poornima
+ */
+public final class FileUploadCompression {
+
+    /** Content coding of data compressed with gzip */
+    public static final String GZIP = "gzip";
+
+    /** Files smaller than this are not compressed */
+    public static final int MIN_SIZE = 512;
+
+    /** Number of bytes compressed to decide whether to compress a file */
+    public static final int SAMPLE_SIZE = 16 * 1024;
+
+    /** Minimum saving of a sample in percent to compress a file */
+    public static final int MIN_SAVING_PERCENT = 10;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final Set<String> TEXT_EXTENSIONS = new HashSet<String>(Arrays.asList(
+            "txt", "csv", "tsv", "json", "ndjson", "xml", "html", "htm", "log", "md",
+            "yaml", "yml", "sql", "js", "css", "properties", "svg"));
+
+    private static final Set<String> COMPRESSED_EXTENSIONS = new HashSet<String>(Arrays.asList(
+            "gz", "tgz", "zip", "jar", "bz2", "xz", "7z", "rar", "zst", "lz4",
+            "jpg", "jpeg", "png", "gif", "webp", "mp3", "mp4", "m4a", "ogg", "avi", "mov", "mkv", "webm",
+            "docx", "xlsx", "pptx", "odt", "ods", "odp"));
+
+    private FileUploadCompression() {
+    }
+
+    /**
+     * Returns true if a file is worth compressing.
+     *
+     * @param fileName The name of the file, may be null
+     * @param sample The first bytes of the file data
+     * @param length The number of bytes in the sample buffer, less than the
+     *        buffer only if the sample is the whole file
+     * @return true if the file data should be compressed
+     */
+    public static boolean isCompressible(String fileName, byte[] sample, int length) {
+        if(length < MIN_SIZE) {
+            return false;
+        }
+        String extension = FileUploadQuery.getExtension(fileName);
+        if(TEXT_EXTENSIONS.contains(extension)) {
+            return true;
+        }
+        if(COMPRESSED_EXTENSIONS.contains(extension)) {
+            return false;
+        }
+        int sampleLength = Math.min(length, SAMPLE_SIZE);
+        long maxLength = (long) sampleLength * (100 - MIN_SAVING_PERCENT) / 100;
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            deflater.setInput(sample, 0, sampleLength);
+            deflater.finish();
+            byte[] buffer = new byte[sampleLength];
+            long compressedLength = 0;
+            while (!deflater.finished()) {
+                compressedLength += deflater.deflate(buffer);
+                if(compressedLength > maxLength) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Reads the first bytes of a stream. Less bytes than the size of the
+     * buffer are only read at the end of the stream.
+     *
+     * @param data The stream
+     * @param sample The buffer of the sample
+     * @return The number of bytes read
+     * @throws IOException
+     */
+    public static int readSample(InputStream data, byte[] sample) throws IOException {
+        int length = 0;
+        int read;
+        while (length < sample.length && (read = data.read(sample, length, sample.length - length)) != -1) {
+            length += read;
+        }
+        return length;
+    }
+
+    /**
+     * Returns a stream which compresses the data written to it with gzip.
+     * Closing the stream closes the given stream.
+     *
+     * @param out The stream of the compressed data
+     * @return A stream of the uncompressed data
+     * @throws IOException
+     */
+    public static OutputStream compress(OutputStream out) throws IOException {
+        return new FastGZIPOutputStream(out);
+    }
+
+    /**
+     * Returns a stream which decompresses stored data.
+     *
+     * @param in The stream of the stored data
+     * @param contentEncoding The content coding of the stored data, null
+     *        if the data is not compressed
+     * @return A stream of the uncompressed data
+     * @throws IOException If the content coding is not supported
+     */
+    public static InputStream decompress(InputStream in, String contentEncoding) throws IOException {
+        if(contentEncoding==null) {
+            return in;
+        }
+        if(GZIP.equals(contentEncoding)) {
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        }
+        throw new IOException("Unsupported content encoding: " + contentEncoding);
+    }
+
+    /**
+     * A gzip stream using the fastest compression level.
+     */
+    private static class FastGZIPOutputStream extends GZIPOutputStream {
+
+        FastGZIPOutputStream(OutputStream out) throws IOException {
+            super(out, BUFFER_SIZE);
+            def.setLevel(Deflater.BEST_SPEED);
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package com.upload.file.util;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The stored content of a file managed by IUploadService.
+ *
+ * FileUploadContent does not hold the file data. It references the region
+ * of a file in the file system which contains the data, so the data can be
+ * streamed or transferred to a channel without copying it to the heap.
+ *
+ * The stored data may be compressed, see getContentEncoding. transferTo
+ * and the offset and length refer to the stored data, openStream returns
+ * the uncompressed data.
+ *
+ * Small files may be held in memory instead, e.g. by a cache, see
+ * isInMemory. They have no file and are written from the buffer.
+ *
+ * @author Poornima
+ */
+public class FileUploadContent {
+
+    private final FileUploadMetadata metadata;
+    private final File file;
+    private final long offset;
+    private final long length;
+    private final long lastModified;
+    private final ByteBuffer data;
+
+    public FileUploadContent(FileUploadMetadata metadata, File file) {
+        this(metadata, file, 0, file.length());
+    }
+
+    public FileUploadContent(FileUploadMetadata metadata, File file, long offset, long length) {
+        this(metadata, file, offset, length, 0);
+    }
+
+    /**
+     * Creates the content of a region of a file shared with other
+     * contents, whose last modified time does not change with the file.
+     *
+     * @param lastModified The last modified time of the content, 0 to use
+     *        the time of the file
+     */
+    public FileUploadContent(FileUploadMetadata metadata, File file, long offset, long length, long lastModified) {
+        super();
+        this.metadata = metadata;
+        this.file = file;
+        this.offset = offset;
+        this.length = length;
+        this.lastModified = lastModified;
+        this.data = null;
+    }
+
+    /**
+     * Creates content held in memory.
+     *
+     * @param data The stored data, compressed if the meta data has a content encoding
+     * @param lastModified The last modified time of the content
+     */
+    public FileUploadContent(FileUploadMetadata metadata, ByteBuffer data, long lastModified) {
+        super();
+        this.metadata = metadata;
+        this.file = null;
+        this.offset = 0;
+        this.length = data.remaining();
+        this.lastModified = lastModified;
+        this.data = data;
+    }
+
+    /**
+     * Returns a copy of the content held in memory. The stored data is read
+     * as it is, without decompressing it.
+     *
+     * @param direct True to keep the data in a direct buffer outside of the heap
+     * @return The content in memory
+     * @throws IOException
+     */
+    public FileUploadContent loadIntoMemory(boolean direct) throws IOException {
+        if (isInMemory()) {
+            return this;
+        }
+        ByteBuffer buffer = direct ? ByteBuffer.allocateDirect((int) length) : ByteBuffer.allocate((int) length);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) < 0) {
+                    throw new IOException("File was truncated: " + file);
+                }
+            }
+        }
+        buffer.flip();
+        return new FileUploadContent(metadata, buffer, getLastModified());
+    }
+
+    /**
+     * Transfers bytes of the stored content to the given channel.
+     * FileChannel.transferTo is used so the operating system can copy
+     * the data without passing it through the JVM if the target supports it.
+     *
+     * @param position The position in the content of the first byte
+     * @param count The number of bytes to transfer
+     * @param target The target channel
+     * @return The number of bytes transferred
+     * @throws IOException
+     */
+    public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+        if (isInMemory()) {
+            ByteBuffer source = getData();
+            source.position((int) Math.min(position, length));
+            source.limit((int) Math.min(position + count, length));
+            long transferred = source.remaining();
+            while (source.hasRemaining()) {
+                target.write(source);
+            }
+            return transferred;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long transferred = 0;
+            while (transferred < count) {
+                long n = channel.transferTo(offset + position + transferred, count - transferred, target);
+                if (n <= 0) {
+                    break;
+                }
+                transferred += n;
+            }
+            return transferred;
+        }
+    }
+
+    /**
+     * Returns a stream to read the content, which is decompressed if it
+     * is stored compressed. The caller has to close the stream.
+     *
+     * @return A stream of the content
+     * @throws IOException
+     */
+    public InputStream openStream() throws IOException {
+        if (isInMemory()) {
+            return FileUploadCompression.decompress(new ByteBufferInputStream(getData()), getContentEncoding());
+        }
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        channel.position(offset);
+        InputStream in = new BoundedInputStream(Channels.newInputStream(channel), length);
+        try {
+            return FileUploadCompression.decompress(in, getContentEncoding());
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the content coding of the stored data, null if the data
+     * is stored uncompressed.
+     */
+    public String getContentEncoding() {
+        return (metadata!=null) ? metadata.getContentEncoding() : null;
+    }
+
+    public boolean isCompressed() {
+        return getContentEncoding()!=null;
+    }
+
+    /**
+     * Returns the length of the uncompressed content.
+     */
+    public long getSize() {
+        return isCompressed() ? metadata.getSize() : length;
+    }
+
+    public FileUploadMetadata getMetadata() {
+        return metadata;
+    }
+
+    /**
+     * Returns the file containing the stored data, null if the content
+     * is held in memory.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns true if the content is held in memory instead of a file.
+     */
+    public boolean isInMemory() {
+        return data != null;
+    }
+
+    /**
+     * Returns the stored data of content held in memory, null otherwise.
+     * The returned buffer is independent of other callers.
+     */
+    public ByteBuffer getData() {
+        return (data != null) ? data.duplicate() : null;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Returns the length of the stored content.
+     */
+    public long getLength() {
+        return length;
+    }
+
+    public long getLastModified() {
+        return (lastModified!=0 || file==null) ? lastModified : file.lastModified();
+    }
+
+    /**
+     * A stream which stops reading after a number of bytes.
+     */
+    private static class BoundedInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b != -1) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = super.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
+    /**
+     * A stream of the remaining bytes of a buffer.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buffer.hasRemaining()) {
+                return (len == 0) ? 0 : -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
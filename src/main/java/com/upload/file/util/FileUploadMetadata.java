@@ -1,22 +1,32 @@
 package com.upload.file.util;
 
 import java.io.Serializable;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
 import java.util.Properties;
 import java.util.UUID;
 
 import org.apache.log4j.Logger;
 
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 /**
  * Meta data of a document from an archive managed by IUploadService.
+ *
+ * The date of a document is an immutable LocalDate. The epoch day of the
+ * date is kept as well, so meta data can be compared by date without
+ * allocating or parsing anything.
+ *
+ * The file name is the name of the file data in the folder of the
+ * document, so it is reduced to its last path component.
  * 
  * @author Poornima
  */
 public class FileUploadMetadata implements Serializable {
     
-    static final long serialVersionUID = 2L;
+    static final long serialVersionUID = 3L;
 
     private static final Logger LOG = Logger.getLogger(FileUploadMetadata.class);
     
@@ -24,30 +34,52 @@ public class FileUploadMetadata implements Serializable {
     public static final String PROP_AUTHOR = "author-name";
     public static final String PROP_FILE_NAME = "file-name";
     public static final String PROP_UPLOAD_DATE = "document-date";
+    public static final String PROP_SHA256 = "sha256";
+    public static final String PROP_CRC32C = "crc32c";
+    public static final String PROP_SIZE = "file-size";
+    public static final String PROP_CONTENT_ENCODING = "content-encoding";
+    
+    public static final String DATE_FORMAT_PATTERN = "MM-dd-yyyy";
+    /** Thread safe formatter of DATE_FORMAT_PATTERN */
+    public static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern(DATE_FORMAT_PATTERN);
+    
+    /** Epoch day of meta data without date */
+    public static final long NO_DATE = Long.MIN_VALUE;
     
-    public static final String DATE_FORMAT_PATTERN = "mm-dd-yyyy";
-    public static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat(DATE_FORMAT_PATTERN);
+    /** Size of meta data of files stored before the size was recorded */
+    public static final long UNKNOWN_SIZE = -1;
+    
+    /** Segment of meta data of files which are not stored in a segment */
+    public static final long NO_SEGMENT = -1;
     
     protected String uuid;
     protected String fileName;
     protected String authorName;
-    protected Date uploadDate;
+    protected LocalDate uploadDate;
+    protected long uploadDay = NO_DATE;
+    protected String sha256;
+    protected String crc32c;
+    protected long size = UNKNOWN_SIZE;
+    protected String contentEncoding;
+    protected long segment = NO_SEGMENT;
+    protected long segmentOffset;
+    protected long segmentLength;
 
     
     public FileUploadMetadata() {
         super();
     }
 
-    public FileUploadMetadata(String fileName, Date uploadDate, String authorName) {
+    public FileUploadMetadata(String fileName, LocalDate uploadDate, String authorName) {
         this(UUID.randomUUID().toString(), fileName, authorName,uploadDate);
     }
     
-    public FileUploadMetadata(String uuid, String fileName, String authorName, Date uploadDate) {
+    public FileUploadMetadata(String uuid, String fileName, String authorName, LocalDate uploadDate) {
         super();
         this.uuid = uuid;
-        this.fileName = fileName;
-        this.uploadDate = uploadDate;
+        this.fileName = toFileName(fileName);
         this.authorName = authorName;
+        setuploadDate(uploadDate);
     }
     
     public FileUploadMetadata(Properties properties) {
@@ -55,16 +87,89 @@ public class FileUploadMetadata implements Serializable {
              properties.getProperty(PROP_FILE_NAME),
              properties.getProperty(PROP_AUTHOR),
              null);
+        this.sha256 = properties.getProperty(PROP_SHA256);
+        this.crc32c = properties.getProperty(PROP_CRC32C);
+        this.contentEncoding = properties.getProperty(PROP_CONTENT_ENCODING);
+        String sizeString = properties.getProperty(PROP_SIZE);
+        if(sizeString!=null) {
+            try {
+                this.size = Long.parseLong(sizeString);
+            } catch (NumberFormatException e) {
+                LOG.error("Error while parsing file size: " + sizeString, e);
+            }
+        }
         String dateString = properties.getProperty(PROP_UPLOAD_DATE);
         if(dateString!=null) {
             try {
-                this.uploadDate = DATE_FORMAT.parse(dateString);
-            } catch (ParseException e) {
-                LOG.error("Error while parsing date string: " + dateString + ", format is: mm-dd-yyyy" , e);
+                setuploadDate(parseDate(dateString));
+            } catch (DateTimeException e) {
+                LOG.error("Error while parsing date string: " + dateString + ", format is: " + DATE_FORMAT_PATTERN, e);
             }
         }    
     }
 
+    /**
+     * Returns the last path component of a file name, as sent by clients
+     * which include the path of the file, so the file data can not be
+     * stored outside of the folder of the document.
+     *
+     * @param name A file name, may be null
+     * @return The file name without path
+     * @throws IllegalArgumentException If the name is empty, . or ..
+     */
+    public static String toFileName(String name) {
+        if(name==null) {
+            return null;
+        }
+        String fileName = name.substring(Math.max(name.lastIndexOf('/'), name.lastIndexOf('\\')) + 1);
+        if(fileName.isEmpty() || fileName.equals(".") || fileName.equals("..") || fileName.indexOf('\0') >= 0) {
+            throw new IllegalArgumentException("Invalid file name: " + name);
+        }
+        return fileName;
+    }
+
+    /**
+     * Parses a date in the format MM-dd-yyyy. Dates with two digit month
+     * and day are parsed without the formatter.
+     *
+     * @param dateString A date string
+     * @return The date
+     * @throws DateTimeException If the string is not a valid date
+     */
+    public static LocalDate parseDate(String dateString) {
+        if(dateString.length()==10 && dateString.charAt(2)=='-' && dateString.charAt(5)=='-') {
+            int month = parseDigits(dateString, 0, 2);
+            int day = parseDigits(dateString, 3, 5);
+            int year = parseDigits(dateString, 6, 10);
+            if(month>=0 && day>=0 && year>=0) {
+                return LocalDate.of(year, month, day);
+            }
+        }
+        return LocalDate.parse(dateString, DATE_FORMAT);
+    }
+
+    /**
+     * Formats a date in the format MM-dd-yyyy.
+     *
+     * @param date A date
+     * @return The date string
+     */
+    public static String formatDate(LocalDate date) {
+        return DATE_FORMAT.format(date);
+    }
+
+    private static int parseDigits(String s, int begin, int end) {
+        int value = 0;
+        for (int i = begin; i < end; i++) {
+            int digit = s.charAt(i) - '0';
+            if(digit<0 || digit>9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
     public String getUuid() {
         return uuid;
     }
@@ -76,14 +181,25 @@ public class FileUploadMetadata implements Serializable {
         return fileName;
     }
     public void setFileName(String fileName) {
-        this.fileName = fileName;
+        this.fileName = toFileName(fileName);
     }
     
-    public Date getUploadDate() {
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = DATE_FORMAT_PATTERN)
+    public LocalDate getUploadDate() {
         return uploadDate;
     }
-    public void setuploadDate(Date uploadDate) {
+    public void setuploadDate(LocalDate uploadDate) {
         this.uploadDate = uploadDate;
+        this.uploadDay = (uploadDate != null) ? uploadDate.toEpochDay() : NO_DATE;
+    }
+    
+    /**
+     * Returns the epoch day of the upload date, NO_DATE if the meta data
+     * has no date.
+     */
+    @JsonIgnore
+    public long getUploadDay() {
+        return uploadDay;
     }
     
     public String getAuthorName() {
@@ -93,12 +209,113 @@ public class FileUploadMetadata implements Serializable {
         this.authorName = authorName;
     }
     
+    /**
+     * Returns the SHA-256 hash of the file data as hex string, 
+     * null if the hash was not computed.
+     */
+    public String getSha256() {
+        return sha256;
+    }
+    public void setSha256(String sha256) {
+        this.sha256 = sha256;
+    }
+    
+    /**
+     * Returns the CRC32C of the file data as hex string, null if the 
+     * checksum was not computed. See FileUploadChecksums.
+     */
+    public String getCrc32c() {
+        return crc32c;
+    }
+    public void setCrc32c(String crc32c) {
+        this.crc32c = crc32c;
+    }
+    
+    /**
+     * Returns the size of the file data in bytes, UNKNOWN_SIZE if the 
+     * size was not recorded.
+     */
+    public long getSize() {
+        return size;
+    }
+    public void setSize(long size) {
+        this.size = size;
+    }
+    
+    /**
+     * Returns the content coding of the stored file data, e.g. gzip, 
+     * null if the file data is stored uncompressed. The size is always
+     * the size of the uncompressed data.
+     */
+    @JsonIgnore
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+    @JsonIgnore
+    public void setContentEncoding(String contentEncoding) {
+        this.contentEncoding = contentEncoding;
+    }
+    
+    /**
+     * Returns the id of the segment file containing the file data, 
+     * NO_SEGMENT if the file is stored in its own folder. 
+     * See PackedDocumentDao.
+     */
+    @JsonIgnore
+    public long getSegment() {
+        return segment;
+    }
+    @JsonIgnore
+    public void setSegment(long segment) {
+        this.segment = segment;
+    }
+    
+    /**
+     * Returns the position of the file data in its segment file.
+     */
+    @JsonIgnore
+    public long getSegmentOffset() {
+        return segmentOffset;
+    }
+    @JsonIgnore
+    public void setSegmentOffset(long segmentOffset) {
+        this.segmentOffset = segmentOffset;
+    }
+    
+    /**
+     * Returns the length of the stored file data in its segment file.
+     */
+    @JsonIgnore
+    public long getSegmentLength() {
+        return segmentLength;
+    }
+    @JsonIgnore
+    public void setSegmentLength(long segmentLength) {
+        this.segmentLength = segmentLength;
+    }
+    
     public Properties createProperties() {
         Properties props = new Properties();
         props.setProperty(PROP_UUID, getUuid());
         props.setProperty(PROP_FILE_NAME, getFileName());
-        props.setProperty(PROP_AUTHOR, getAuthorName());
-        props.setProperty(PROP_UPLOAD_DATE, DATE_FORMAT.format(getUploadDate()));
+        if(getAuthorName()!=null) {
+            props.setProperty(PROP_AUTHOR, getAuthorName());
+        }
+        if(getUploadDate()!=null) {
+            props.setProperty(PROP_UPLOAD_DATE, formatDate(getUploadDate()));
+        }
+        if(getSha256()!=null) {
+            props.setProperty(PROP_SHA256, getSha256());
+        }
+        if(getCrc32c()!=null) {
+            props.setProperty(PROP_CRC32C, getCrc32c());
+        }
+        if(getSize()!=UNKNOWN_SIZE) {
+            props.setProperty(PROP_SIZE, Long.toString(getSize()));
+        }
+        if(getContentEncoding()!=null) {
+            props.setProperty(PROP_CONTENT_ENCODING, getContentEncoding());
+        }
         return props;
     }
     
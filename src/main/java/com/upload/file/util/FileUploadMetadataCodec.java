@@ -0,0 +1,264 @@
+package com.upload.file.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Properties;
+import java.util.UUID;
+
+/**
+ * Compact binary encoding of the meta data of a file, used for the meta
+ * data files in the folders and the records of segment files.
+ *
+ * Format: [byte magic][byte version][fields][byte 0].
+ * Field: [byte tag][varint length][value]. Strings are UTF-8, numbers are
+ * 8 byte big-endian longs, the upload date is stored as epoch day and a
+ * UUID in canonical form as 16 bytes. Absent fields are not written.
+ * Fields with unknown tags are skipped, so fields can be added (content
+ * type, checksums, ...) without changing the version; the version only
+ * changes if an existing field changes its meaning.
+ *
+ * Decoding reads the strings directly from the buffer, without parsing
+ * into a Hashtable first. The magic byte is not ASCII, so it never starts
+ * a file written by Properties.store, which escapes all other characters:
+ * decode also reads meta data stored as properties by older versions.
+ *
+ * @author Poornima
+ */
+public final class FileUploadMetadataCodec {
+
+    public static final byte MAGIC = (byte) 0xF5;
+    public static final byte VERSION = 1;
+
+    static final int TAG_END = 0;
+    static final int TAG_UUID = 1;
+    static final int TAG_UUID_STRING = 2;
+    static final int TAG_FILE_NAME = 3;
+    static final int TAG_AUTHOR = 4;
+    static final int TAG_UPLOAD_DAY = 5;
+    static final int TAG_SIZE = 6;
+    static final int TAG_SHA256 = 7;
+    static final int TAG_CONTENT_ENCODING = 8;
+    static final int TAG_CRC32C = 9;
+
+    private static final int UUID_LENGTH = 36;
+
+    private FileUploadMetadataCodec() {
+    }
+
+    /**
+     * Encodes the meta data, without the position of the file data in a
+     * segment.
+     */
+    public static byte[] encode(FileUploadMetadata metadata) {
+        String uuid = metadata.getUuid();
+        boolean uuidBinary = isCanonicalUuid(uuid);
+        byte[] uuidBytes = uuidBinary ? null : toBytes(uuid);
+        byte[] fileName = toBytes(metadata.getFileName());
+        byte[] authorName = toBytes(metadata.getAuthorName());
+        byte[] sha256 = toBytes(metadata.getSha256());
+        byte[] contentEncoding = toBytes(metadata.getContentEncoding());
+        byte[] crc32c = toBytes(metadata.getCrc32c());
+        boolean hasDate = metadata.getUploadDay() != FileUploadMetadata.NO_DATE;
+        boolean hasSize = metadata.getSize() != FileUploadMetadata.UNKNOWN_SIZE;
+
+        int length = 3 + (uuidBinary ? 18 : getFieldLength(uuidBytes)) + getFieldLength(fileName)
+                + getFieldLength(authorName) + getFieldLength(sha256) + getFieldLength(contentEncoding)
+                + getFieldLength(crc32c) + (hasDate ? 10 : 0) + (hasSize ? 10 : 0);
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.put(MAGIC).put(VERSION);
+        if(uuidBinary) {
+            UUID value = UUID.fromString(uuid);
+            buffer.put((byte) TAG_UUID).put((byte) 16);
+            buffer.putLong(value.getMostSignificantBits()).putLong(value.getLeastSignificantBits());
+        } else {
+            putField(buffer, TAG_UUID_STRING, uuidBytes);
+        }
+        putField(buffer, TAG_FILE_NAME, fileName);
+        putField(buffer, TAG_AUTHOR, authorName);
+        if(hasDate) {
+            buffer.put((byte) TAG_UPLOAD_DAY).put((byte) 8).putLong(metadata.getUploadDay());
+        }
+        if(hasSize) {
+            buffer.put((byte) TAG_SIZE).put((byte) 8).putLong(metadata.getSize());
+        }
+        putField(buffer, TAG_SHA256, sha256);
+        putField(buffer, TAG_CONTENT_ENCODING, contentEncoding);
+        putField(buffer, TAG_CRC32C, crc32c);
+        buffer.put((byte) TAG_END);
+        return buffer.array();
+    }
+
+    /**
+     * Decodes meta data in the binary format or as properties.
+     */
+    public static FileUploadMetadata decode(byte[] bytes) throws IOException {
+        return decode(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Decodes meta data in the binary format or as properties from the
+     * remaining bytes of the buffer. The position of the buffer is moved
+     * to the end of the meta data.
+     */
+    public static FileUploadMetadata decode(ByteBuffer buffer) throws IOException {
+        if(!isBinary(buffer)) {
+            return decodeProperties(buffer);
+        }
+        try {
+            buffer.get();
+            byte version = buffer.get();
+            if(version != VERSION) {
+                throw new IOException("Unsupported meta data version: " + version);
+            }
+            FileUploadMetadata metadata = new FileUploadMetadata();
+            int tag;
+            while ((tag = buffer.get()) != TAG_END) {
+                int length = getVarint(buffer);
+                if(length < 0 || length > buffer.remaining()) {
+                    throw new IOException("Invalid length of meta data field " + tag + ": " + length);
+                }
+                int end = buffer.position() + length;
+                switch (tag) {
+                case TAG_UUID:
+                    checkLength(tag, length, 16);
+                    metadata.setUuid(new UUID(buffer.getLong(), buffer.getLong()).toString());
+                    break;
+                case TAG_UUID_STRING:
+                    metadata.setUuid(getString(buffer, length));
+                    break;
+                case TAG_FILE_NAME:
+                    metadata.setFileName(getString(buffer, length));
+                    break;
+                case TAG_AUTHOR:
+                    metadata.setAuthorName(getString(buffer, length));
+                    break;
+                case TAG_UPLOAD_DAY:
+                    checkLength(tag, length, 8);
+                    metadata.setuploadDate(LocalDate.ofEpochDay(buffer.getLong()));
+                    break;
+                case TAG_SIZE:
+                    checkLength(tag, length, 8);
+                    metadata.setSize(buffer.getLong());
+                    break;
+                case TAG_SHA256:
+                    metadata.setSha256(getString(buffer, length));
+                    break;
+                case TAG_CONTENT_ENCODING:
+                    metadata.setContentEncoding(getString(buffer, length));
+                    break;
+                case TAG_CRC32C:
+                    metadata.setCrc32c(getString(buffer, length));
+                    break;
+                default:
+                    // written by a newer version
+                    break;
+                }
+                buffer.position(end);
+            }
+            return metadata;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Invalid meta data", e);
+        }
+    }
+
+    /**
+     * Returns true if the remaining bytes of the buffer start with the magic
+     * byte of the binary format.
+     */
+    public static boolean isBinary(ByteBuffer buffer) {
+        return buffer.hasRemaining() && buffer.get(buffer.position()) == MAGIC;
+    }
+
+    private static FileUploadMetadata decodeProperties(ByteBuffer buffer) throws IOException {
+        Properties properties = new Properties();
+        if(buffer.hasArray()) {
+            properties.load(new ByteArrayInputStream(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining()));
+            buffer.position(buffer.limit());
+        } else {
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            properties.load(new ByteArrayInputStream(bytes));
+        }
+        return new FileUploadMetadata(properties);
+    }
+
+    private static void checkLength(int tag, int length, int expected) throws IOException {
+        if(length != expected) {
+            throw new IOException("Invalid length of meta data field " + tag + ": " + length);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer, int length) {
+        if(buffer.hasArray()) {
+            String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+            return value;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int getVarint(ByteBuffer buffer) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if(b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Invalid length of meta data field");
+    }
+
+    private static void putField(ByteBuffer buffer, int tag, byte[] value) {
+        if(value==null) {
+            return;
+        }
+        buffer.put((byte) tag);
+        int length = value.length;
+        while ((length & ~0x7F) != 0) {
+            buffer.put((byte) ((length & 0x7F) | 0x80));
+            length >>>= 7;
+        }
+        buffer.put((byte) length);
+        buffer.put(value);
+    }
+
+    private static int getFieldLength(byte[] value) {
+        if(value==null) {
+            return 0;
+        }
+        int varintLength = 1;
+        for (int length = value.length; (length & ~0x7F) != 0; length >>>= 7) {
+            varintLength++;
+        }
+        return 1 + varintLength + value.length;
+    }
+
+    private static byte[] toBytes(String value) {
+        return (value != null) ? value.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    /**
+     * Returns true if the UUID is in the lower case form of UUID.toString,
+     * which can be restored from its 16 bytes.
+     */
+    private static boolean isCanonicalUuid(String uuid) {
+        if(uuid==null || uuid.length() != UUID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < UUID_LENGTH; i++) {
+            char c = uuid.charAt(i);
+            boolean dash = i == 8 || i == 13 || i == 18 || i == 23;
+            if(dash ? c != '-' : !((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,483 @@
+package com.upload.file.util;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Consumer;
+
+/**
+ * In-memory index of the meta data of all files in the data store.
+ *
+ * The index holds the meta data by UUID and secondary indexes of the
+ * UUIDs by author name, by the epoch day of the upload date and by file
+ * extension. Author names and days are sorted (skip lists), so prefix and
+ * range queries read only the matching keys. File names and sizes are
+ * distinct for most files, they are kept in sorted sets of the meta data
+ * instead of one set per key. Files without date are kept under NO_DATE,
+ * which is outside of every date range.
+ *
+ * A query is answered by the index with the fewest candidates for its
+ * criteria, the candidates are then checked against all criteria. The
+ * candidates of the other indexes are only counted up to the best count
+ * found so far.
+ *
+ * A page of a query which no index can narrow down is read in the order
+ * of the name or date index, so only the files up to the end of the page
+ * are read. Other pages are selected from the candidates with a heap of
+ * the size of the page, so the matches are neither copied nor sorted as
+ * a whole.
+ * The index is thread safe.
+ *
+ * @author Poornima
+ */
+public class FileUploadMetadataIndex {
+
+    /** Upper bound of the strings with a given prefix */
+    private static final char MAX_CHAR = Character.MAX_VALUE;
+
+    private final Map<String, FileUploadMetadata> metadataByUuid = new ConcurrentHashMap<String, FileUploadMetadata>();
+    private final ConcurrentNavigableMap<String, Set<String>> uuidsByAuthor = new ConcurrentSkipListMap<String, Set<String>>();
+    private final ConcurrentNavigableMap<Long, Set<String>> uuidsByDay = new ConcurrentSkipListMap<Long, Set<String>>();
+    private final ConcurrentMap<String, Set<String>> uuidsByExtension = new ConcurrentHashMap<String, Set<String>>();
+    private final NavigableSet<Entry<String>> byName = new ConcurrentSkipListSet<Entry<String>>();
+    private final NavigableSet<Entry<Long>> bySize = new ConcurrentSkipListSet<Entry<Long>>();
+
+    /**
+     * Adds the meta data of a file to the index. Meta data with the same
+     * UUID is replaced.
+     *
+     * @param metadata The meta data of a file
+     */
+    public void add(FileUploadMetadata metadata) {
+        if(metadata==null || metadata.getUuid()==null) {
+            return;
+        }
+        String uuid = metadata.getUuid();
+        FileUploadMetadata previous = metadataByUuid.put(uuid, metadata);
+        if(previous!=null) {
+            removeFromIndexes(previous);
+        }
+        if(metadata.getAuthorName()!=null) {
+            getUuids(uuidsByAuthor, metadata.getAuthorName()).add(uuid);
+        }
+        getUuids(uuidsByDay, metadata.getUploadDay()).add(uuid);
+        getUuids(uuidsByExtension, FileUploadQuery.getExtension(metadata.getFileName())).add(uuid);
+        byName.add(new Entry<String>(getNameKey(metadata), metadata));
+        if(metadata.getSize()!=FileUploadMetadata.UNKNOWN_SIZE) {
+            bySize.add(new Entry<Long>(metadata.getSize(), metadata));
+        }
+    }
+
+    /**
+     * Adds the meta data of files to the index.
+     *
+     * @param metadataList A list of meta data
+     */
+    public void addAll(Collection<FileUploadMetadata> metadataList) {
+        for (FileUploadMetadata metadata : metadataList) {
+            add(metadata);
+        }
+    }
+
+    /**
+     * Returns the meta data of the file with the given UUID or null
+     * if the file is not in the index.
+     *
+     * @param uuid The UUID of a file
+     * @return The meta data of the file
+     */
+    public FileUploadMetadata get(String uuid) {
+        return metadataByUuid.get(uuid);
+    }
+
+    /**
+     * Finds the meta data matching the given parameter.
+     *
+     * @param authorName The name of a author, may be null
+     * @param date The date of a document, may be null
+     * @return A list of file meta data
+     */
+    public List<FileUploadMetadata> find(String authorName, LocalDate date) {
+        return find(new FileUploadQuery(authorName, date));
+    }
+
+    /**
+     * Finds the meta data matching the query.
+     *
+     * @param query The query
+     * @return A list of file meta data
+     */
+    public List<FileUploadMetadata> find(FileUploadQuery query) {
+        if(query.isEmpty()) {
+            return new ArrayList<FileUploadMetadata>(metadataByUuid.values());
+        }
+        List<FileUploadMetadata> metadataList = new ArrayList<FileUploadMetadata>();
+        forEach(query, metadataList::add);
+        return metadataList;
+    }
+
+    /**
+     * Passes the meta data matching the query to the consumer, without
+     * collecting them. The order is undefined.
+     *
+     * @param query The query
+     * @param consumer The consumer of the meta data
+     */
+    public void forEach(FileUploadQuery query, Consumer<FileUploadMetadata> consumer) {
+        forEach(query, selectScan(query), consumer);
+    }
+
+    private void forEach(FileUploadQuery query, Scan best, Consumer<FileUploadMetadata> consumer) {
+        Consumer<FileUploadMetadata> filter = metadata -> {
+            if(query.matches(metadata)) {
+                consumer.accept(metadata);
+            }
+        };
+        if(best==null) {
+            metadataByUuid.values().forEach(filter);
+        } else {
+            best.forEach(filter);
+        }
+    }
+
+    /**
+     * Finds a page of the meta data matching the query in the order of
+     * the cursor.
+     *
+     * @param query The query
+     * @param cursor The position after which the page starts
+     * @param limit The maximum number of files of the page
+     * @return A page of file meta data
+     */
+    public FileUploadPage findPage(FileUploadQuery query, FileUploadPage.Cursor cursor, int limit) {
+        if(limit < 1) {
+            throw new IllegalArgumentException("Invalid limit: " + limit);
+        }
+        Scan scan = selectScan(query);
+        if(scan==null && cursor.getSort()==FileUploadSort.NAME) {
+            return findPageByName(query, cursor, limit);
+        }
+        if(scan==null && cursor.getSort()==FileUploadSort.DATE) {
+            return findPageByDate(query, cursor, limit);
+        }
+        Comparator<FileUploadMetadata> comparator = cursor.getComparator();
+        // one file more than the limit tells if there is a next page
+        int size = (limit == Integer.MAX_VALUE) ? limit : limit + 1;
+        PriorityQueue<FileUploadMetadata> heap = new PriorityQueue<FileUploadMetadata>(
+                Math.min(size, 1024), comparator.reversed());
+        forEach(query, scan, metadata -> {
+            if(!cursor.isBefore(metadata)) {
+                return;
+            }
+            if(heap.size() < size) {
+                heap.add(metadata);
+            } else if(comparator.compare(metadata, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(metadata);
+            }
+        });
+        List<FileUploadMetadata> files = new ArrayList<FileUploadMetadata>(heap);
+        files.sort(comparator);
+        return createPage(files, cursor, limit);
+    }
+
+    /**
+     * Reads a page in the order of the name index.
+     */
+    private FileUploadPage findPageByName(FileUploadQuery query, FileUploadPage.Cursor cursor, int limit) {
+        NavigableSet<Entry<String>> entries = cursor.isDescending() ? byName.descendingSet() : byName;
+        FileUploadMetadata position = cursor.getPosition();
+        if(position!=null) {
+            entries = entries.tailSet(new Entry<String>(getNameKey(position), position), false);
+        }
+        List<FileUploadMetadata> files = new ArrayList<FileUploadMetadata>();
+        for (Entry<String> entry : entries) {
+            if(query.matches(entry.metadata)) {
+                files.add(entry.metadata);
+                if(files.size() > limit) {
+                    break;
+                }
+            }
+        }
+        return createPage(files, cursor, limit);
+    }
+
+    /**
+     * Reads a page in the order of the date index. The files of a day are
+     * sorted by UUID.
+     */
+    private FileUploadPage findPageByDate(FileUploadQuery query, FileUploadPage.Cursor cursor, int limit) {
+        NavigableMap<Long, Set<String>> days = cursor.isDescending() ? uuidsByDay.descendingMap() : uuidsByDay;
+        FileUploadMetadata position = cursor.getPosition();
+        if(position!=null) {
+            days = days.tailMap(position.getUploadDay(), true);
+        }
+        Comparator<FileUploadMetadata> comparator = cursor.getComparator();
+        List<FileUploadMetadata> files = new ArrayList<FileUploadMetadata>();
+        for (Set<String> uuids : days.values()) {
+            List<FileUploadMetadata> day = new ArrayList<FileUploadMetadata>(uuids.size());
+            for (String uuid : uuids) {
+                FileUploadMetadata metadata = metadataByUuid.get(uuid);
+                if(metadata!=null && cursor.isBefore(metadata) && query.matches(metadata)) {
+                    day.add(metadata);
+                }
+            }
+            day.sort(comparator);
+            for (FileUploadMetadata metadata : day) {
+                files.add(metadata);
+                if(files.size() > limit) {
+                    return createPage(files, cursor, limit);
+                }
+            }
+        }
+        return createPage(files, cursor, limit);
+    }
+
+    /**
+     * Creates a page of the sorted files, which have one file more than the
+     * limit if there is a next page.
+     */
+    static FileUploadPage createPage(List<FileUploadMetadata> files, FileUploadPage.Cursor cursor, int limit) {
+        String nextCursor = null;
+        if(files.size() > limit) {
+            files.remove(files.size() - 1);
+            nextCursor = cursor.after(files.get(files.size() - 1)).encode();
+        }
+        return new FileUploadPage(files, nextCursor);
+    }
+
+    /**
+     * Removes all meta data from the index.
+     */
+    public void clear() {
+        metadataByUuid.clear();
+        uuidsByAuthor.clear();
+        uuidsByDay.clear();
+        uuidsByExtension.clear();
+        byName.clear();
+        bySize.clear();
+    }
+
+    /**
+     * Returns the number of files in the index.
+     *
+     * @return The number of files
+     */
+    public int size() {
+        return metadataByUuid.size();
+    }
+
+    private void removeFromIndexes(FileUploadMetadata metadata) {
+        String uuid = metadata.getUuid();
+        if(metadata.getAuthorName()!=null) {
+            lookup(uuidsByAuthor, metadata.getAuthorName()).remove(uuid);
+        }
+        lookup(uuidsByDay, metadata.getUploadDay()).remove(uuid);
+        lookup(uuidsByExtension, FileUploadQuery.getExtension(metadata.getFileName())).remove(uuid);
+        byName.remove(new Entry<String>(getNameKey(metadata), metadata));
+        bySize.remove(new Entry<Long>(metadata.getSize(), metadata));
+    }
+
+    /**
+     * Returns the scan with the fewest candidates for the query, null if
+     * no index narrows down the query.
+     */
+    private Scan selectScan(FileUploadQuery query) {
+        Scan best = null;
+        long bestCount = metadataByUuid.size();
+        for (Scan scan : getScans(query)) {
+            long count = scan.count(bestCount);
+            if(count < bestCount) {
+                best = scan;
+                bestCount = count;
+            }
+        }
+        return best;
+    }
+
+    private static String getNameKey(FileUploadMetadata metadata) {
+        return metadata.getFileName()==null ? "" : metadata.getFileName();
+    }
+
+    /**
+     * Returns the index scans which can answer the criteria of the query.
+     */
+    private List<Scan> getScans(FileUploadQuery query) {
+        List<Scan> scans = new ArrayList<Scan>();
+        if(query.getAuthor()!=null) {
+            scans.add(new UuidScan(Collections.singleton(lookup(uuidsByAuthor, query.getAuthor()))));
+        }
+        if(query.getAuthorPrefix()!=null) {
+            String prefix = query.getAuthorPrefix();
+            scans.add(new UuidScan(uuidsByAuthor.subMap(prefix, true, prefix + MAX_CHAR, false).values()));
+        }
+        if(query.hasDateRange()) {
+            long from = query.getFromDay();
+            long to = query.getToDay();
+            scans.add(new UuidScan(from <= to ? uuidsByDay.subMap(from, true, to, true).values()
+                    : Collections.<Set<String>>emptyList()));
+        }
+        if(query.getExtension()!=null) {
+            scans.add(new UuidScan(Collections.singleton(lookup(uuidsByExtension, query.getExtension()))));
+        }
+        if(query.getNamePrefix()!=null) {
+            String prefix = query.getNamePrefix();
+            scans.add(new EntryScan(byName.subSet(Entry.lowest(prefix), true, Entry.lowest(prefix + MAX_CHAR), false)));
+        }
+        if(query.hasSizeRange()) {
+            long min = query.getMinSizeValue();
+            long max = query.getMaxSizeValue();
+            scans.add(new EntryScan(min <= max ? bySize.subSet(Entry.lowest(min), true, Entry.highest(max), true)
+                    : Collections.<Entry<Long>>emptyNavigableSet()));
+        }
+        return scans;
+    }
+
+    private static <K> Set<String> lookup(Map<K, Set<String>> index, K key) {
+        Set<String> uuids = index.get(key);
+        if(uuids==null) {
+            return Collections.emptySet();
+        }
+        return uuids;
+    }
+
+    private static <K> Set<String> getUuids(ConcurrentMap<K, Set<String>> index, K key) {
+        return index.computeIfAbsent(key, k -> ConcurrentHashMap.<String>newKeySet());
+    }
+
+    /**
+     * Candidates of a query read from one index.
+     */
+    private interface Scan {
+
+        /**
+         * Returns the number of candidates, or the limit if there are more.
+         */
+        long count(long limit);
+
+        void forEach(Consumer<FileUploadMetadata> consumer);
+    }
+
+    /**
+     * Candidates in sets of UUIDs of a hash or sorted index.
+     */
+    private class UuidScan implements Scan {
+
+        private final Collection<Set<String>> uuidSets;
+
+        UuidScan(Collection<Set<String>> uuidSets) {
+            this.uuidSets = uuidSets;
+        }
+
+        @Override
+        public long count(long limit) {
+            long count = 0;
+            for (Set<String> uuids : uuidSets) {
+                count += uuids.size();
+                if(count >= limit) {
+                    return limit;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public void forEach(Consumer<FileUploadMetadata> consumer) {
+            for (Set<String> uuids : uuidSets) {
+                for (String uuid : uuids) {
+                    FileUploadMetadata metadata = metadataByUuid.get(uuid);
+                    if(metadata!=null) {
+                        consumer.accept(metadata);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Candidates in a range of a sorted set of meta data.
+     */
+    private static class EntryScan implements Scan {
+
+        private final Collection<? extends Entry<?>> entries;
+
+        EntryScan(Collection<? extends Entry<?>> entries) {
+            this.entries = entries;
+        }
+
+        @Override
+        public long count(long limit) {
+            long count = 0;
+            for (Entry<?> entry : entries) {
+                if(++count >= limit) {
+                    return limit;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public void forEach(Consumer<FileUploadMetadata> consumer) {
+            for (Entry<?> entry : entries) {
+                consumer.accept(entry.metadata);
+            }
+        }
+    }
+
+    /**
+     * Entry of a sorted set of meta data, ordered by key and UUID. Entries
+     * without meta data are the bounds of a range of keys.
+     */
+    private static final class Entry<K extends Comparable<K>> implements Comparable<Entry<K>> {
+
+        private static final int LOWEST = -1;
+        private static final int HIGHEST = 1;
+
+        private final K key;
+        private final FileUploadMetadata metadata;
+        private final int bound;
+
+        Entry(K key, FileUploadMetadata metadata) {
+            this(key, metadata, 0);
+        }
+
+        private Entry(K key, FileUploadMetadata metadata, int bound) {
+            this.key = key;
+            this.metadata = metadata;
+            this.bound = bound;
+        }
+
+        static <K extends Comparable<K>> Entry<K> lowest(K key) {
+            return new Entry<K>(key, null, LOWEST);
+        }
+
+        static <K extends Comparable<K>> Entry<K> highest(K key) {
+            return new Entry<K>(key, null, HIGHEST);
+        }
+
+        @Override
+        public int compareTo(Entry<K> other) {
+            int result = key.compareTo(other.key);
+            if(result != 0) {
+                return result;
+            }
+            if(bound != 0 || other.bound != 0) {
+                return Integer.compare(bound, other.bound);
+            }
+            return metadata.getUuid().compareTo(other.metadata.getUuid());
+        }
+    }
+}
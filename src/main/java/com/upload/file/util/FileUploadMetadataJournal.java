@@ -0,0 +1,412 @@
+package com.upload.file.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Append-only binary log of the meta data of all files in the data store.
+ *
+ * Every inserted file appends one record to the journal. Periodically the
+ * whole index is written to a snapshot file and the records it contains
+ * are removed from the journal.
+ * At startup the index is recovered by reading the snapshot and the tail
+ * of the journal sequentially with memory-mapped I/O, instead of reading
+ * one properties file per upload.
+ *
+ * Journal record: [int length][int crc32][payload].
+ * Payload: [meta data][long segment][long offset][long length]. The meta
+ * data is encoded by FileUploadMetadataCodec; offset and length are only
+ * written for files in a segment.
+ * Snapshot: [int magic][byte version][int count][records][long crc32].
+ * A record with a partial write at the end of the journal is dropped.
+ * Any other damage makes recovery fail, the caller then rebuilds the index
+ * from the meta data files.
+ *
+ * @author Poornima
+ */
+public class FileUploadMetadataJournal {
+
+    private static final Logger LOG = Logger.getLogger(FileUploadMetadataJournal.class);
+
+    public static final int JOURNAL_MAGIC = 0x46554d4a; // FUMJ
+    public static final int SNAPSHOT_MAGIC = 0x46554d53; // FUMS
+    /** Fields added to the codec do not change the version */
+    public static final byte VERSION = 8;
+
+    private static final int JOURNAL_HEADER_SIZE = 5;
+    private static final int SNAPSHOT_HEADER_SIZE = 9;
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private final Path journalPath;
+    private final Path snapshotPath;
+    private final int snapshotInterval;
+
+    /** Held while a snapshot is written, so snapshots do not overlap */
+    private final Object snapshotLock = new Object();
+
+    /**
+     * Held while the journal is forced and while the channel is closed,
+     * so the channel is not closed during a force. Appends only lock the
+     * journal itself and continue during a force. Taken before the lock
+     * of the journal.
+     */
+    private final Object forceLock = new Object();
+
+    private FileChannel journal;
+    private int recordsSinceSnapshot;
+
+    /**
+     * @param journalFile The journal file
+     * @param snapshotFile The snapshot file
+     * @param snapshotInterval The number of records appended before a snapshot is due
+     */
+    public FileUploadMetadataJournal(File journalFile, File snapshotFile, int snapshotInterval) {
+        super();
+        this.journalPath = journalFile.toPath();
+        this.snapshotPath = snapshotFile.toPath();
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    /**
+     * Recovers the index from the snapshot and the journal.
+     * Returns false if there is nothing to recover from or if the files
+     * are corrupt. The index may contain partial data in that case.
+     *
+     * @param index The index to fill
+     * @return true if the index was recovered
+     * @throws IOException
+     */
+    public synchronized boolean recover(FileUploadMetadataIndex index) throws IOException {
+        boolean hasSnapshot = Files.exists(snapshotPath);
+        boolean hasJournal = Files.exists(journalPath);
+        if (!hasSnapshot && !hasJournal) {
+            LOG.info("No meta data journal found: " + journalPath);
+            return false;
+        }
+        if (hasSnapshot && !readSnapshot(index)) {
+            LOG.warn("Meta data snapshot is corrupt: " + snapshotPath);
+            return false;
+        }
+        if (hasJournal) {
+            long validLength = readJournal(index);
+            if (validLength < 0) {
+                LOG.warn("Meta data journal is corrupt: " + journalPath);
+                return false;
+            }
+            openJournal();
+            if (journal.size() > validLength) {
+                LOG.warn("Dropping incomplete record at the end of the meta data journal");
+                journal.truncate(validLength);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Appends the meta data of a file to the journal.
+     *
+     * @param metadata The meta data of a file
+     * @return true if a snapshot is due
+     * @throws IOException
+     */
+    public synchronized boolean append(FileUploadMetadata metadata) throws IOException {
+        byte[] payload = encode(metadata);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+        buffer.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+        buffer.flip();
+        FileChannel channel = openJournal();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        recordsSinceSnapshot++;
+        return recordsSinceSnapshot >= snapshotInterval;
+    }
+
+    /**
+     * Writes a snapshot of the meta data and removes the records it contains
+     * from the journal. The snapshot is written to a temporary file and
+     * moved into place.
+     *
+     * The end of the journal is marked before the meta data is taken, so
+     * the meta data contains every record before the mark; the records
+     * appended after it are kept in the journal. The journal is only locked
+     * to mark its end and to cut off the records before the mark, appends
+     * continue while the snapshot is written.
+     *
+     * @param metadataSupplier Returns the meta data of all files, which has
+     *        to contain every record appended before it is called
+     * @throws IOException
+     */
+    public void snapshot(Supplier<? extends Collection<FileUploadMetadata>> metadataSupplier) throws IOException {
+        synchronized (snapshotLock) {
+            long mark;
+            synchronized (this) {
+                mark = openJournal().size();
+                recordsSinceSnapshot = 0;
+            }
+            Collection<FileUploadMetadata> metadataList = metadataSupplier.get();
+            writeSnapshot(metadataList);
+            synchronized (forceLock) {
+                synchronized (this) {
+                    removeRecordsBefore(mark);
+                }
+            }
+            LOG.info("Wrote meta data snapshot of " + metadataList.size() + " files");
+        }
+    }
+
+    private void writeSnapshot(Collection<FileUploadMetadata> metadataList) throws IOException {
+        Path tempPath = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(SNAPSHOT_HEADER_SIZE);
+            header.putInt(SNAPSHOT_MAGIC).put(VERSION).putInt(metadataList.size());
+            header.flip();
+            writeFully(channel, header);
+            for (FileUploadMetadata metadata : metadataList) {
+                byte[] payload = encode(metadata);
+                ByteBuffer record = ByteBuffer.allocate(4 + payload.length);
+                record.putInt(payload.length).put(payload);
+                crc.update(record.array());
+                record.flip();
+                writeFully(channel, record);
+            }
+            ByteBuffer trailer = ByteBuffer.allocate(8);
+            trailer.putLong(crc.getValue());
+            trailer.flip();
+            writeFully(channel, trailer);
+            channel.force(true);
+        }
+        Files.move(tempPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory(snapshotPath);
+    }
+
+    /**
+     * Removes the records before the mark from the journal. If records
+     * were appended after the mark, they are copied to a new journal which
+     * replaces the old one atomically, so a crash never loses them.
+     */
+    private void removeRecordsBefore(long mark) throws IOException {
+        FileChannel channel = openJournal();
+        long tailLength = channel.size() - mark;
+        if(tailLength == 0) {
+            channel.truncate(0);
+            writeJournalHeader(channel);
+            channel.force(true);
+            return;
+        }
+        ByteBuffer tail = ByteBuffer.allocate((int) tailLength);
+        while (tail.hasRemaining()) {
+            if(channel.read(tail, mark + tail.position()) < 0) {
+                throw new IOException("Unexpected end of meta data journal");
+            }
+        }
+        tail.flip();
+        Path tempPath = journalPath.resolveSibling(journalPath.getFileName() + ".tmp");
+        try (FileChannel tempChannel = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeJournalHeader(tempChannel);
+            writeFully(tempChannel, tail);
+            tempChannel.force(true);
+        }
+        closeChannel();
+        Files.move(tempPath, journalPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory(journalPath);
+        openJournal();
+    }
+
+    /**
+     * Forces the journal to the storage device. Records are appended while
+     * the journal is forced, they are forced by the next call.
+     *
+     * @throws IOException
+     */
+    public void force() throws IOException {
+        synchronized (forceLock) {
+            FileChannel channel;
+            synchronized (this) {
+                channel = journal;
+            }
+            if (channel != null) {
+                channel.force(false);
+            }
+        }
+    }
+
+    public void close() throws IOException {
+        synchronized (forceLock) {
+            synchronized (this) {
+                closeChannel();
+            }
+        }
+    }
+
+    private void closeChannel() throws IOException {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+    }
+
+    private FileChannel openJournal() throws IOException {
+        if (journal == null) {
+            journal = FileChannel.open(journalPath, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (journal.size() < JOURNAL_HEADER_SIZE) {
+                journal.truncate(0);
+                writeJournalHeader(journal);
+            }
+            journal.position(journal.size());
+        }
+        return journal;
+    }
+
+    private void writeJournalHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(JOURNAL_HEADER_SIZE);
+        header.putInt(JOURNAL_MAGIC).put(VERSION);
+        header.flip();
+        writeFully(channel, header);
+    }
+
+    private boolean readSnapshot(FileUploadMetadataIndex index) throws IOException {
+        try (FileChannel channel = FileChannel.open(snapshotPath, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < SNAPSHOT_HEADER_SIZE + 8) {
+                return false;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt() != SNAPSHOT_MAGIC || buffer.get() != VERSION) {
+                return false;
+            }
+            int count = buffer.getInt();
+            ByteBuffer records = buffer.slice();
+            records.limit((int) (size - SNAPSHOT_HEADER_SIZE - 8));
+            CRC32 crc = new CRC32();
+            crc.update(records.duplicate());
+            buffer.position((int) (size - 8));
+            if (buffer.getLong() != crc.getValue()) {
+                return false;
+            }
+            for (int i = 0; i < count; i++) {
+                int length = records.getInt();
+                ByteBuffer payload = records.slice();
+                payload.limit(length);
+                index.add(decode(payload));
+                records.position(records.position() + length);
+            }
+            return true;
+        } catch (RuntimeException e) {
+            LOG.warn("Error while reading meta data snapshot", e);
+            return false;
+        }
+    }
+
+    /**
+     * Reads the journal into the index and returns the length of the valid
+     * part of the journal, or -1 if the journal is corrupt.
+     */
+    private long readJournal(FileUploadMetadataIndex index) throws IOException {
+        try (FileChannel channel = FileChannel.open(journalPath, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < JOURNAL_HEADER_SIZE) {
+                return 0;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt() != JOURNAL_MAGIC || buffer.get() != VERSION) {
+                return -1;
+            }
+            CRC32 crc = new CRC32();
+            while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+                int start = buffer.position();
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length < 0 || length > buffer.remaining()) {
+                    // partial write of the last record
+                    return start;
+                }
+                ByteBuffer payload = buffer.slice();
+                payload.limit(length);
+                crc.reset();
+                crc.update(payload.duplicate());
+                if ((int) crc.getValue() != checksum) {
+                    boolean last = buffer.position() + length == buffer.limit();
+                    return last ? start : -1;
+                }
+                index.add(decode(payload));
+                buffer.position(buffer.position() + length);
+                recordsSinceSnapshot++;
+            }
+            return buffer.position();
+        } catch (RuntimeException e) {
+            LOG.warn("Error while reading meta data journal", e);
+            return -1;
+        }
+    }
+
+    /**
+     * Encodes the meta data with FileUploadMetadataCodec, followed by the
+     * position of the data of a packed file, which the codec does not hold.
+     */
+    private static byte[] encode(FileUploadMetadata metadata) {
+        byte[] encoded = FileUploadMetadataCodec.encode(metadata);
+        boolean packed = metadata.getSegment() != FileUploadMetadata.NO_SEGMENT;
+        ByteBuffer payload = ByteBuffer.allocate(encoded.length + (packed ? 24 : 8));
+        payload.put(encoded).putLong(metadata.getSegment());
+        if(packed) {
+            payload.putLong(metadata.getSegmentOffset()).putLong(metadata.getSegmentLength());
+        }
+        return payload.array();
+    }
+
+    /**
+     * Decodes a payload, an invalid payload is reported as
+     * IllegalArgumentException like any other damage of the records.
+     */
+    private static FileUploadMetadata decode(ByteBuffer payload) {
+        FileUploadMetadata metadata;
+        try {
+            metadata = FileUploadMetadataCodec.decode(payload);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid meta data record", e);
+        }
+        metadata.setSegment(payload.getLong());
+        if(metadata.getSegment() != FileUploadMetadata.NO_SEGMENT) {
+            metadata.setSegmentOffset(payload.getLong());
+            metadata.setSegmentLength(payload.getLong());
+        }
+        return metadata;
+    }
+
+    /**
+     * Forces the directory of a renamed file, so the rename is durable.
+     */
+    private static void forceDirectory(Path path) {
+        try (FileChannel channel = FileChannel.open(path.toAbsolutePath().getParent(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // directories cannot be opened on all platforms
+            LOG.debug("Could not force directory of: " + path, e);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.upload.file.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Parallel scan of the meta data files in the uploads directory.
+ *
+ * The folders are split by the first level of shard directories of
+ * ShardedDirectoryLayout, each shard is scanned by a task of a dedicated
+ * ForkJoinPool. The threads mostly wait for the disk, so the pool has
+ * more threads than processors; the common pool is not used, so a scan
+ * does not block parallel streams or other users of the common pool.
+ *
+ * The matches are returned in the order of their UUIDs: the shards are
+ * named by the first characters of the UUIDs, so the sorted matches of
+ * the shards are concatenated in the order of the shards. A scan with a
+ * limit stops once the shards before the shards still scanned hold
+ * enough matches.
+ *
+ * A folder whose meta data can not be read is logged and skipped, so a
+ * damaged meta data file does not fail the whole scan.
+ *
+ * @author Poornima
+ */
+public class FileUploadMetadataScanner {
+
+    private static final Logger LOG = Logger.getLogger(FileUploadMetadataScanner.class);
+
+    /**
+     * Reads the meta data of a folder.
+     */
+    public interface MetadataReader {
+
+        /**
+         * Returns the meta data of the file with the given UUID, null if
+         * the folder has no meta data.
+         */
+        FileUploadMetadata read(String uuid) throws IOException;
+    }
+
+    private static final Comparator<FileUploadMetadata> UUID_ORDER = Comparator.comparing(FileUploadMetadata::getUuid);
+
+    private final Path root;
+    private final ForkJoinPool pool;
+    private final MetadataReader reader;
+    private final AtomicInteger threads = new AtomicInteger();
+
+    /**
+     * @param root The uploads directory
+     * @param parallelism The number of threads of the pool
+     * @param reader Reads the meta data of a folder, must be thread safe
+     */
+    public FileUploadMetadataScanner(Path root, int parallelism, MetadataReader reader) {
+        this.root = root;
+        this.reader = reader;
+        this.pool = new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("upload-scan-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+    }
+
+    /**
+     * Scans the meta data of all files.
+     *
+     * @param filter The filter of the files, null for all files
+     * @param descending True to return the files in descending UUID order
+     * @param limit The maximum number of files
+     * @return The matching files in the order of their UUIDs
+     * @throws IOException
+     */
+    public List<FileUploadMetadata> scan(Predicate<FileUploadMetadata> filter, boolean descending, int limit) throws IOException {
+        if(!Files.isDirectory(root)) {
+            return new ArrayList<FileUploadMetadata>();
+        }
+        List<Path> shards = listShards(root, descending);
+        Scan scan = new Scan(shards, filter, descending, limit);
+        try {
+            pool.invoke(scan);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return scan.getResult();
+    }
+
+    /**
+     * Returns the number of threads of the pool.
+     */
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Stops the threads of the pool.
+     */
+    public void close() {
+        pool.shutdown();
+        try {
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static List<Path> listShards(Path directory, boolean descending) throws IOException {
+        List<Path> shards = new ArrayList<Path>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, path ->
+                path.getFileName().toString().length() == ShardedDirectoryLayout.PREFIX_LENGTH && Files.isDirectory(path))) {
+            for (Path entry : entries) {
+                shards.add(entry);
+            }
+        }
+        Collections.sort(shards);
+        if(descending) {
+            Collections.reverse(shards);
+        }
+        return shards;
+    }
+
+    /**
+     * A scan of all shards, which forks a task per shard.
+     */
+    private class Scan extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<Path> shards;
+        private final Predicate<FileUploadMetadata> filter;
+        private final Comparator<FileUploadMetadata> order;
+        private final int limit;
+        private final List<List<FileUploadMetadata>> results;
+        private final boolean[] done;
+        /** Shards from this index on are not needed */
+        private volatile int cutoff;
+        private int prefixEnd;
+        private long prefixCount;
+
+        Scan(List<Path> shards, Predicate<FileUploadMetadata> filter, boolean descending, int limit) {
+            this.shards = shards;
+            this.filter = filter;
+            this.order = descending ? UUID_ORDER.reversed() : UUID_ORDER;
+            this.limit = limit;
+            this.results = new ArrayList<List<FileUploadMetadata>>(Collections.nCopies(shards.size(), (List<FileUploadMetadata>) null));
+            this.done = new boolean[shards.size()];
+            this.cutoff = shards.size();
+        }
+
+        @Override
+        protected void compute() {
+            List<ShardScan> tasks = new ArrayList<ShardScan>(shards.size());
+            for (int i = 0; i < shards.size(); i++) {
+                tasks.add(new ShardScan(this, i));
+            }
+            ForkJoinTask.invokeAll(tasks);
+        }
+
+        boolean isNeeded(int shard) {
+            return shard < cutoff;
+        }
+
+        /**
+         * Stores the sorted matches of a shard. Once the completed shards
+         * at the start hold the limit, the later shards are cut off.
+         */
+        synchronized void complete(int shard, List<FileUploadMetadata> matches) {
+            results.set(shard, matches);
+            done[shard] = true;
+            while (prefixEnd < cutoff && done[prefixEnd]) {
+                prefixCount += results.get(prefixEnd).size();
+                prefixEnd++;
+                if(prefixCount >= limit) {
+                    cutoff = prefixEnd;
+                }
+            }
+        }
+
+        synchronized List<FileUploadMetadata> getResult() {
+            List<FileUploadMetadata> files = new ArrayList<FileUploadMetadata>();
+            for (int i = 0; i < cutoff && files.size() < limit; i++) {
+                List<FileUploadMetadata> matches = results.get(i);
+                files.addAll(matches.subList(0, (int) Math.min(matches.size(), (long) limit - files.size())));
+            }
+            return files;
+        }
+    }
+
+    /**
+     * The scan of the folders of one first level shard.
+     */
+    private class ShardScan extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Scan scan;
+        private final int shard;
+
+        ShardScan(Scan scan, int shard) {
+            this.scan = scan;
+            this.shard = shard;
+        }
+
+        @Override
+        protected void compute() {
+            if(!scan.isNeeded(shard)) {
+                return;
+            }
+            List<FileUploadMetadata> matches = new ArrayList<FileUploadMetadata>();
+            try {
+                scan(scan.shards.get(shard), 1, matches);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            matches.sort(scan.order);
+            scan.complete(shard, matches);
+        }
+
+        private void scan(Path directory, int level, List<FileUploadMetadata> matches) throws IOException {
+            if(level < ShardedDirectoryLayout.LEVELS) {
+                for (Path shardDirectory : listShards(directory, false)) {
+                    if(!scan.isNeeded(shard)) {
+                        return;
+                    }
+                    scan(shardDirectory, level + 1, matches);
+                }
+                return;
+            }
+            try (DirectoryStream<Path> folders = Files.newDirectoryStream(directory)) {
+                for (Path folder : folders) {
+                    if(!scan.isNeeded(shard)) {
+                        return;
+                    }
+                    String uuid = folder.getFileName().toString();
+                    FileUploadMetadata metadata;
+                    try {
+                        metadata = reader.read(uuid);
+                    } catch (IOException e) {
+                        LOG.warn("Error while reading meta data of file: " + uuid + ", skipping it", e);
+                        continue;
+                    }
+                    if(metadata!=null && (scan.filter==null || scan.filter.test(metadata))) {
+                        matches.add(metadata);
+                    }
+                }
+            }
+        }
+    }
+}
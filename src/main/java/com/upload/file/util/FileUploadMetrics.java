@@ -0,0 +1,282 @@
+package com.upload.file.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+/**
+ * Latency timers, counters and gauges of the upload and download paths.
+ *
+ * A timer keeps the number and the total time of all recorded operations
+ * and a histogram of the latencies of the last one to two minutes, from
+ * which the percentiles p50, p99 and p999 are computed. The histogram has
+ * 8 buckets per power of two, so a percentile is at most 12.5 % above the
+ * real value. Recording is lock free.
+ *
+ * The metrics are exposed through the actuator metrics endpoint (/metrics),
+ * latencies in milliseconds, and in the Prometheus text format through the
+ * endpoint /prometheus, see FileUploadPrometheusEndpoint.
+ *
+ * @author Poornima
+ */
+@Component
+public class FileUploadMetrics implements PublicMetrics {
+
+    /** Saving files in UploadService */
+    public static final String SERVICE_INSERT = "upload.service.insert";
+    /** Loading files and meta data in UploadService */
+    public static final String SERVICE_LOAD = "upload.service.load";
+    /** Finding files in UploadService */
+    public static final String SERVICE_FIND = "upload.service.find";
+
+    /** Writing file data to disk, including compression */
+    public static final String DAO_DATA_WRITE = "upload.dao.data.write";
+    /** Reading file data from disk, including decompression */
+    public static final String DAO_DATA_READ = "upload.dao.data.read";
+    /** Serializing and writing meta data files */
+    public static final String DAO_METADATA_WRITE = "upload.dao.metadata.write";
+    /** Reading and parsing meta data files */
+    public static final String DAO_METADATA_READ = "upload.dao.metadata.read";
+    /** Forcing files to disk in group commits */
+    public static final String DAO_SYNC = "upload.dao.sync";
+    /** Adding meta data to the index and the journal */
+    public static final String DAO_INDEX = "upload.dao.index";
+    /** Queries of the in-memory index */
+    public static final String DAO_FIND = "upload.dao.find";
+    /** Waiting for a permit to access the disk */
+    public static final String DAO_DISK_WAIT = "upload.dao.disk.wait";
+    /** Parallel scans of the meta data files in the uploads directory */
+    public static final String DAO_SCAN = "upload.dao.scan";
+
+    /** HTTP requests uploading files */
+    public static final String HTTP_UPLOAD = "upload.http.upload";
+    /** HTTP requests downloading files */
+    public static final String HTTP_DOWNLOAD = "upload.http.download";
+    /** HTTP requests finding files, including the serialization of the result */
+    public static final String HTTP_FIND = "upload.http.find";
+
+    /** Waiting of uploads and downloads for admission by the rate limits */
+    public static final String RATE_LIMIT_WAIT = "upload.ratelimit.wait";
+
+    /** Bytes of request bodies of uploads */
+    public static final String BYTES_RECEIVED = "upload.bytes.received";
+    /** Bytes of file data sent to clients */
+    public static final String BYTES_SENT = "upload.bytes.sent";
+    /** Bytes of file data written to the data store, before compression */
+    public static final String DAO_BYTES_WRITTEN = "upload.dao.bytes.written";
+    /** Meta data files read by directory scans */
+    public static final String SCAN_FILES = "upload.dao.scan.files";
+    /** Files verified by FileUploadScrubber */
+    public static final String SCRUB_FILES = "upload.scrub.files";
+    /** Bytes of file data verified by FileUploadScrubber */
+    public static final String SCRUB_BYTES = "upload.scrub.bytes";
+    /** Files whose checksums did not match */
+    public static final String SCRUB_CORRUPT = "upload.scrub.corrupt";
+    /** Uploads and downloads rejected by the rate limits */
+    public static final String RATE_LIMIT_REJECTED = "upload.ratelimit.rejected";
+
+    /** Uploads in progress */
+    public static final String ACTIVE_UPLOADS = "upload.transfers.uploads.active";
+    /** Downloads in progress */
+    public static final String ACTIVE_DOWNLOADS = "upload.transfers.downloads.active";
+
+    /** Length of a window of the histograms in nanoseconds */
+    public static final long WINDOW_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final ConcurrentMap<String, Timer> timers = new ConcurrentSkipListMap<String, Timer>();
+    private final ConcurrentMap<String, LongAdder> counters = new ConcurrentSkipListMap<String, LongAdder>();
+    private final ConcurrentMap<String, AtomicLong> gauges = new ConcurrentSkipListMap<String, AtomicLong>();
+
+    /**
+     * Records the time of an operation which started at the given time.
+     *
+     * @param name The name of the timer
+     * @param startNanos The start of the operation from System.nanoTime
+     */
+    public void record(String name, long startNanos) {
+        getTimer(name).record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Adds to a counter.
+     */
+    public void increment(String name, long amount) {
+        getCounter(name).add(amount);
+    }
+
+    /**
+     * Adds to a gauge, a negative delta subtracts.
+     */
+    public void add(String name, long delta) {
+        getGauge(name).addAndGet(delta);
+    }
+
+    public Timer getTimer(String name) {
+        Timer timer = timers.get(name);
+        return (timer != null) ? timer : timers.computeIfAbsent(name, key -> new Timer());
+    }
+
+    public LongAdder getCounter(String name) {
+        LongAdder counter = counters.get(name);
+        return (counter != null) ? counter : counters.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    public AtomicLong getGauge(String name) {
+        AtomicLong gauge = gauges.get(name);
+        return (gauge != null) ? gauge : gauges.computeIfAbsent(name, key -> new AtomicLong());
+    }
+
+    public Map<String, Timer> getTimers() {
+        return timers;
+    }
+
+    public Map<String, LongAdder> getCounters() {
+        return counters;
+    }
+
+    public Map<String, AtomicLong> getGauges() {
+        return gauges;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+        for (Map.Entry<String, Timer> entry : timers.entrySet()) {
+            String name = entry.getKey();
+            Timer timer = entry.getValue();
+            metrics.add(new Metric<Long>(name + ".count", timer.getCount()));
+            metrics.add(new Metric<Double>(name + ".p50", toMillis(timer.getPercentile(0.5))));
+            metrics.add(new Metric<Double>(name + ".p99", toMillis(timer.getPercentile(0.99))));
+            metrics.add(new Metric<Double>(name + ".p999", toMillis(timer.getPercentile(0.999))));
+        }
+        for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+            metrics.add(new Metric<Long>(entry.getKey(), entry.getValue().sum()));
+        }
+        for (Map.Entry<String, AtomicLong> entry : gauges.entrySet()) {
+            metrics.add(new Metric<Long>(entry.getKey(), entry.getValue().get()));
+        }
+        return metrics;
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    /**
+     * Latency timer with a histogram of the current and the previous window.
+     */
+    public static class Timer {
+
+        private static final int SUB_BUCKET_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private volatile AtomicLongArray current = new AtomicLongArray(BUCKETS);
+        private volatile AtomicLongArray previous = new AtomicLongArray(BUCKETS);
+        private volatile long windowStart = System.nanoTime();
+
+        /**
+         * Records the latency of an operation.
+         */
+        public void record(long nanos) {
+            if (nanos < 0) {
+                nanos = 0;
+            }
+            count.increment();
+            totalNanos.add(nanos);
+            rotate(System.nanoTime());
+            current.incrementAndGet(getBucket(nanos));
+        }
+
+        private void rotate(long now) {
+            if (now - windowStart < WINDOW_NANOS) {
+                return;
+            }
+            synchronized (this) {
+                long elapsed = now - windowStart;
+                if (elapsed < WINDOW_NANOS) {
+                    return;
+                }
+                previous = (elapsed < 2 * WINDOW_NANOS) ? current : new AtomicLongArray(BUCKETS);
+                current = new AtomicLongArray(BUCKETS);
+                windowStart = now;
+            }
+        }
+
+        /**
+         * Returns the percentile of the latencies of the current and the
+         * previous window in nanoseconds, 0 if nothing was recorded.
+         *
+         * @param quantile The quantile between 0 and 1
+         */
+        public long getPercentile(double quantile) {
+            rotate(System.nanoTime());
+            AtomicLongArray first = previous;
+            AtomicLongArray second = current;
+            long[] buckets = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = first.get(i) + second.get(i);
+                total += buckets[i];
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return getUpperBound(i);
+                }
+            }
+            return getUpperBound(BUCKETS - 1);
+        }
+
+        /**
+         * Returns the number of recorded operations since the start.
+         */
+        public long getCount() {
+            return count.sum();
+        }
+
+        /**
+         * Returns the total time of the recorded operations since the start
+         * in nanoseconds.
+         */
+        public long getTotalNanos() {
+            return totalNanos.sum();
+        }
+
+        static int getBucket(long nanos) {
+            if (nanos < SUB_BUCKETS) {
+                return (int) nanos;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+            int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+        }
+
+        static long getUpperBound(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+            long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+            return lower + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.upload.file.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A page of file meta data and the cursor of the next page.
+ *
+ * @author Poornima
+ */
+public class FileUploadPage {
+
+    /** Response header with the cursor of the next page */
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    /** Media type of meta data streamed as newline delimited JSON */
+    public static final String NDJSON_VALUE = "application/x-ndjson";
+
+    private List<FileUploadMetadata> files;
+    private String nextCursor;
+
+    public FileUploadPage() {
+        super();
+    }
+
+    public FileUploadPage(List<FileUploadMetadata> files, String nextCursor) {
+        this.files = files;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<FileUploadMetadata> getFiles() {
+        return files;
+    }
+
+    public void setFiles(List<FileUploadMetadata> files) {
+        this.files = files;
+    }
+
+    /**
+     * Returns the cursor of the next page, null if this is the last page.
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * Position in a sorted list of file meta data. A page starts after the
+     * position of its cursor, so pages stay consistent while files are
+     * inserted and no offset has to be skipped.
+     *
+     * A cursor is passed to clients as an opaque string, which contains
+     * the sort order and the sort key and UUID of the last file of the
+     * previous page.
+     */
+    public static class Cursor {
+
+        private static final String DESCENDING = "-";
+        private static final String SEPARATOR = "\n";
+
+        private final FileUploadSort sort;
+        private final boolean descending;
+        private final FileUploadMetadata position;
+        private final Comparator<FileUploadMetadata> comparator;
+
+        /**
+         * Creates the cursor of the first page.
+         *
+         * @param sort The sort order
+         * @param descending True for the descending order
+         */
+        public Cursor(FileUploadSort sort, boolean descending) {
+            this(sort, descending, null);
+        }
+
+        private Cursor(FileUploadSort sort, boolean descending, FileUploadMetadata position) {
+            this.sort = sort;
+            this.descending = descending;
+            this.position = position;
+            this.comparator = sort.getComparator(descending);
+        }
+
+        /**
+         * Returns the cursor after the given file.
+         *
+         * @param last The last file of a page
+         * @return The cursor of the next page
+         */
+        public Cursor after(FileUploadMetadata last) {
+            return new Cursor(sort, descending, last);
+        }
+
+        /**
+         * Returns true if the file comes after the position of the cursor.
+         */
+        public boolean isBefore(FileUploadMetadata metadata) {
+            return position==null || comparator.compare(position, metadata) < 0;
+        }
+
+        /**
+         * Returns the last file of the previous page, null for the first page.
+         */
+        FileUploadMetadata getPosition() {
+            return position;
+        }
+
+        public Comparator<FileUploadMetadata> getComparator() {
+            return comparator;
+        }
+
+        public FileUploadSort getSort() {
+            return sort;
+        }
+
+        public boolean isDescending() {
+            return descending;
+        }
+
+        /**
+         * Returns the cursor as opaque string.
+         */
+        public String encode() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(descending ? DESCENDING : "").append(sort.name());
+            if(position!=null) {
+                sb.append(SEPARATOR).append(position.getUuid()).append(SEPARATOR).append(sort.getKey(position));
+            }
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(sb.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * Parses a cursor returned by encode.
+         *
+         * @param cursor An encoded cursor
+         * @return The cursor
+         * @throws IllegalArgumentException If the cursor is invalid
+         */
+        public static Cursor decode(String cursor) {
+            try {
+                String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                // the key is last, file names may contain the separator
+                String[] parts = value.split(SEPARATOR, 3);
+                boolean descending = parts[0].startsWith(DESCENDING);
+                FileUploadSort sort = FileUploadSort.valueOf(descending ? parts[0].substring(DESCENDING.length()) : parts[0]);
+                if(parts.length == 1) {
+                    return new Cursor(sort, descending);
+                }
+                return new Cursor(sort, descending, sort.createPosition(parts[2], parts[1]));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+            }
+        }
+    }
+}
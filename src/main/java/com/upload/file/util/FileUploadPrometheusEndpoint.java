@@ -0,0 +1,119 @@
+package com.upload.file.util;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.AbstractEndpoint;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+/**
+ * Actuator endpoint (/prometheus) returning the metrics in the Prometheus
+ * text exposition format.
+ *
+ * The timers of FileUploadMetrics are written as summaries in seconds with
+ * the quantiles 0.5, 0.99 and 0.999, its counters as counters and its
+ * gauges as gauges. All other public metrics of the actuator metrics
+ * endpoint (memory, threads, caches, ...) are written as untyped values.
+ * Dots in metric names are replaced by underscores.
+ *
+ * @author Poornima
+ */
+@Component
+public class FileUploadPrometheusEndpoint extends AbstractEndpoint<String> {
+
+    /** Content type of the text exposition format */
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final double[] QUANTILES = { 0.5, 0.99, 0.999 };
+
+    @Autowired
+    private FileUploadMetrics fileUploadMetrics;
+
+    @Autowired
+    private List<PublicMetrics> publicMetrics;
+
+    public FileUploadPrometheusEndpoint() {
+        super("prometheus");
+    }
+
+    @Override
+    public String invoke() {
+        StringBuilder sb = new StringBuilder(8192);
+        Set<String> names = new HashSet<String>();
+        writeFileUploadMetrics(sb, names);
+        for (PublicMetrics metrics : publicMetrics) {
+            if (metrics instanceof FileUploadMetrics) {
+                continue;
+            }
+            for (Metric<?> metric : metrics.metrics()) {
+                String name = getName(metric.getName());
+                if (names.add(name)) {
+                    sb.append("# TYPE ").append(name).append(" untyped\n");
+                    sb.append(name).append(' ').append(format(metric.getValue().doubleValue())).append('\n');
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private void writeFileUploadMetrics(StringBuilder sb, Set<String> names) {
+        for (Map.Entry<String, FileUploadMetrics.Timer> entry : fileUploadMetrics.getTimers().entrySet()) {
+            String name = getName(entry.getKey()) + "_seconds";
+            FileUploadMetrics.Timer timer = entry.getValue();
+            names.add(name);
+            sb.append("# TYPE ").append(name).append(" summary\n");
+            for (double quantile : QUANTILES) {
+                sb.append(name).append("{quantile=\"").append(quantile).append("\"} ")
+                        .append(format(timer.getPercentile(quantile) / 1e9)).append('\n');
+            }
+            sb.append(name).append("_sum ").append(format(timer.getTotalNanos() / 1e9)).append('\n');
+            sb.append(name).append("_count ").append(timer.getCount()).append('\n');
+        }
+        for (Map.Entry<String, LongAdder> entry : fileUploadMetrics.getCounters().entrySet()) {
+            String name = getName(entry.getKey()) + "_total";
+            names.add(name);
+            sb.append("# TYPE ").append(name).append(" counter\n");
+            sb.append(name).append(' ').append(entry.getValue().sum()).append('\n');
+        }
+        for (Map.Entry<String, AtomicLong> entry : fileUploadMetrics.getGauges().entrySet()) {
+            String name = getName(entry.getKey());
+            names.add(name);
+            sb.append("# TYPE ").append(name).append(" gauge\n");
+            sb.append(name).append(' ').append(entry.getValue().get()).append('\n');
+        }
+    }
+
+    /**
+     * Returns a valid Prometheus metric name for the name of a metric.
+     */
+    static String getName(String name) {
+        StringBuilder sb = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            boolean valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c == ':'
+                    || (c >= '0' && c <= '9' && i > 0);
+            sb.append(valid ? c : '_');
+        }
+        return sb.toString();
+    }
+
+    private static String format(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+        if (Double.isInfinite(value)) {
+            return (value > 0) ? "+Inf" : "-Inf";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+}
@@ -0,0 +1,30 @@
+package com.upload.file.util;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.mvc.EndpointMvcAdapter;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+/**
+ * Exposes FileUploadPrometheusEndpoint over HTTP as plain text instead
+ * of JSON.
+ *
+ * @author Poornima
+ */
+@Component
+public class FileUploadPrometheusMvcEndpoint extends EndpointMvcAdapter {
+
+    @Autowired
+    public FileUploadPrometheusMvcEndpoint(FileUploadPrometheusEndpoint delegate) {
+        super(delegate);
+    }
+
+    @Override
+    @RequestMapping(method = RequestMethod.GET, produces = FileUploadPrometheusEndpoint.CONTENT_TYPE)
+    @ResponseBody
+    public Object invoke() {
+        return super.invoke();
+    }
+}
@@ -0,0 +1,218 @@
+package com.upload.file.util;
+
+import java.time.LocalDate;
+import java.util.Locale;
+
+import org.springframework.format.annotation.DateTimeFormat;
+
+/**
+ * Filter of a query for file meta data. All criteria which are set have
+ * to match, a query without criteria matches all files. Ranges include
+ * their bounds. Files without date or size do not match a date or size
+ * range.
+ *
+ * The properties are named like the request parameters of /rest/files,
+ * so a query can be bound from a request.
+ *
+ * @author Poornima
+ */
+public class FileUploadQuery {
+
+    private String author;
+    private String authorPrefix;
+    private String namePrefix;
+    private String extension;
+    @DateTimeFormat(pattern=FileUploadMetadata.DATE_FORMAT_PATTERN)
+    private LocalDate from;
+    @DateTimeFormat(pattern=FileUploadMetadata.DATE_FORMAT_PATTERN)
+    private LocalDate to;
+    private Long minSize;
+    private Long maxSize;
+
+    public FileUploadQuery() {
+        super();
+    }
+
+    /**
+     * Creates a query by exact author name and date.
+     *
+     * @param author The name of a author, may be null
+     * @param date The date of a document, may be null
+     */
+    public FileUploadQuery(String author, LocalDate date) {
+        this.author = author;
+        setDate(date);
+    }
+
+    /**
+     * Returns true if the meta data matches all criteria of the query.
+     *
+     * @param metadata The meta data of a file
+     * @return true if the file matches
+     */
+    public boolean matches(FileUploadMetadata metadata) {
+        if(metadata==null) {
+            return false;
+        }
+        String authorName = metadata.getAuthorName();
+        if(author!=null && !author.equals(authorName)) {
+            return false;
+        }
+        if(authorPrefix!=null && (authorName==null || !authorName.startsWith(authorPrefix))) {
+            return false;
+        }
+        String fileName = metadata.getFileName();
+        if(namePrefix!=null && (fileName==null || !fileName.startsWith(namePrefix))) {
+            return false;
+        }
+        if(extension!=null && !extension.equals(getExtension(fileName))) {
+            return false;
+        }
+        if(hasDateRange()) {
+            long day = metadata.getUploadDay();
+            if(day==FileUploadMetadata.NO_DATE || day < getFromDay() || day > getToDay()) {
+                return false;
+            }
+        }
+        if(hasSizeRange()) {
+            long size = metadata.getSize();
+            if(size==FileUploadMetadata.UNKNOWN_SIZE || size < getMinSizeValue() || size > getMaxSizeValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the extension of a file name in lower case without the dot,
+     * an empty string if the file name has no extension.
+     *
+     * @param fileName The name of a file, may be null
+     * @return The extension
+     */
+    public static String getExtension(String fileName) {
+        if(fileName==null) {
+            return "";
+        }
+        int dot = fileName.lastIndexOf('.');
+        if(dot < 0) {
+            return "";
+        }
+        return fileName.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Returns true if the query has no criteria and matches all files.
+     */
+    public boolean isEmpty() {
+        return author==null && authorPrefix==null && namePrefix==null && extension==null
+                && !hasDateRange() && !hasSizeRange();
+    }
+
+    public boolean hasDateRange() {
+        return from!=null || to!=null;
+    }
+
+    public boolean hasSizeRange() {
+        return minSize!=null || maxSize!=null;
+    }
+
+    /**
+     * Returns the epoch day of the lower bound of the date range,
+     * Long.MIN_VALUE + 1 if it is open, so files without date are excluded.
+     */
+    long getFromDay() {
+        return from!=null ? from.toEpochDay() : FileUploadMetadata.NO_DATE + 1;
+    }
+
+    long getToDay() {
+        return to!=null ? to.toEpochDay() : Long.MAX_VALUE;
+    }
+
+    long getMinSizeValue() {
+        return minSize!=null ? Math.max(minSize, 0) : 0;
+    }
+
+    long getMaxSizeValue() {
+        return maxSize!=null ? maxSize : Long.MAX_VALUE;
+    }
+
+    public String getAuthor() {
+        return author;
+    }
+
+    public void setAuthor(String author) {
+        this.author = author;
+    }
+
+    public String getAuthorPrefix() {
+        return authorPrefix;
+    }
+
+    public void setAuthorPrefix(String authorPrefix) {
+        this.authorPrefix = authorPrefix;
+    }
+
+    public String getNamePrefix() {
+        return namePrefix;
+    }
+
+    public void setNamePrefix(String namePrefix) {
+        this.namePrefix = namePrefix;
+    }
+
+    /**
+     * Returns the extension in lower case without the dot.
+     */
+    public String getExtension() {
+        return extension;
+    }
+
+    public void setExtension(String extension) {
+        if(extension!=null && extension.startsWith(".")) {
+            extension = extension.substring(1);
+        }
+        this.extension = (extension!=null) ? extension.toLowerCase(Locale.ROOT) : null;
+    }
+
+    /**
+     * Sets the date range to a single day.
+     */
+    @DateTimeFormat(pattern=FileUploadMetadata.DATE_FORMAT_PATTERN)
+    public void setDate(LocalDate date) {
+        this.from = date;
+        this.to = date;
+    }
+
+    public LocalDate getFrom() {
+        return from;
+    }
+
+    public void setFrom(LocalDate from) {
+        this.from = from;
+    }
+
+    public LocalDate getTo() {
+        return to;
+    }
+
+    public void setTo(LocalDate to) {
+        this.to = to;
+    }
+
+    public Long getMinSize() {
+        return minSize;
+    }
+
+    public void setMinSize(Long minSize) {
+        this.minSize = minSize;
+    }
+
+    public Long getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(Long maxSize) {
+        this.maxSize = maxSize;
+    }
+}
@@ -0,0 +1,334 @@
+package com.upload.file.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Token bucket limits of the requests per second and the bytes per second
+ * of uploads and downloads, per client and in total.
+ *
+ * A bucket is kept as the time at which it is full again (generic cell rate
+ * algorithm), so taking tokens is a single compare-and-set and the limiter
+ * has no locks. A bucket holds the tokens of burstSeconds. A request is
+ * admitted while the buckets are not in debt by more than that; a request
+ * which would have to wait longer than maxWait is rejected. The bytes of
+ * a request are charged as a debt, so a large upload is admitted and the
+ * following requests of the client wait until it is paid off.
+ *
+ * The number of client buckets is bounded by maxClients. When there are
+ * more, the full buckets are removed, and if that is not enough, the
+ * buckets with the smallest debt, down to three quarters of maxClients,
+ * so a sweep is needed only after maxClients / 4 new clients. A client
+ * whose bucket was removed starts with a full bucket again. A limit of 0
+ * disables the limit.
+ *
+ * @author Poornima
+ */
+@Component
+public class FileUploadRateLimiter {
+
+    @Value("${upload.ratelimit.requests-per-second:0}")
+    private double requestsPerSecond;
+
+    @Value("${upload.ratelimit.bytes-per-second:0}")
+    private double bytesPerSecond;
+
+    @Value("${upload.ratelimit.client.requests-per-second:0}")
+    private double clientRequestsPerSecond;
+
+    @Value("${upload.ratelimit.client.bytes-per-second:0}")
+    private double clientBytesPerSecond;
+
+    @Value("${upload.ratelimit.burst-seconds:1}")
+    private double burstSeconds = 1;
+
+    @Value("${upload.ratelimit.max-wait:500}")
+    private long maxWait = 500;
+
+    @Value("${upload.ratelimit.max-clients:10000}")
+    private int maxClients = 10000;
+
+    private final ConcurrentMap<String, ClientBuckets> clients = new ConcurrentHashMap<String, ClientBuckets>();
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+    private Bucket requests;
+    private Bucket bytes;
+
+    @PostConstruct
+    public void init() {
+        requests = Bucket.create(requestsPerSecond, burstSeconds);
+        bytes = Bucket.create(bytesPerSecond, burstSeconds);
+    }
+
+    /**
+     * Returns true if any limit is set.
+     */
+    public boolean isEnabled() {
+        return requestsPerSecond > 0 || bytesPerSecond > 0 || clientRequestsPerSecond > 0 || clientBytesPerSecond > 0;
+    }
+
+    /**
+     * Admits a request and charges its bytes.
+     *
+     * @param client The client, e.g. its IP address
+     * @param length The bytes of the request, 0 if unknown
+     * @return The nanoseconds the request has to wait before it is served,
+     *         or if it is rejected, the negated nanoseconds after which the
+     *         client should retry
+     */
+    public long admit(String client, long length) {
+        long now = System.nanoTime();
+        long maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWait);
+        ClientBuckets clientBuckets = getClientBuckets(client, now);
+        Bucket[] buckets = { clientBuckets.requests, clientBuckets.bytes, requests, bytes };
+        long[] tokens = { 1, length, 1, length };
+        long wait = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            if(buckets[i]==null) {
+                continue;
+            }
+            long result = buckets[i].acquire(tokens[i], now, maxWaitNanos);
+            if(result < 0) {
+                for (int j = 0; j < i; j++) {
+                    if(buckets[j]!=null) {
+                        buckets[j].release(tokens[j]);
+                    }
+                }
+                return result;
+            }
+            wait = Math.max(wait, result);
+        }
+        return wait;
+    }
+
+    /**
+     * Charges bytes of an admitted request whose length was not known at
+     * admission, e.g. the file data of a download.
+     */
+    public void charge(String client, long length) {
+        if(length <= 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        ClientBuckets clientBuckets = getClientBuckets(client, now);
+        if(clientBuckets.bytes!=null) {
+            clientBuckets.bytes.charge(length, now);
+        }
+        if(bytes!=null) {
+            bytes.charge(length, now);
+        }
+    }
+
+    private ClientBuckets getClientBuckets(String client, long now) {
+        ClientBuckets buckets = clients.get(client);
+        if(buckets==null) {
+            buckets = clients.computeIfAbsent(client, key -> new ClientBuckets(
+                    Bucket.create(clientRequestsPerSecond, burstSeconds), Bucket.create(clientBytesPerSecond, burstSeconds)));
+            if(clients.size() > maxClients) {
+                sweep(now);
+            }
+        }
+        return buckets;
+    }
+
+    /**
+     * Removes the buckets of clients which are full, a new bucket is the
+     * same, then the buckets with the smallest debt until the map is down
+     * to three quarters of maxClients.
+     */
+    private void sweep(long now) {
+        if(!sweeping.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            clients.values().removeIf(buckets -> buckets.isFull(now));
+            int excess = clients.size() - maxClients * 3 / 4;
+            if(excess <= 0) {
+                return;
+            }
+            List<Map.Entry<String, ClientBuckets>> entries = new ArrayList<Map.Entry<String, ClientBuckets>>(clients.entrySet());
+            entries.sort(Comparator.comparingLong(entry -> entry.getValue().getFullAt()));
+            for (int i = 0; i < excess && i < entries.size(); i++) {
+                clients.remove(entries.get(i).getKey(), entries.get(i).getValue());
+            }
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    /**
+     * Returns the number of clients with buckets.
+     */
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    public double getRequestsPerSecond() {
+        return requestsPerSecond;
+    }
+
+    public void setRequestsPerSecond(double requestsPerSecond) {
+        this.requestsPerSecond = requestsPerSecond;
+    }
+
+    public double getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    public void setBytesPerSecond(double bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    public double getClientRequestsPerSecond() {
+        return clientRequestsPerSecond;
+    }
+
+    public void setClientRequestsPerSecond(double clientRequestsPerSecond) {
+        this.clientRequestsPerSecond = clientRequestsPerSecond;
+    }
+
+    public double getClientBytesPerSecond() {
+        return clientBytesPerSecond;
+    }
+
+    public void setClientBytesPerSecond(double clientBytesPerSecond) {
+        this.clientBytesPerSecond = clientBytesPerSecond;
+    }
+
+    public double getBurstSeconds() {
+        return burstSeconds;
+    }
+
+    public void setBurstSeconds(double burstSeconds) {
+        this.burstSeconds = burstSeconds;
+    }
+
+    public long getMaxWait() {
+        return maxWait;
+    }
+
+    public void setMaxWait(long maxWait) {
+        this.maxWait = maxWait;
+    }
+
+    public int getMaxClients() {
+        return maxClients;
+    }
+
+    public void setMaxClients(int maxClients) {
+        this.maxClients = maxClients;
+    }
+
+    /**
+     * The buckets of a client, null if there is no limit.
+     */
+    private static class ClientBuckets {
+
+        final Bucket requests;
+        final Bucket bytes;
+
+        ClientBuckets(Bucket requests, Bucket bytes) {
+            this.requests = requests;
+            this.bytes = bytes;
+        }
+
+        boolean isFull(long now) {
+            return (requests == null || requests.isFull(now)) && (bytes == null || bytes.isFull(now));
+        }
+
+        /**
+         * Returns the time at which both buckets are full again.
+         */
+        long getFullAt() {
+            long requestsFullAt = (requests == null) ? Long.MIN_VALUE : requests.getFullAt();
+            long bytesFullAt = (bytes == null) ? Long.MIN_VALUE : bytes.getFullAt();
+            return Math.max(requestsFullAt, bytesFullAt);
+        }
+    }
+
+    /**
+     * Lock free token bucket.
+     */
+    static class Bucket {
+
+        private final double nanosPerToken;
+        private final long burstNanos;
+        /** Time at which the bucket is full again, in System.nanoTime */
+        private final AtomicLong fullAt;
+
+        Bucket(double tokensPerSecond, double burstSeconds) {
+            this.nanosPerToken = 1e9 / tokensPerSecond;
+            this.burstNanos = (long) (burstSeconds * 1e9);
+            this.fullAt = new AtomicLong(System.nanoTime());
+        }
+
+        /**
+         * Returns a bucket with the rate, null if the rate is not limited.
+         */
+        static Bucket create(double tokensPerSecond, double burstSeconds) {
+            return (tokensPerSecond > 0) ? new Bucket(tokensPerSecond, burstSeconds) : null;
+        }
+
+        /**
+         * Takes tokens if the bucket admits a request within maxWait.
+         *
+         * @return The nanoseconds to wait, or the negated nanoseconds until
+         *         the bucket admits requests again if the request is rejected
+         */
+        long acquire(long tokens, long now, long maxWait) {
+            long cost = getCost(tokens);
+            while (true) {
+                long current = fullAt.get();
+                long start = Math.max(current, now);
+                long wait = start - now - burstNanos;
+                if(wait > maxWait) {
+                    return -wait;
+                }
+                if(fullAt.compareAndSet(current, start + cost)) {
+                    return Math.max(0, wait);
+                }
+            }
+        }
+
+        /**
+         * Returns tokens of a rejected request.
+         */
+        void release(long tokens) {
+            fullAt.addAndGet(-getCost(tokens));
+        }
+
+        /**
+         * Takes tokens without checking the limit.
+         */
+        void charge(long tokens, long now) {
+            long cost = getCost(tokens);
+            long current;
+            do {
+                current = fullAt.get();
+            } while (!fullAt.compareAndSet(current, Math.max(current, now) + cost));
+        }
+
+        boolean isFull(long now) {
+            return fullAt.get() - now <= 0;
+        }
+
+        long getFullAt() {
+            return fullAt.get();
+        }
+
+        private long getCost(long tokens) {
+            return (long) (tokens * nanosPerToken);
+        }
+    }
+}
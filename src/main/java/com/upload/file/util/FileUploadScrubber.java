@@ -0,0 +1,221 @@
+package com.upload.file.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Checksum;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Background verification of the stored files against their checksums.
+ *
+ * A pass reads the data of all files with recorded checksums one after the
+ * other, decompressed, and compares its CRC32C and SHA-256 hash with the
+ * meta data. Mismatches are logged as errors and counted in FileUploadMetrics.
+ * The reads are paced to bytesPerSecond, so the scrubber only uses a share
+ * of the disk bandwidth, while uploads and downloads handle the checksums
+ * without an extra read. A pass starts interval seconds after the end of
+ * the previous one.
+ *
+ * Files stored before the checksums were recorded are skipped. The data
+ * store is read directly, not through the caches.
+ *
+ * Enabled with upload.scrub.enabled=true.
+ *
+ * @author Poornima
+ */
+@Component
+@ConditionalOnProperty(name = "upload.scrub.enabled", havingValue = "true")
+public class FileUploadScrubber {
+
+    private static final Logger LOG = Logger.getLogger(FileUploadScrubber.class);
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    @Autowired
+    @Qualifier("fileDao")
+    private IFileUploadDao fileUploadDao;
+
+    @Autowired
+    private FileUploadMetrics metrics;
+
+    @Value("${upload.scrub.bytes-per-second:10485760}")
+    private long bytesPerSecond = 10485760;
+
+    @Value("${upload.scrub.interval:86400}")
+    private long interval = 86400;
+
+    @Value("${upload.scrub.initial-delay:300}")
+    private long initialDelay = 300;
+
+    private ScheduledExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "upload-scrub");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::scrub, initialDelay, interval, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Verifies all files with recorded checksums.
+     *
+     * @return The number of corrupt files
+     */
+    public long scrub() {
+        List<FileUploadMetadata> files = new ArrayList<FileUploadMetadata>();
+        try {
+            fileUploadDao.forEach(new FileUploadQuery(), files::add);
+        } catch (RuntimeException e) {
+            LOG.error("Error while listing files to scrub", e);
+            return 0;
+        }
+        Pass pass = new Pass();
+        for (FileUploadMetadata metadata : files) {
+            if(Thread.currentThread().isInterrupted()) {
+                break;
+            }
+            if(metadata.getCrc32c()==null && metadata.getSha256()==null) {
+                continue;
+            }
+            try {
+                verify(metadata, pass);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException | RuntimeException e) {
+                LOG.warn("Error while scrubbing file: " + metadata.getUuid(), e);
+            }
+        }
+        LOG.info("Scrubbed " + pass.files + " files, " + pass.bytes + " bytes, " + pass.corrupt + " corrupt, in "
+                + TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - pass.start) + " s");
+        return pass.corrupt;
+    }
+
+    /**
+     * Reads the data of a file and compares its checksums.
+     */
+    private void verify(FileUploadMetadata metadata, Pass pass) throws IOException, InterruptedException {
+        FileUploadContent content = fileUploadDao.loadContent(metadata.getUuid());
+        if(content==null) {
+            // deleted since the pass started
+            return;
+        }
+        Checksum crc = FileUploadChecksums.newCrc32c();
+        MessageDigest digest = (metadata.getSha256() != null) ? FileUploadChecksums.newSha256() : null;
+        long count = 0;
+        try (InputStream in = content.openStream()) {
+            byte[] buffer = new byte[CHUNK_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+                if(digest!=null) {
+                    digest.update(buffer, 0, read);
+                }
+                count += read;
+                pass.bytes += read;
+                pace(pass);
+            }
+        }
+        pass.files++;
+        metrics.increment(FileUploadMetrics.SCRUB_FILES, 1);
+        metrics.increment(FileUploadMetrics.SCRUB_BYTES, count);
+        String actualCrc32c = FileUploadChecksums.toHex(crc);
+        String actualSha256 = (digest != null) ? FileUploadChecksums.toHex(digest.digest()) : null;
+        if((metadata.getCrc32c()!=null && !metadata.getCrc32c().equals(actualCrc32c))
+                || (actualSha256!=null && !metadata.getSha256().equals(actualSha256))) {
+            LOG.error("Checksum mismatch of file " + metadata.getUuid() + " (" + metadata.getFileName() + "): crc32c "
+                    + actualCrc32c + " instead of " + metadata.getCrc32c()
+                    + (actualSha256 != null ? ", sha256 " + actualSha256 + " instead of " + metadata.getSha256() : ""));
+            metrics.increment(FileUploadMetrics.SCRUB_CORRUPT, 1);
+            pass.corrupt++;
+        }
+    }
+
+    /**
+     * Sleeps until the bytes read since the start of the pass fit the budget.
+     */
+    private void pace(Pass pass) throws InterruptedException {
+        if(bytesPerSecond <= 0) {
+            return;
+        }
+        long due = pass.start + (long) (pass.bytes * 1e9 / bytesPerSecond);
+        long ahead = due - System.nanoTime();
+        if(ahead > 0) {
+            TimeUnit.NANOSECONDS.sleep(ahead);
+        }
+    }
+
+    public IFileUploadDao getFileUploadDao() {
+        return fileUploadDao;
+    }
+
+    public void setFileUploadDao(IFileUploadDao fileUploadDao) {
+        this.fileUploadDao = fileUploadDao;
+    }
+
+    public FileUploadMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(FileUploadMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    public void setBytesPerSecond(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    public long getInterval() {
+        return interval;
+    }
+
+    public void setInterval(long interval) {
+        this.interval = interval;
+    }
+
+    public long getInitialDelay() {
+        return initialDelay;
+    }
+
+    public void setInitialDelay(long initialDelay) {
+        this.initialDelay = initialDelay;
+    }
+
+    /**
+     * The progress of a pass.
+     */
+    private static class Pass {
+
+        final long start = System.nanoTime();
+        long bytes;
+        long files;
+        long corrupt;
+    }
+}
@@ -0,0 +1,344 @@
+package com.upload.file.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Append-only file holding the data and meta data of many small files.
+ *
+ * Segment: [int magic][byte version][long created][records].
+ * Record: [int magic][int metadata length][int data length][int crc32]
+ * [meta data][data]. The CRC covers the meta data and the data. The meta
+ * data is encoded by FileUploadMetadataCodec, records of older versions
+ * hold properties.
+ *
+ * Records are appended to the active segment only, the other segments are
+ * sealed. A sealed segment is read through a memory mapping of the whole
+ * file, the active segment with positional reads. A record with a partial
+ * write can only be at the end of a segment; scan stops at the first
+ * invalid record.
+ *
+ * @author Poornima
+ */
+public class FileUploadSegment {
+
+    private static final Logger LOG = Logger.getLogger(FileUploadSegment.class);
+
+    public static final int SEGMENT_MAGIC = 0x46555347; // FUSG
+    public static final int RECORD_MAGIC = 0x46555352; // FUSR
+    public static final byte VERSION = 1;
+    public static final String FILE_SUFFIX = ".seg";
+
+    public static final int HEADER_SIZE = 13;
+    public static final int RECORD_HEADER_SIZE = 16;
+
+    private final long id;
+    private final Path path;
+    private final long created;
+    private final FileChannel channel;
+    private final AtomicLong liveBytes = new AtomicLong();
+    private volatile long size;
+    private volatile boolean sealed;
+    private volatile MappedByteBuffer mapping;
+
+    private FileUploadSegment(long id, Path path, long created, FileChannel channel, long size, boolean sealed) {
+        this.id = id;
+        this.path = path;
+        this.created = created;
+        this.channel = channel;
+        this.size = size;
+        this.sealed = sealed;
+    }
+
+    /**
+     * Creates a new active segment.
+     *
+     * @param directory The directory of the segments
+     * @param id The id of the segment, higher than the ids of all segments
+     * @return The segment
+     * @throws IOException
+     */
+    public static FileUploadSegment create(Path directory, long id) throws IOException {
+        Path path = directory.resolve(getFileName(id));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long created = System.currentTimeMillis();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(SEGMENT_MAGIC).put(VERSION).putLong(created);
+        header.flip();
+        try {
+            writeFully(channel, header, 0);
+        } catch (IOException e) {
+            channel.close();
+            Files.deleteIfExists(path);
+            throw e;
+        }
+        return new FileUploadSegment(id, path, created, channel, HEADER_SIZE, false);
+    }
+
+    /**
+     * Opens an existing segment as sealed segment.
+     *
+     * @param path The path of the segment
+     * @return The segment
+     * @throws IOException If the file is not a segment
+     */
+    public static FileUploadSegment open(Path path) throws IOException {
+        long id = parseId(path.getFileName().toString());
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+                // read the whole header
+            }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != SEGMENT_MAGIC || header.get() != VERSION) {
+                throw new IOException("Invalid segment: " + path);
+            }
+            return new FileUploadSegment(id, path, header.getLong(), channel, channel.size(), true);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the id of a segment file, -1 if the name is not the name of
+     * a segment file.
+     */
+    public static long parseId(String fileName) {
+        if (!fileName.endsWith(FILE_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(fileName.substring(0, fileName.length() - FILE_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String getFileName(long id) {
+        return String.format("%012d", id) + FILE_SUFFIX;
+    }
+
+    /**
+     * Returns the number of bytes of a record.
+     */
+    public static long getRecordSize(byte[] metadata, byte[] data) {
+        return RECORD_HEADER_SIZE + metadata.length + data.length;
+    }
+
+    /**
+     * Returns the number of bytes of the record of a packed file.
+     */
+    public static long getRecordSize(FileUploadMetadata metadata) {
+        return RECORD_HEADER_SIZE + toRecordMetadata(metadata).length + metadata.getSegmentLength();
+    }
+
+    /**
+     * Appends a record. Records must not be appended concurrently.
+     *
+     * @param metadata The meta data encoded by toRecordMetadata
+     * @param data The data
+     * @return The position of the data in the segment
+     * @throws IOException
+     */
+    public long append(byte[] metadata, byte[] data) throws IOException {
+        if (sealed) {
+            throw new IOException("Segment is sealed: " + path);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(metadata);
+        crc.update(data);
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        header.putInt(RECORD_MAGIC).putInt(metadata.length).putInt(data.length).putInt((int) crc.getValue());
+        header.flip();
+        long position = size;
+        ByteBuffer[] buffers = { header, ByteBuffer.wrap(metadata), ByteBuffer.wrap(data) };
+        channel.position(position);
+        long remaining = getRecordSize(metadata, data);
+        while (remaining > 0) {
+            remaining -= channel.write(buffers);
+        }
+        size = position + getRecordSize(metadata, data);
+        return position + RECORD_HEADER_SIZE + metadata.length;
+    }
+
+    /**
+     * Reads data of a record.
+     *
+     * @param offset The position of the data in the segment
+     * @param length The length of the data
+     * @return A buffer with the data, which must not be modified
+     * @throws IOException
+     */
+    public ByteBuffer read(long offset, int length) throws IOException {
+        if (offset < HEADER_SIZE || offset + length > size) {
+            throw new IOException("Invalid region " + offset + "+" + length + " of segment: " + path);
+        }
+        MappedByteBuffer mapped = getMapping();
+        if (mapped != null) {
+            ByteBuffer buffer = mapped.duplicate();
+            buffer.position((int) offset).limit((int) offset + length);
+            return buffer.slice();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Segment was truncated: " + path);
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Returns the mapping of a sealed segment, null for the active segment
+     * or a segment too large for a single mapping.
+     */
+    private MappedByteBuffer getMapping() throws IOException {
+        if (!sealed || size > Integer.MAX_VALUE) {
+            return null;
+        }
+        MappedByteBuffer mapped = mapping;
+        if (mapped == null) {
+            synchronized (this) {
+                mapped = mapping;
+                if (mapped == null) {
+                    mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                    mapping = mapped;
+                }
+            }
+        }
+        return mapped;
+    }
+
+    /**
+     * Passes the meta data of all valid records to the consumer. The
+     * segment, position and length of the data are set in the meta data.
+     *
+     * @param consumer The consumer of the meta data
+     * @throws IOException
+     */
+    public void scan(Consumer<FileUploadMetadata> consumer) throws IOException {
+        long end = size;
+        long position = HEADER_SIZE;
+        while (position + RECORD_HEADER_SIZE <= end) {
+            ByteBuffer header = read(position, RECORD_HEADER_SIZE);
+            int magic = header.getInt();
+            int metadataLength = header.getInt();
+            int dataLength = header.getInt();
+            int crc = header.getInt();
+            long dataOffset = position + RECORD_HEADER_SIZE + metadataLength;
+            if (magic != RECORD_MAGIC || metadataLength < 0 || dataLength < 0 || dataOffset + dataLength > end) {
+                LOG.warn("Invalid record at " + position + " of segment " + path + ", skipping the rest of the segment");
+                return;
+            }
+            ByteBuffer metadata = read(position + RECORD_HEADER_SIZE, metadataLength);
+            CRC32 actual = new CRC32();
+            actual.update(metadata.duplicate());
+            actual.update(read(dataOffset, dataLength));
+            if ((int) actual.getValue() != crc) {
+                LOG.warn("Invalid checksum at " + position + " of segment " + path + ", skipping the rest of the segment");
+                return;
+            }
+            FileUploadMetadata fileMetadata = FileUploadMetadataCodec.decode(metadata);
+            fileMetadata.setSegment(id);
+            fileMetadata.setSegmentOffset(dataOffset);
+            fileMetadata.setSegmentLength(dataLength);
+            consumer.accept(fileMetadata);
+            position = dataOffset + dataLength;
+        }
+    }
+
+    /**
+     * Returns the meta data as stored in a record.
+     */
+    public static byte[] toRecordMetadata(FileUploadMetadata metadata) {
+        return FileUploadMetadataCodec.encode(metadata);
+    }
+
+    /**
+     * Copies the content of a buffer returned by read to a new array.
+     */
+    public static byte[] toArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Seals the segment, no records can be appended afterwards.
+     */
+    public void seal() {
+        sealed = true;
+    }
+
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOG.warn("Error while closing segment: " + path, e);
+        }
+    }
+
+    /**
+     * Closes and deletes the segment. The mapping is released when it is
+     * no longer referenced.
+     */
+    public void delete() throws IOException {
+        close();
+        Files.deleteIfExists(path);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Adds to the number of bytes of the records of the segment which are
+     * referenced by the index, headers and meta data included.
+     */
+    public void addLiveBytes(long bytes) {
+        liveBytes.addAndGet(bytes);
+    }
+
+    public long getLiveBytes() {
+        return liveBytes.get();
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Returns the creation time of the segment in milliseconds.
+     */
+    public long getCreated() {
+        return created;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public boolean isSealed() {
+        return sealed;
+    }
+}
@@ -0,0 +1,74 @@
+package com.upload.file.util;
+
+import java.time.LocalDate;
+import java.util.Comparator;
+
+/**
+ * Sort orders of file meta data. Files with the same sort key are
+ * ordered by UUID, so the order is total and a page can be continued
+ * after the last file of the previous page.
+ *
+ * @author Poornima
+ */
+public enum FileUploadSort {
+
+    /** By UUID */
+    UUID(Comparator.comparing(FileUploadMetadata::getUuid)),
+
+    /** By upload date, files without date first */
+    DATE(Comparator.comparingLong(FileUploadMetadata::getUploadDay)
+            .thenComparing(FileUploadMetadata::getUuid)),
+
+    /** By file name */
+    NAME(Comparator.comparing(FileUploadSort::getFileName)
+            .thenComparing(FileUploadMetadata::getUuid));
+
+    private final Comparator<FileUploadMetadata> comparator;
+
+    private FileUploadSort(Comparator<FileUploadMetadata> comparator) {
+        this.comparator = comparator;
+    }
+
+    /**
+     * Returns the comparator of the sort order.
+     *
+     * @param descending True for the descending order
+     * @return A comparator
+     */
+    public Comparator<FileUploadMetadata> getComparator(boolean descending) {
+        return descending ? comparator.reversed() : comparator;
+    }
+
+    /**
+     * Returns the sort key of the meta data without the UUID.
+     */
+    String getKey(FileUploadMetadata metadata) {
+        switch (this) {
+        case DATE:
+            return metadata.getUploadDay()==FileUploadMetadata.NO_DATE ? "" : Long.toString(metadata.getUploadDay());
+        case NAME:
+            return getFileName(metadata);
+        default:
+            return "";
+        }
+    }
+
+    /**
+     * Creates meta data with the given sort key and UUID, which is
+     * compared to the meta data of files.
+     */
+    FileUploadMetadata createPosition(String key, String uuid) {
+        FileUploadMetadata position = new FileUploadMetadata();
+        position.setUuid(uuid);
+        if(this==DATE && !key.isEmpty()) {
+            position.setuploadDate(LocalDate.ofEpochDay(Long.parseLong(key)));
+        } else if(this==NAME) {
+            position.setFileName(key);
+        }
+        return position;
+    }
+
+    private static String getFileName(FileUploadMetadata metadata) {
+        return metadata.getFileName()==null ? "" : metadata.getFileName();
+    }
+}
@@ -0,0 +1,28 @@
+package com.upload.file.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A file to be inserted in a batch. The file data is opened only when the
+ * file is written, so a batch does not keep all files open at once.
+ * 
+ * @author Poornima
+ */
+public interface FileUploadSource {
+
+    /**
+     * Returns the meta data of the file.
+     * 
+     * @return The meta data
+     */
+    FileUploadMetadata getMetadata();
+
+    /**
+     * Opens the file data. The caller has to close the stream.
+     * 
+     * @return The file data
+     * @throws IOException
+     */
+    InputStream openStream() throws IOException;
+}
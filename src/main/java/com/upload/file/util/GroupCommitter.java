@@ -0,0 +1,183 @@
+package com.upload.file.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Forces files and directories to the storage device in group commits.
+ *
+ * Regular files are forced by the calling thread, so the data of
+ * concurrent uploads is forced in parallel. The directories and the meta
+ * data journal are handed to a single sync thread: while it forces one
+ * batch, new requests queue up and are forced together in the next batch,
+ * so concurrent uploads share the fsyncs of directories and of the
+ * journal instead of each paying for its own.
+ *
+ * @author Poornima
+ */
+public class GroupCommitter {
+
+    private static final Logger LOG = Logger.getLogger(GroupCommitter.class);
+
+    private static final SyncRequest CLOSE = new SyncRequest(new ArrayList<Path>(), false);
+
+    private final BlockingQueue<SyncRequest> queue = new LinkedBlockingQueue<SyncRequest>();
+    private final FileUploadMetadataJournal journal;
+    private final Thread thread;
+    private volatile boolean closed;
+
+    /**
+     * Creates a group committer and starts its sync thread.
+     *
+     * @param name The name of the sync thread
+     * @param journal The journal which is forced with a batch if requested, may be null
+     */
+    public GroupCommitter(String name, FileUploadMetadataJournal journal) {
+        this.journal = journal;
+        this.thread = new Thread(this::run, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Forces the given files and directories to the storage device and
+     * waits until they are forced.
+     *
+     * @param paths The files and directories to force
+     * @param forceJournal True if the journal has to be forced as well
+     * @throws IOException If a path could not be forced
+     */
+    public void sync(Collection<Path> paths, boolean forceJournal) throws IOException {
+        if(closed) {
+            throw new IOException("Group committer is closed");
+        }
+        List<Path> directories = new ArrayList<Path>();
+        for (Path path : paths) {
+            if(Files.isDirectory(path)) {
+                directories.add(path);
+            } else {
+                force(path);
+            }
+        }
+        if(directories.isEmpty() && !(forceJournal && journal!=null)) {
+            return;
+        }
+        SyncRequest request = new SyncRequest(directories, forceJournal);
+        queue.add(request);
+        // close() may have drained the queue before the request was added
+        if(closed && queue.remove(request)) {
+            throw new IOException("Group committer is closed");
+        }
+        try {
+            request.done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for group commit");
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Error in group commit", e.getCause());
+        }
+    }
+
+    /**
+     * Stops the sync thread after the pending requests are forced.
+     */
+    public void close() {
+        closed = true;
+        queue.add(CLOSE);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        SyncRequest request;
+        while ((request = queue.poll()) != null) {
+            request.done.completeExceptionally(new IOException("Group committer is closed"));
+        }
+    }
+
+    private void run() {
+        List<SyncRequest> batch = new ArrayList<SyncRequest>();
+        boolean stop = false;
+        while (!stop) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                continue;
+            }
+            queue.drainTo(batch);
+            stop = batch.remove(CLOSE);
+            commit(batch);
+            batch.clear();
+        }
+    }
+
+    private void commit(List<SyncRequest> batch) {
+        Set<Path> paths = new LinkedHashSet<Path>();
+        boolean forceJournal = false;
+        for (SyncRequest request : batch) {
+            paths.addAll(request.paths);
+            forceJournal |= request.forceJournal;
+        }
+        try {
+            for (Path path : paths) {
+                force(path);
+            }
+            if(forceJournal && journal!=null) {
+                journal.force();
+            }
+            for (SyncRequest request : batch) {
+                request.done.complete(null);
+            }
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Error in group commit of " + batch.size() + " requests", e);
+            for (SyncRequest request : batch) {
+                request.done.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static void force(Path path) throws IOException {
+        if(Files.isDirectory(path)) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                channel.force(true);
+            } catch (IOException e) {
+                // directories cannot be opened on all platforms
+                LOG.debug("Could not force directory: " + path, e);
+            }
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    private static class SyncRequest {
+
+        private final Collection<Path> paths;
+        private final boolean forceJournal;
+        private final CompletableFuture<Void> done = new CompletableFuture<Void>();
+
+        SyncRequest(Collection<Path> paths, boolean forceJournal) {
+            this.paths = paths;
+            this.forceJournal = forceJournal;
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package com.upload.file.util;
 
-import java.util.Date;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.LocalDate;
 import java.util.List;
+import java.util.function.Consumer;
 
  
 
@@ -19,6 +22,34 @@ public interface IFileUploadDao {
      */
     void insert(FileUpload file);
     
+    /**
+     * Inserts a document in the data store reading the file data from
+     * the given stream. The stream is copied in fixed-size chunks so the
+     * file is never held in memory as a whole. The stream is not closed.
+     * 
+     * @param metadata The meta data of the file
+     * @param data The file data
+     */
+    void insert(FileUploadMetadata metadata, InputStream data);
+    
+    /**
+     * Inserts a document in the data store taking over a file which was
+     * already written by the caller. The file is moved into the data store
+     * and has to be on the same file system.
+     * 
+     * @param metadata The meta data of the file
+     * @param file The file with the file data
+     */
+    void insert(FileUploadMetadata metadata, Path file);
+    
+    /**
+     * Inserts a batch of documents in the data store. The files are
+     * written one after the other and made durable together.
+     * 
+     * @param files The files to insert
+     */
+    void insertAll(List<? extends FileUploadSource> files);
+    
     /**
      * Find files in the data store matching the given parameter.
      * A list of file meta data is returned which does not include the file data.
@@ -29,7 +60,36 @@ public interface IFileUploadDao {
      * @param date The date of a document, may be null
      * @return A list of file meta data
      */
-    List<FileUploadMetadata> findByAuthorNameDate(String authorName, Date date);
+    List<FileUploadMetadata> findByAuthorNameDate(String authorName, LocalDate date);
+    
+    /**
+     * Find files in the data store matching the query.
+     * Returns an empty list if no file was found.
+     * 
+     * @param query The query
+     * @return A list of file meta data
+     */
+    List<FileUploadMetadata> find(FileUploadQuery query);
+    
+    /**
+     * Finds a page of the files matching the query, sorted in the order
+     * of the cursor.
+     * 
+     * @param query The query
+     * @param cursor The cursor of the page
+     * @param limit The maximum number of files of the page
+     * @return A page of file meta data
+     */
+    FileUploadPage findPage(FileUploadQuery query, FileUploadPage.Cursor cursor, int limit);
+    
+    /**
+     * Passes the meta data of the files matching the query to the 
+     * consumer as they are found, without collecting them.
+     * 
+     * @param query The query
+     * @param consumer The consumer of the meta data
+     */
+    void forEach(FileUploadQuery query, Consumer<FileUploadMetadata> consumer);
     
     /**
      * Returns the file from the data store with the given id.
@@ -41,4 +101,23 @@ public interface IFileUploadDao {
      */
     FileUpload load(String uuid);
     
+    /**
+     * Returns the meta data of the file with the given id.
+     * Returns null if no file was found.
+     * 
+     * @param uuid The id of the document
+     * @return The meta data of the file
+     */
+    FileUploadMetadata loadMetadata(String uuid);
+    
+    /**
+     * Returns the stored content of the file with the given id.
+     * The file data is not read, use the content to stream it.
+     * Returns null if no file was found.
+     * 
+     * @param uuid The id of the document
+     * @return The content of the file
+     */
+    FileUploadContent loadContent(String uuid);
+    
 }
@@ -0,0 +1,549 @@
+package com.upload.file.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StreamUtils;
+
+/**
+ * Data access object which packs small files into segment files.
+ *
+ * A file up to upload.packed.max-file-size bytes is not stored in a folder
+ * of its own. Its meta data and data are appended as one record to the
+ * active segment file in uploads.segments, see FileUploadSegment, so an
+ * upload of a small file creates no file or directory and small files are
+ * read from a few large files. The position of the data in the segment
+ * is kept in the meta data of the in-memory index and the journal. Larger
+ * files are stored like in FileSystemDocumentDao.
+ *
+ * Files are loaded from the memory mapping of their segment and downloads
+ * stream the region of the segment file. The active segment is sealed
+ * when it reaches upload.packed.segment-size and a new segment is started,
+ * also at every startup.
+ *
+ * Records which are no longer referenced by the index (records of failed
+ * inserts and records moved by compaction) are reclaimed by a background
+ * compaction: segments whose referenced records, headers and meta data
+ * included, take less than upload.packed.compaction-threshold of their
+ * size are copied to the active segment and deleted at the next run, so
+ * running downloads of the old segment can complete.
+ *
+ * Enabled with upload.storage=packed.
+ *
+ * @author Poornima
+ */
+@Service("fileDao")
+@ConditionalOnProperty(name = "upload.storage", havingValue = "packed")
+public class PackedDocumentDao extends FileSystemDocumentDao {
+
+    private static final Logger LOG = Logger.getLogger(PackedDocumentDao.class);
+
+    public static final String SEGMENT_SUFFIX = ".segments";
+    public static final String SEGMENT_DIRECTORY = DIRECTORY + SEGMENT_SUFFIX;
+
+    @Value("${upload.packed.max-file-size:65536}")
+    private int maxFileSize = 64 * 1024;
+
+    @Value("${upload.packed.segment-size:67108864}")
+    private long segmentSize = 64L * 1024 * 1024;
+
+    @Value("${upload.packed.compaction-interval:600}")
+    private long compactionInterval = 600;
+
+    @Value("${upload.packed.compaction-threshold:0.5}")
+    private double compactionThreshold = 0.5;
+
+    private final ConcurrentNavigableMap<Long, FileUploadSegment> segments = new ConcurrentSkipListMap<Long, FileUploadSegment>();
+    private final List<FileUploadSegment> retiredSegments = new ArrayList<FileUploadSegment>();
+    private final Object appendLock = new Object();
+    private FileUploadSegment activeSegment;
+    private long nextSegmentId = 1;
+    private ScheduledExecutorService compactor;
+
+    @Override
+    public void init() {
+        if(!isIndexEnabled()) {
+            LOG.warn("Packed files are found by the meta data index, the index is enabled");
+            setIndexEnabled(true);
+        }
+        try {
+            openSegments();
+        } catch (IOException e) {
+            String message = "Error while opening segments in " + getSegmentDirectory();
+            LOG.error(message, e);
+            throw new RuntimeException(message, e);
+        }
+        super.init();
+        forEach(new FileUploadQuery(), metadata -> {
+            FileUploadSegment segment = segments.get(metadata.getSegment());
+            if(segment!=null) {
+                segment.addLiveBytes(FileUploadSegment.getRecordSize(metadata));
+            }
+        });
+        if(compactionInterval > 0) {
+            compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "upload-segment-compaction");
+                thread.setDaemon(true);
+                return thread;
+            });
+            compactor.scheduleWithFixedDelay(this::compact, compactionInterval, compactionInterval, TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    public void close() {
+        if(compactor!=null) {
+            compactor.shutdown();
+            try {
+                compactor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        super.close();
+        for (FileUploadSegment segment : segments.values()) {
+            segment.close();
+        }
+    }
+
+    /**
+     * Returns the directory of the segments, next to the directory of the store.
+     */
+    Path getSegmentDirectory() {
+        return Paths.get(getDirectory() + SEGMENT_SUFFIX);
+    }
+
+    private void openSegments() throws IOException {
+        Path directory = getSegmentDirectory();
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory)) {
+            for (Path path : paths) {
+                if(FileUploadSegment.parseId(path.getFileName().toString()) >= 0) {
+                    FileUploadSegment segment = FileUploadSegment.open(path);
+                    segments.put(segment.getId(), segment);
+                    nextSegmentId = Math.max(nextSegmentId, segment.getId() + 1);
+                }
+            }
+        }
+        LOG.info("Opened " + segments.size() + " segments");
+    }
+
+    /**
+     * Adds the meta data of the records in the segments to the meta data
+     * of the folders. Records of later segments replace records of earlier
+     * segments with the same UUID.
+     */
+    @Override
+    protected void forEachInFileSystem(Consumer<FileUploadMetadata> consumer) throws IOException {
+        super.forEachInFileSystem(consumer);
+        for (FileUploadSegment segment : segments.values()) {
+            segment.scan(consumer);
+        }
+    }
+
+    /**
+     * Packs the file if it is not larger than max-file-size, otherwise the
+     * file is stored in its own folder.
+     */
+    @Override
+    public void insert(FileUploadMetadata metadata, InputStream data) {
+        try {
+            byte[] buffer = new byte[maxFileSize + 1];
+            int length = FileUploadCompression.readSample(data, buffer);
+            if(length > maxFileSize) {
+                super.insert(metadata, new SequenceInputStream(new ByteArrayInputStream(buffer, 0, length), data));
+                return;
+            }
+            pack(Collections.singletonList(metadata), Collections.singletonList(Arrays.copyOf(buffer, length)));
+        } catch (IOException e) {
+            String message = "Error while inserting file";
+            LOG.error(message, e);
+            throw new RuntimeException(message, e);
+        }
+    }
+
+    @Override
+    public void insert(FileUploadMetadata metadata, Path file) {
+        try {
+            if(Files.size(file) > maxFileSize) {
+                super.insert(metadata, file);
+                return;
+            }
+            byte[] data;
+            acquireDisk();
+            try {
+                data = Files.readAllBytes(file);
+            } finally {
+                releaseDisk();
+            }
+            pack(Collections.singletonList(metadata), Collections.singletonList(data));
+        } catch (IOException e) {
+            String message = "Error while inserting file";
+            LOG.error(message, e);
+            throw new RuntimeException(message, e);
+        }
+    }
+
+    /**
+     * Packs the small files of the batch together, the larger files are
+     * inserted as batch by FileSystemDocumentDao. The records of the small
+     * files are written first but only added to the index after the larger
+     * files were inserted, so a batch is inserted completely or not at all.
+     */
+    @Override
+    public void insertAll(List<? extends FileUploadSource> files) {
+        List<FileUploadMetadata> metadataList = new ArrayList<FileUploadMetadata>(files.size());
+        List<byte[]> dataList = new ArrayList<byte[]>(files.size());
+        List<FileUploadSource> largeFiles = new ArrayList<FileUploadSource>();
+        long[] recordSizes = new long[0];
+        try {
+            for (FileUploadSource file : files) {
+                byte[] buffer = new byte[maxFileSize + 1];
+                int length;
+                try (InputStream data = file.openStream()) {
+                    length = FileUploadCompression.readSample(data, buffer);
+                }
+                if(length > maxFileSize) {
+                    largeFiles.add(file);
+                } else {
+                    metadataList.add(file.getMetadata());
+                    dataList.add(Arrays.copyOf(buffer, length));
+                }
+            }
+            if(!metadataList.isEmpty()) {
+                recordSizes = writeRecords(metadataList, encode(metadataList, dataList));
+            }
+        } catch (IOException e) {
+            String message = "Error while inserting batch of " + files.size() + " files";
+            LOG.error(message, e);
+            throw new RuntimeException(message, e);
+        }
+        if(!largeFiles.isEmpty()) {
+            super.insertAll(largeFiles);
+        }
+        if(!metadataList.isEmpty()) {
+            try {
+                addToIndex(metadataList, recordSizes);
+            } catch (IOException e) {
+                String message = "Error while inserting batch of " + files.size() + " files";
+                LOG.error(message, e);
+                throw new RuntimeException(message, e);
+            }
+        }
+    }
+
+    /**
+     * Compresses the files if enabled and appends them to the active
+     * segment.
+     */
+    private void pack(List<FileUploadMetadata> metadataList, List<byte[]> dataList) throws IOException {
+        append(metadataList, encode(metadataList, dataList));
+    }
+
+    private List<byte[]> encode(List<FileUploadMetadata> metadataList, List<byte[]> dataList) throws IOException {
+        List<byte[]> storedData = new ArrayList<byte[]>(dataList.size());
+        for (int i = 0; i < metadataList.size(); i++) {
+            storedData.add(encode(metadataList.get(i), dataList.get(i)));
+        }
+        return storedData;
+    }
+
+    private byte[] encode(FileUploadMetadata metadata, byte[] data) throws IOException {
+        metadata.setSize(data.length);
+        computeChecksums(metadata, data);
+        metadata.setContentEncoding(null);
+        if(!isCompressionEnabled() || !FileUploadCompression.isCompressible(metadata.getFileName(), data, data.length)) {
+            return data;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length / 2);
+        try (OutputStream out = FileUploadCompression.compress(bytes)) {
+            out.write(data);
+        }
+        if(bytes.size() >= data.length) {
+            return data;
+        }
+        metadata.setContentEncoding(FileUploadCompression.GZIP);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Appends records of the files to the active segment, forces the
+     * segments and adds the files to the index.
+     */
+    private void append(List<FileUploadMetadata> metadataList, List<byte[]> storedData) throws IOException {
+        addToIndex(metadataList, writeRecords(metadataList, storedData));
+    }
+
+    /**
+     * Appends records of the files to the active segment and forces the
+     * segments. The files are not visible until they are added to the
+     * index.
+     *
+     * @return The sizes of the records
+     */
+    private long[] writeRecords(List<FileUploadMetadata> metadataList, List<byte[]> storedData) throws IOException {
+        Set<Path> paths = new LinkedHashSet<Path>();
+        long[] recordSizes = new long[metadataList.size()];
+        acquireDisk();
+        try {
+            long start = System.nanoTime();
+            synchronized (appendLock) {
+                for (int i = 0; i < metadataList.size(); i++) {
+                    FileUploadMetadata metadata = metadataList.get(i);
+                    byte[] data = storedData.get(i);
+                    byte[] recordMetadata = FileUploadSegment.toRecordMetadata(metadata);
+                    recordSizes[i] = FileUploadSegment.getRecordSize(recordMetadata, data);
+                    FileUploadSegment segment = getActiveSegment(recordSizes[i], paths);
+                    long offset = segment.append(recordMetadata, data);
+                    metadata.setSegment(segment.getId());
+                    metadata.setSegmentOffset(offset);
+                    metadata.setSegmentLength(data.length);
+                    paths.add(segment.getPath());
+                }
+            }
+            getMetrics().record(FileUploadMetrics.DAO_DATA_WRITE, start);
+        } finally {
+            releaseDisk();
+        }
+        // the group commit waits for other uploads, so no permit is held
+        sync(paths, false);
+        return recordSizes;
+    }
+
+    /**
+     * Adds the files of written records to the index and counts the
+     * records as live bytes of their segments.
+     */
+    private void addToIndex(List<FileUploadMetadata> metadataList, long[] recordSizes) throws IOException {
+        for (int i = 0; i < metadataList.size(); i++) {
+            FileUploadMetadata metadata = metadataList.get(i);
+            addToIndex(metadata);
+            FileUploadSegment segment = segments.get(metadata.getSegment());
+            if(segment!=null) {
+                segment.addLiveBytes(recordSizes[i]);
+            }
+            getMetrics().increment(FileUploadMetrics.DAO_BYTES_WRITTEN, metadata.getSize());
+        }
+        sync(Collections.<Path>emptyList(), true);
+    }
+
+    /**
+     * Returns the active segment with space for a record, a new segment is
+     * started if needed. The directory of a new segment is added to the
+     * paths to force.
+     */
+    private FileUploadSegment getActiveSegment(long recordSize, Set<Path> paths) throws IOException {
+        FileUploadSegment segment = activeSegment;
+        if(segment!=null && (segment.getSize() + recordSize <= segmentSize
+                || segment.getSize() == FileUploadSegment.HEADER_SIZE)) {
+            return segment;
+        }
+        if(segment!=null) {
+            segment.seal();
+        }
+        segment = FileUploadSegment.create(getSegmentDirectory(), nextSegmentId++);
+        segments.put(segment.getId(), segment);
+        activeSegment = segment;
+        paths.add(getSegmentDirectory());
+        return segment;
+    }
+
+    /**
+     * Returns the file with the given UUID. A packed file is copied from
+     * the memory mapping of its segment.
+     */
+    @Override
+    public FileUpload load(String uuid) {
+        FileUploadMetadata metadata = loadMetadata(uuid);
+        if(metadata==null || metadata.getSegment()==FileUploadMetadata.NO_SEGMENT) {
+            return super.load(uuid);
+        }
+        try {
+            ByteBuffer data;
+            acquireDisk();
+            long start = System.nanoTime();
+            try {
+                data = getSegment(metadata).read(metadata.getSegmentOffset(), (int) metadata.getSegmentLength());
+            } finally {
+                releaseDisk();
+            }
+            FileUpload file = new FileUpload(metadata);
+            if(metadata.getContentEncoding()==null) {
+                file.setFileData(FileUploadSegment.toArray(data));
+            } else {
+                InputStream in = new ByteArrayInputStream(FileUploadSegment.toArray(data));
+                try (InputStream decompressed = FileUploadCompression.decompress(in, metadata.getContentEncoding())) {
+                    file.setFileData(StreamUtils.copyToByteArray(decompressed));
+                }
+            }
+            getMetrics().record(FileUploadMetrics.DAO_DATA_READ, start);
+            return file;
+        } catch (IOException e) {
+            String message = "Error while loading file with id: " + uuid;
+            LOG.error(message, e);
+            throw new RuntimeException(message, e);
+        }
+    }
+
+    /**
+     * Returns the content of the file with the given UUID. The content of
+     * a packed file is the region of its data in the segment file.
+     */
+    @Override
+    public FileUploadContent loadContent(String uuid) {
+        FileUploadMetadata metadata = loadMetadata(uuid);
+        if(metadata==null || metadata.getSegment()==FileUploadMetadata.NO_SEGMENT) {
+            return super.loadContent(uuid);
+        }
+        FileUploadSegment segment = segments.get(metadata.getSegment());
+        if(segment==null) {
+            return null;
+        }
+        return new FileUploadContent(metadata, segment.getPath().toFile(), metadata.getSegmentOffset(),
+                metadata.getSegmentLength(), segment.getCreated());
+    }
+
+    private FileUploadSegment getSegment(FileUploadMetadata metadata) throws IOException {
+        FileUploadSegment segment = segments.get(metadata.getSegment());
+        if(segment==null) {
+            throw new IOException("Segment " + metadata.getSegment() + " of file " + metadata.getUuid() + " does not exist");
+        }
+        return segment;
+    }
+
+    /**
+     * Copies the files referenced in sealed segments with little referenced
+     * data to the active segment. The segments stay readable for files
+     * loaded before they were moved and are deleted at the next run.
+     */
+    void compact() {
+        try {
+            for (FileUploadSegment segment : retiredSegments) {
+                segments.remove(segment.getId());
+                segment.delete();
+            }
+            retiredSegments.clear();
+            Map<Long, List<FileUploadMetadata>> candidates = new HashMap<Long, List<FileUploadMetadata>>();
+            for (FileUploadSegment segment : segments.values()) {
+                if(segment.isSealed() && segment.getLiveBytes() < segment.getSize() * compactionThreshold) {
+                    candidates.put(segment.getId(), new ArrayList<FileUploadMetadata>());
+                }
+            }
+            if(candidates.isEmpty()) {
+                return;
+            }
+            forEach(new FileUploadQuery(), metadata -> {
+                List<FileUploadMetadata> files = candidates.get(metadata.getSegment());
+                if(files!=null) {
+                    files.add(metadata);
+                }
+            });
+            for (Map.Entry<Long, List<FileUploadMetadata>> entry : candidates.entrySet()) {
+                FileUploadSegment segment = segments.get(entry.getKey());
+                moveFiles(segment, entry.getValue());
+                retiredSegments.add(segment);
+                LOG.info("Compacted segment " + segment.getId() + ": moved " + entry.getValue().size()
+                        + " files, reclaimed " + (segment.getSize() - segment.getLiveBytes()) + " bytes");
+            }
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Error while compacting segments", e);
+        }
+    }
+
+    private void moveFiles(FileUploadSegment segment, List<FileUploadMetadata> files) throws IOException {
+        List<FileUploadMetadata> metadataList = new ArrayList<FileUploadMetadata>(files.size());
+        List<byte[]> storedData = new ArrayList<byte[]>(files.size());
+        for (FileUploadMetadata metadata : files) {
+            ByteBuffer data;
+            acquireDisk();
+            try {
+                data = segment.read(metadata.getSegmentOffset(), (int) metadata.getSegmentLength());
+            } finally {
+                releaseDisk();
+            }
+            metadataList.add(copy(metadata));
+            storedData.add(FileUploadSegment.toArray(data));
+        }
+        append(metadataList, storedData);
+    }
+
+    /**
+     * Copies the meta data, the meta data in the index is not modified.
+     */
+    private static FileUploadMetadata copy(FileUploadMetadata metadata) {
+        FileUploadMetadata copy = new FileUploadMetadata(metadata.getUuid(), metadata.getFileName(),
+                metadata.getAuthorName(), metadata.getUploadDate());
+        copy.setSha256(metadata.getSha256());
+        copy.setCrc32c(metadata.getCrc32c());
+        copy.setSize(metadata.getSize());
+        copy.setContentEncoding(metadata.getContentEncoding());
+        return copy;
+    }
+
+    /**
+     * Returns the segments, including the active segment.
+     */
+    Collection<FileUploadSegment> getSegments() {
+        return segments.values();
+    }
+
+    public int getMaxFileSize() {
+        return maxFileSize;
+    }
+
+    public void setMaxFileSize(int maxFileSize) {
+        this.maxFileSize = maxFileSize;
+    }
+
+    public long getSegmentSize() {
+        return segmentSize;
+    }
+
+    public void setSegmentSize(long segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    public long getCompactionInterval() {
+        return compactionInterval;
+    }
+
+    public void setCompactionInterval(long compactionInterval) {
+        this.compactionInterval = compactionInterval;
+    }
+
+    public double getCompactionThreshold() {
+        return compactionThreshold;
+    }
+
+    public void setCompactionThreshold(double compactionThreshold) {
+        this.compactionThreshold = compactionThreshold;
+    }
+}
@@ -1,37 +1,97 @@
 package com.upload.file.util;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.log4j.Logger;
-import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.ResponseExtractor;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
 
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.upload.file.service.IUploadService;
 
 /**
+ * Client of the REST service.
+ * 
+ * The requests are sent with a pool of keep-alive connections
+ * (Apache HttpClient), limited in total and per host. File data is 
+ * streamed: uploads are sent from the stream or file in chunks without
+ * buffering the request body, downloads are written to a sink as they
+ * are received. Files stored compressed are transferred compressed and
+ * decompressed by the client.
+ * 
+ * Files can be transferred in parallel with saveAllParallel and
+ * getFileUploadFiles, at most parallelism transfers at a time. The
+ * parallelism should not be higher than the connections per host, 
+ * otherwise transfers wait for a connection.
+ * 
+ * The client has to be closed to release the connections and threads.
+ * 
  * @author Poornima
  *
  */
-public class RestServiceClient implements IUploadService {
+public class RestServiceClient implements IUploadService, Closeable {
 
     private static final Logger LOG = Logger.getLogger(RestServiceClient.class);
     
+    public static final int DEFAULT_MAX_CONNECTIONS = 64;
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 16;
+    public static final int DEFAULT_PARALLELISM = 8;
+    
     String protocol = "http";
     String hostname = "localhost";
     Integer port = 8080;
     String baseUrl = "rest";
     
+    int maxConnections = DEFAULT_MAX_CONNECTIONS;
+    int maxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+    int parallelism = DEFAULT_PARALLELISM;
+    int connectTimeout = 10000;
+    int readTimeout = 60000;
+    
     RestTemplate restTemplate;
+    private CloseableHttpClient httpClient;
+    private ExecutorService executor;
     
     @Override
     public FileUploadMetadata save(FileUpload document) {
@@ -47,10 +107,10 @@ public class RestServiceClient implements IUploadService {
 
     }
 
-    private FileUploadMetadata doSave(FileUpload document) throws IOException, FileNotFoundException {
-        String tempFilePath = writeFileUploadToTempFile(document);
-        MultiValueMap<String, Object> parts = createMultipartFileParam(tempFilePath);
-        String dateString = FileUploadMetadata.DATE_FORMAT.format(document.getFileData());
+    private FileUploadMetadata doSave(FileUpload document) throws IOException {
+        MultiValueMap<String, Object> parts = new LinkedMultiValueMap<String, Object>();
+        parts.add("file", new FileNameByteArrayResource(document.getFileData(), document.getFileName()));
+        String dateString = formatDate(document.getUploadDate());
         FileUploadMetadata fileUploadMetadata = getRestTemplate().postForObject(getServiceUrl() + "/upload?author={name}&date={date}", 
                 parts, 
                 FileUploadMetadata.class,
@@ -59,38 +119,369 @@ public class RestServiceClient implements IUploadService {
         return fileUploadMetadata;
     }
 
+    @Override
+    public FileUploadMetadata save(FileUploadMetadata metadata, InputStream data) {
+        MultiValueMap<String, Object> parts = new LinkedMultiValueMap<String, Object>();
+        parts.add("file", new FileNameInputStreamResource(data, metadata.getFileName()));
+        return getRestTemplate().postForObject(getServiceUrl() + "/upload?author={name}&date={date}", 
+                parts, 
+                FileUploadMetadata.class,
+                metadata.getAuthorName(), 
+                formatDate(metadata.getUploadDate()));
+    }
+
+    /**
+     * Uploads the file and deletes it.
+     */
+    @Override
+    public FileUploadMetadata save(FileUploadMetadata metadata, Path file) {
+        try {
+            FileUploadMetadata result;
+            try (InputStream data = Files.newInputStream(file)) {
+                result = save(metadata, data);
+            }
+            Files.delete(file);
+            return result;
+        } catch (IOException e) {
+            LOG.error("Error while uploading file", e);
+            throw new RuntimeException("Error while uploading file", e);
+        }
+    }
+
+    /**
+     * Uploads the documents in batches of documents with the same author 
+     * and date. The batches are uploaded in parallel.
+     */
+    @Override
+    public List<FileUploadMetadata> saveAll(List<? extends FileUploadSource> files) {
+        Map<String, List<FileUploadSource>> batches = new LinkedHashMap<String, List<FileUploadSource>>();
+        for (FileUploadSource file : files) {
+            FileUploadMetadata metadata = file.getMetadata();
+            String key = metadata.getAuthorName() + "|" + formatDate(metadata.getUploadDate());
+            List<FileUploadSource> batch = batches.get(key);
+            if(batch==null) {
+                batch = new ArrayList<FileUploadSource>();
+                batches.put(key, batch);
+            }
+            batch.add(file);
+        }
+        List<Callable<List<FileUploadMetadata>>> tasks = new ArrayList<Callable<List<FileUploadMetadata>>>(batches.size());
+        for (List<FileUploadSource> batch : batches.values()) {
+            tasks.add(() -> doSaveAll(batch));
+        }
+        List<FileUploadMetadata> result = new ArrayList<FileUploadMetadata>(files.size());
+        for (List<FileUploadMetadata> batchResult : invokeAll(tasks)) {
+            result.addAll(batchResult);
+        }
+        return result;
+    }
+    
+    /**
+     * Uploads the documents in parallel, each document in its own request.
+     * Unlike saveAll the documents are not fsynced together by the 
+     * service, which pays off for large documents.
+     * 
+     * @param files The documents
+     * @return The meta data of the documents in the order of the documents
+     */
+    public List<FileUploadMetadata> saveAllParallel(List<? extends FileUploadSource> files) {
+        List<Callable<FileUploadMetadata>> tasks = new ArrayList<Callable<FileUploadMetadata>>(files.size());
+        for (FileUploadSource file : files) {
+            tasks.add(() -> {
+                try (InputStream data = file.openStream()) {
+                    return save(file.getMetadata(), data);
+                }
+            });
+        }
+        return invokeAll(tasks);
+    }
+
+    private List<FileUploadMetadata> doSaveAll(List<FileUploadSource> batch) {
+        MultiValueMap<String, Object> parts = new LinkedMultiValueMap<String, Object>();
+        List<InputStream> streams = new ArrayList<InputStream>(batch.size());
+        try {
+            for (FileUploadSource file : batch) {
+                InputStream data = file.openStream();
+                streams.add(data);
+                parts.add("file", new FileNameInputStreamResource(data, file.getMetadata().getFileName()));
+            }
+            FileUploadMetadata metadata = batch.get(0).getMetadata();
+            FileUploadMetadata[] result = getRestTemplate().postForObject(getServiceUrl() + "/upload/batch?author={name}&date={date}", 
+                    parts, 
+                    FileUploadMetadata[].class,
+                    metadata.getAuthorName(), 
+                    formatDate(metadata.getUploadDate()));
+            return Arrays.asList(result);
+        } catch (IOException e) {
+            LOG.error("Error while uploading files", e);
+            throw new RuntimeException("Error while uploading files", e);
+        } finally {
+            for (InputStream data : streams) {
+                try {
+                    data.close();
+                } catch (IOException e) {
+                    LOG.warn("Error while closing file", e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public List<FileUploadMetadata> getFileUploadMetadata(List<String> ids) {
+        FileUploadMetadata[] result = getRestTemplate().postForObject(getServiceUrl() + "/files/batch", ids, FileUploadMetadata[].class);
+        return Arrays.asList(result);
+    }
+
+    /**
+     * Returns the document file. Use getFileUploadFile with a sink for
+     * large files, which are not held in memory.
+     */
     @Override
     public byte[] getFileUploadFile(String id) {
-        return getRestTemplate().getForObject(getServiceUrl() +  "/file/{id}", byte[].class, id);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        getFileUploadFile(id, bytes);
+        return bytes.toByteArray();
     }
 
+    /**
+     * Streams the document file to the sink. Files stored compressed are
+     * transferred compressed and decompressed while they are written to
+     * the sink. The sink is not closed.
+     * 
+     * @param id The UUID of the document
+     * @param sink The stream the file data is written to
+     * @return The number of bytes written
+     */
+    public long getFileUploadFile(String id, final OutputStream sink) {
+        return getRestTemplate().execute(getServiceUrl() + "/file/{id}", HttpMethod.GET, 
+                RestServiceClient::acceptCompressed, 
+                new ResponseExtractor<Long>() {
+                    @Override
+                    public Long extractData(ClientHttpResponse response) throws IOException {
+                        String contentEncoding = response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING);
+                        try (InputStream body = FileUploadCompression.decompress(response.getBody(), contentEncoding)) {
+                            return copy(body, sink);
+                        }
+                    }
+                }, id);
+    }
+
+    /**
+     * Streams the document file to a file.
+     * 
+     * @param id The UUID of the document
+     * @param file The file, replaced if it exists
+     * @return The number of bytes written
+     */
+    public long getFileUploadFile(String id, Path file) {
+        try (OutputStream sink = Files.newOutputStream(file)) {
+            return getFileUploadFile(id, sink);
+        } catch (IOException e) {
+            LOG.error("Error while downloading file", e);
+            throw new RuntimeException("Error while downloading file", e);
+        }
+    }
+
+    /**
+     * Downloads document files in parallel to files named by the UUIDs
+     * of the documents in the directory.
+     * 
+     * @param ids The UUIDs of the documents
+     * @param directory The directory of the files
+     * @return The files in the order of the UUIDs
+     */
+    public List<Path> getFileUploadFiles(List<String> ids, Path directory) {
+        List<Callable<Path>> tasks = new ArrayList<Callable<Path>>(ids.size());
+        for (String id : ids) {
+            tasks.add(() -> {
+                Path file = directory.resolve(id);
+                getFileUploadFile(id, file);
+                return file;
+            });
+        }
+        return invokeAll(tasks);
+    }
+
+    /**
+     * Downloads the document file to a temporary file and returns
+     * its content. The response body is streamed to the file.
+     */
     @Override
-    public List<FileUploadMetadata> findFileUploads(String authorName, Date date) {
-        String dateString = null;
-        if(date!=null) {           
-            dateString = FileUploadMetadata.DATE_FORMAT.format(date);
+    public FileUploadContent getFileUploadContent(final String id) {
+        Path path;
+        try {
+            path = Files.createTempFile(id, null);
+        } catch (IOException e) {
+            LOG.error("Error while downloading file", e);
+            throw new RuntimeException("Error while downloading file", e);
+        }
+        try {
+            getFileUploadFile(id, path);
+        } catch (RuntimeException e) {
+            deleteTempFile(path);
+            throw e;
         }
-        FileUploadMetadata[] result = getRestTemplate().getForObject(getServiceUrl() +  "files?author={name}&date={date}", FileUploadMetadata[].class, authorName, dateString);
+        FileUploadMetadata metadata = new FileUploadMetadata();
+        metadata.setUuid(id);
+        return new FileUploadContent(metadata, path.toFile());
+    }
+
+    @Override
+    public List<FileUploadMetadata> findFileUploads(String authorName, LocalDate date) {
+        String dateString = formatDate(date);
+        FileUploadMetadata[] result = getRestTemplate().getForObject(getServiceUrl() + "/files?author={name}&date={date}", FileUploadMetadata[].class, authorName, dateString);
         return Arrays.asList(result);
     }
     
-    private MultiValueMap<String, Object> createMultipartFileParam(String tempFilePath) {
-        MultiValueMap<String, Object> parts = new LinkedMultiValueMap<String, Object>();           
-        parts.add("file", new FileSystemResource(tempFilePath));
-        return parts;
+    @Override
+    public List<FileUploadMetadata> findFileUploads(FileUploadQuery query) {
+        FileUploadMetadata[] result = getRestTemplate().getForObject(createFilesUri(query).build().encode().toUri(), FileUploadMetadata[].class);
+        return Arrays.asList(result);
     }
-
-    private String writeFileUploadToTempFile(FileUpload document) throws IOException, FileNotFoundException {
-        Path path;       
-        path = Files.createTempDirectory(document.getUuid());  
-        String tempDirPath = path.toString();
-        File file = new File(tempDirPath,document.getFileName());
-        FileOutputStream fo = new FileOutputStream(file);
-        fo.write(document.getFileData());    
-        fo.close();
-        return file.getPath();
+    
+    @Override
+    public FileUploadPage findFileUploadPage(FileUploadQuery query, FileUploadPage.Cursor cursor, int limit) {
+        URI uri = createFilesUri(query).queryParam("cursor", cursor.encode()).queryParam("limit", limit).build().encode().toUri();
+        ResponseEntity<FileUploadMetadata[]> response = getRestTemplate().exchange(uri, HttpMethod.GET, null, FileUploadMetadata[].class);
+        return new FileUploadPage(Arrays.asList(response.getBody()), 
+                response.getHeaders().getFirst(FileUploadPage.NEXT_CURSOR_HEADER));
+    }
+    
+    /**
+     * Reads the documents from a newline delimited JSON response, one 
+     * document after the other.
+     */
+    @Override
+    public void forEachFileUpload(FileUploadQuery query, final Consumer<FileUploadMetadata> consumer) {
+        final ObjectReader reader = Jackson2ObjectMapperBuilder.json().build().readerFor(FileUploadMetadata.class);
+        getRestTemplate().execute(createFilesUri(query).build().encode().toUri(), HttpMethod.GET, 
+                request -> request.getHeaders().setAccept(Arrays.asList(MediaType.valueOf(FileUploadPage.NDJSON_VALUE))), 
+                new ResponseExtractor<Void>() {
+                    @Override
+                    public Void extractData(ClientHttpResponse response) throws IOException {
+                        BufferedReader lines = new BufferedReader(new InputStreamReader(response.getBody(), StandardCharsets.UTF_8));
+                        String line;
+                        while ((line = lines.readLine()) != null) {
+                            if(!line.isEmpty()) {
+                                consumer.accept(reader.readValue(line));
+                            }
+                        }
+                        return null;
+                    }
+                });
     }
     
+    private UriComponentsBuilder createFilesUri(FileUploadQuery query) {
+        UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(getServiceUrl() + "/files");
+        addQueryParam(builder, "author", query.getAuthor());
+        addQueryParam(builder, "authorPrefix", query.getAuthorPrefix());
+        addQueryParam(builder, "namePrefix", query.getNamePrefix());
+        addQueryParam(builder, "extension", query.getExtension());
+        addQueryParam(builder, "from", formatDate(query.getFrom()));
+        addQueryParam(builder, "to", formatDate(query.getTo()));
+        addQueryParam(builder, "minSize", query.getMinSize());
+        addQueryParam(builder, "maxSize", query.getMaxSize());
+        return builder;
+    }
+    
+    private static void addQueryParam(UriComponentsBuilder builder, String name, Object value) {
+        if(value!=null) {
+            builder.queryParam(name, value);
+        }
+    }
+    
+    private String formatDate(LocalDate date) {
+        if(date==null) {
+            return null;
+        }
+        return FileUploadMetadata.formatDate(date);
+    }
+    
+    private static void acceptCompressed(ClientHttpRequest request) {
+        request.getHeaders().set(HttpHeaders.ACCEPT_ENCODING, FileUploadCompression.GZIP);
+    }
+    
+    private static long copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[FileSystemDocumentDao.CHUNK_SIZE];
+        long count = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+            count += read;
+        }
+        return count;
+    }
+    
+    private static void deleteTempFile(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            LOG.warn("Error while deleting temporary file: " + path, e);
+        }
+    }
+    
+    /**
+     * Runs the transfers on the thread pool of the client and returns
+     * their results in the order of the transfers. If a transfer fails
+     * the transfers which did not start are cancelled.
+     */
+    private <T> List<T> invokeAll(List<Callable<T>> tasks) {
+        if(tasks.size()==1) {
+            try {
+                return Arrays.asList(tasks.get(0).call());
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                LOG.error("Error in transfer", e);
+                throw new RuntimeException("Error in transfer", e);
+            }
+        }
+        ExecutorService executorService = getExecutor();
+        List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+        for (Callable<T> task : tasks) {
+            futures.add(executorService.submit(task));
+        }
+        List<T> results = new ArrayList<T>(tasks.size());
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (ExecutionException e) {
+            cancel(futures);
+            if(e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            LOG.error("Error in transfer", e.getCause());
+            throw new RuntimeException("Error in transfer", e.getCause());
+        } catch (InterruptedException e) {
+            cancel(futures);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for transfers", e);
+        }
+    }
+    
+    private static void cancel(List<? extends Future<?>> futures) {
+        for (Future<?> future : futures) {
+            future.cancel(false);
+        }
+    }
+    
+    private synchronized ExecutorService getExecutor() {
+        if(executor==null) {
+            AtomicInteger threads = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(getParallelism(), runnable -> {
+                Thread thread = new Thread(runnable, "upload-client-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+    
+    /**
+     * Returns the url of the service without a trailing slash.
+     */
     public String getServiceUrl() {
         StringBuilder sb = new StringBuilder();
         sb.append(getProtocol()).append("://");
@@ -98,9 +489,30 @@ public class RestServiceClient implements IUploadService {
         if(getPort()!=null) {
             sb.append(":").append(getPort());
         }
-        sb.append("/").append(getBaseUrl()).append("/");
+        sb.append("/").append(getBaseUrl());
         return sb.toString();
     }
+    
+    /**
+     * Closes the pooled connections and stops the threads of parallel 
+     * transfers. A RestTemplate set with setRestTemplate is not closed.
+     */
+    @Override
+    public synchronized void close() {
+        if(executor!=null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        if(httpClient!=null) {
+            try {
+                httpClient.close();
+            } catch (IOException e) {
+                LOG.warn("Error while closing HTTP client", e);
+            }
+            httpClient = null;
+            restTemplate = null;
+        }
+    }
 
     public String getProtocol() {
         return protocol;
@@ -134,20 +546,123 @@ public class RestServiceClient implements IUploadService {
         this.baseUrl = baseUrl;
     }
 
-    public RestTemplate getRestTemplate() {
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    public int getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost;
+    }
+
+    public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    public void setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    public synchronized RestTemplate getRestTemplate() {
         if(restTemplate==null) {
             restTemplate = createRestTemplate(); 
         }
         return restTemplate;
     }
 
-    public void setRestTemplate(RestTemplate restTemplate) {
+    public synchronized void setRestTemplate(RestTemplate restTemplate) {
         this.restTemplate = restTemplate;
     }
 
+    /**
+     * Creates a RestTemplate with a pool of keep-alive connections which
+     * streams request bodies. Content codings are handled by the client, 
+     * not by HttpClient.
+     */
     private RestTemplate createRestTemplate() {
-        restTemplate = new RestTemplate();
-        return restTemplate;
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(getMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(getMaxConnectionsPerHost());
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(getConnectTimeout())
+                .setSocketTimeout(getReadTimeout())
+                .build();
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .disableContentCompression()
+                .evictIdleConnections(30, TimeUnit.SECONDS)
+                .build();
+        HttpComponentsClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
+        requestFactory.setBufferRequestBody(false);
+        return new RestTemplate(requestFactory);
+    }
+    
+    /**
+     * A resource for a multipart request with the file data in memory
+     * which provides the file name.
+     */
+    private static class FileNameByteArrayResource extends ByteArrayResource {
+        
+        private final String fileName;
+
+        public FileNameByteArrayResource(byte[] data, String fileName) {
+            super(data);
+            this.fileName = fileName;
+        }
+
+        @Override
+        public String getFilename() {
+            return fileName;
+        }
+    }
+    
+    /**
+     * A resource for a multipart request which streams the file data and
+     * provides the file name. The content length is unknown so the stream
+     * is read only once.
+     */
+    private static class FileNameInputStreamResource extends InputStreamResource {
+        
+        private final String fileName;
+
+        public FileNameInputStreamResource(InputStream inputStream, String fileName) {
+            super(inputStream);
+            this.fileName = fileName;
+        }
+
+        @Override
+        public String getFilename() {
+            return fileName;
+        }
+
+        @Override
+        public long contentLength() {
+            return -1;
+        }
     }
 
 }
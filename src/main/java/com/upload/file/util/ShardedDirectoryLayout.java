@@ -0,0 +1,167 @@
+package com.upload.file.util;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Directory layout of the uploads directory.
+ *
+ * The folder of a file is not created directly in the uploads directory,
+ * but two levels below it, named after the first two pairs of characters
+ * of the UUID: uploads/ab/cd/abcd1234-.... Each directory then holds at
+ * most a few hundred entries, even with millions of files in the store.
+ *
+ * The folders are listed by walking the directories with a DirectoryStream,
+ * so the names of all folders are never held in memory.
+ *
+ * Stores of older versions have the folders directly in the uploads
+ * directory. They are moved to the sharded layout by migrate, which can
+ * also be run as a standalone tool:
+ *
+ * java -cp FileUpload-0.0.1-SNAPSHOT.jar -Dloader.main=com.upload.file.util.ShardedDirectoryLayout
+ *      org.springframework.boot.loader.PropertiesLauncher [uploads directory]
+ *
+ * @author Poornima
+ */
+public final class ShardedDirectoryLayout {
+
+    private static final Logger LOG = Logger.getLogger(ShardedDirectoryLayout.class);
+
+    /** Number of characters of the UUID used for one directory level */
+    public static final int PREFIX_LENGTH = 2;
+
+    /** Number of directory levels between the root and the folder of a file */
+    public static final int LEVELS = 2;
+
+    /**
+     * Visits the folders of the files in the store.
+     */
+    public interface FolderVisitor {
+
+        /**
+         * Called for each folder of a file.
+         *
+         * @param uuid The UUID of the file
+         * @param folder The folder of the file
+         * @throws IOException
+         */
+        void visit(String uuid, Path folder) throws IOException;
+    }
+
+    private ShardedDirectoryLayout() {
+    }
+
+    /**
+     * Returns the folder of the file with the given UUID.
+     *
+     * @param root The uploads directory
+     * @param uuid The UUID of a file
+     * @return The folder of the file
+     */
+    public static Path resolve(Path root, String uuid) {
+        Path path = root;
+        if(uuid.length() > PREFIX_LENGTH * LEVELS) {
+            for (int level = 0; level < LEVELS; level++) {
+                path = path.resolve(uuid.substring(level * PREFIX_LENGTH, (level + 1) * PREFIX_LENGTH));
+            }
+        }
+        return path.resolve(uuid);
+    }
+
+    /**
+     * Walks all folders of files in the store. Only one directory per
+     * level is open at a time.
+     *
+     * @param root The uploads directory
+     * @param visitor The visitor called for each folder
+     * @throws IOException
+     */
+    public static void walk(Path root, FolderVisitor visitor) throws IOException {
+        if(!Files.isDirectory(root)) {
+            return;
+        }
+        walk(root, 0, visitor);
+    }
+
+    private static void walk(Path directory, int level, FolderVisitor visitor) throws IOException {
+        if(level == LEVELS) {
+            try (DirectoryStream<Path> folders = Files.newDirectoryStream(directory)) {
+                for (Path folder : folders) {
+                    if(Files.isDirectory(folder)) {
+                        visitor.visit(folder.getFileName().toString(), folder);
+                    }
+                }
+            }
+            return;
+        }
+        try (DirectoryStream<Path> shards = Files.newDirectoryStream(directory, ShardedDirectoryLayout::isShard)) {
+            for (Path shard : shards) {
+                walk(shard, level + 1, visitor);
+            }
+        }
+    }
+
+    private static boolean isShard(Path path) {
+        return path.getFileName().toString().length() == PREFIX_LENGTH && Files.isDirectory(path);
+    }
+
+    /**
+     * Moves folders of files which are directly in the uploads directory
+     * to the sharded layout. A folder is moved with an atomic rename, so
+     * an interrupted migration can be continued by running it again.
+     *
+     * @param root The uploads directory
+     * @return The number of moved folders
+     * @throws IOException
+     */
+    public static int migrate(Path root) throws IOException {
+        if(!Files.isDirectory(root)) {
+            return 0;
+        }
+        int count = 0;
+        int moved;
+        // the directory is modified while it is listed, so it is listed
+        // again until no folder is left
+        do {
+            moved = 0;
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(root)) {
+                for (Path entry : entries) {
+                    String uuid = entry.getFileName().toString();
+                    if(uuid.length() <= PREFIX_LENGTH * LEVELS || !Files.isDirectory(entry)) {
+                        continue;
+                    }
+                    Path target = resolve(root, uuid);
+                    Files.createDirectories(target.getParent());
+                    Files.move(entry, target, StandardCopyOption.ATOMIC_MOVE);
+                    moved++;
+                    if((count + moved) % 10000 == 0) {
+                        LOG.info("Moved " + (count + moved) + " folders to the sharded layout");
+                    }
+                }
+            }
+            count += moved;
+        } while (moved > 0);
+        if(count > 0) {
+            LOG.info("Moved " + count + " folders in " + root + " to the sharded layout");
+        }
+        return count;
+    }
+
+    /**
+     * Migrates a store to the sharded layout.
+     *
+     * @param args The uploads directory, by default uploads in the working directory
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        Path root = Paths.get(args.length > 0 ? args[0] : FileSystemDocumentDao.DIRECTORY);
+        int count = migrate(root);
+        System.out.println("Moved " + count + " folders in " + root.toAbsolutePath() + " to the sharded layout");
+    }
+}
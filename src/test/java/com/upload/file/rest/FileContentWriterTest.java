@@ -0,0 +1,196 @@
+package com.upload.file.rest;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.UUID;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockServletContext;
+
+import com.upload.file.util.FileUploadContent;
+import com.upload.file.util.FileUploadMetadata;
+import com.upload.file.util.FileUploadMetrics;
+
+public class FileContentWriterTest {
+
+	private static final byte[] DATA = "0123456789abcdefghijklmnopqrstuvwxyz".getBytes(StandardCharsets.US_ASCII);
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private FileContentWriter writer;
+	private FileUploadMetrics metrics;
+	private FileUploadContent content;
+	private MockHttpServletRequest request;
+	private MockHttpServletResponse response;
+
+	@Before
+	public void setUp() throws IOException {
+		metrics = new FileUploadMetrics();
+		writer = new FileContentWriter();
+		writer.setMetrics(metrics);
+		File file = folder.newFile("data.bin");
+		Files.write(file.toPath(), DATA);
+		FileUploadMetadata metadata = new FileUploadMetadata(UUID.randomUUID().toString(), "data.bin", "Poornima",
+				LocalDate.of(2017, 6, 1));
+		metadata.setSize(DATA.length);
+		metadata.setCrc32c("0badf00d");
+		content = new FileUploadContent(metadata, file);
+		request = new MockHttpServletRequest(new TextServletContext(), "GET", "/files/" + metadata.getUuid());
+		response = new MockHttpServletResponse();
+	}
+
+	@Test
+	public void wholeContent() throws IOException {
+		writer.write(content, request, response);
+
+		assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+		assertEquals(FileContentWriter.BYTES_UNIT, response.getHeader(HttpHeaders.ACCEPT_RANGES));
+		assertEquals(writer.getETag(content, false), response.getHeader(HttpHeaders.ETAG));
+		assertEquals("crc32c=C63wDQ==", response.getHeader(FileContentWriter.DIGEST));
+		assertEquals("text/plain", response.getContentType());
+		assertArrayEquals(DATA, response.getContentAsByteArray());
+		assertEquals(DATA.length, metrics.getCounter(FileUploadMetrics.BYTES_SENT).sum());
+	}
+
+	@Test
+	public void singleRange() throws IOException {
+		request.addHeader(HttpHeaders.RANGE, "bytes=10-19");
+
+		writer.write(content, request, response);
+
+		assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+		assertEquals("bytes 10-19/36", response.getHeader(HttpHeaders.CONTENT_RANGE));
+		assertEquals("10", response.getHeader(HttpHeaders.CONTENT_LENGTH));
+		assertEquals("abcdefghij", response.getContentAsString());
+	}
+
+	@Test
+	public void suffixRange() throws IOException {
+		request.addHeader(HttpHeaders.RANGE, "bytes=-6");
+
+		writer.write(content, request, response);
+
+		assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+		assertEquals("bytes 30-35/36", response.getHeader(HttpHeaders.CONTENT_RANGE));
+		assertEquals("uvwxyz", response.getContentAsString());
+	}
+
+	@Test
+	public void multipleRanges() throws IOException {
+		request.addHeader(HttpHeaders.RANGE, "bytes=0-2,30-");
+
+		writer.write(content, request, response);
+
+		assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+		String contentType = response.getContentType();
+		assertTrue(contentType, contentType.startsWith("multipart/byteranges; boundary="));
+		String boundary = contentType.substring(contentType.indexOf('=') + 1);
+		String body = response.getContentAsString();
+		assertEquals(String.valueOf(body.length()), response.getHeader(HttpHeaders.CONTENT_LENGTH));
+		assertEquals(body.length(), metrics.getCounter(FileUploadMetrics.BYTES_SENT).sum());
+		String[] parts = body.split("\r\n--" + boundary);
+		assertEquals(Arrays.toString(parts), 4, parts.length);
+		assertTrue(parts[1], parts[1].contains("Content-Type: text/plain\r\n"));
+		assertTrue(parts[1], parts[1].contains("Content-Range: bytes 0-2/36\r\n\r\n"));
+		assertTrue(parts[1], parts[1].endsWith("\r\n\r\n012"));
+		assertTrue(parts[2], parts[2].contains("Content-Range: bytes 30-35/36\r\n\r\n"));
+		assertTrue(parts[2], parts[2].endsWith("\r\n\r\nuvwxyz"));
+		assertEquals("--\r\n", parts[3]);
+	}
+
+	@Test
+	public void unsatisfiableRange() throws IOException {
+		request.addHeader(HttpHeaders.RANGE, "bytes=36-40");
+
+		writer.write(content, request, response);
+
+		assertEquals(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE, response.getStatus());
+		assertEquals("bytes */36", response.getHeader(HttpHeaders.CONTENT_RANGE));
+	}
+
+	@Test
+	public void ifRangeWithCurrentETag() throws IOException {
+		request.addHeader(HttpHeaders.RANGE, "bytes=0-3");
+		request.addHeader(HttpHeaders.IF_RANGE, writer.getETag(content, false));
+
+		writer.write(content, request, response);
+
+		assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+		assertEquals("0123", response.getContentAsString());
+	}
+
+	@Test
+	public void ifRangeWithOtherETagSendsWholeContent() throws IOException {
+		request.addHeader(HttpHeaders.RANGE, "bytes=0-3");
+		request.addHeader(HttpHeaders.IF_RANGE, "\"changed\"");
+
+		writer.write(content, request, response);
+
+		assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+		assertNull(response.getHeader(HttpHeaders.CONTENT_RANGE));
+		assertArrayEquals(DATA, response.getContentAsByteArray());
+	}
+
+	@Test
+	public void ifRangeWithLastModified() throws IOException {
+		request.addHeader(HttpHeaders.RANGE, "bytes=0-3");
+		request.addHeader(HttpHeaders.IF_RANGE, content.getLastModified());
+
+		writer.write(content, request, response);
+
+		assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+		assertEquals("0123", response.getContentAsString());
+	}
+
+	@Test
+	public void ifNoneMatchIsNotModified() throws IOException {
+		request.addHeader(HttpHeaders.IF_NONE_MATCH, writer.getETag(content, false));
+		request.addHeader(HttpHeaders.RANGE, "bytes=0-3");
+
+		writer.write(content, request, response);
+
+		assertEquals(HttpServletResponse.SC_NOT_MODIFIED, response.getStatus());
+		assertEquals(0, response.getContentAsByteArray().length);
+		assertEquals(0, metrics.getCounter(FileUploadMetrics.BYTES_SENT).sum());
+	}
+
+	@Test
+	public void ifNoneMatchWithOtherETag() throws IOException {
+		request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"changed\"");
+
+		writer.write(content, request, response);
+
+		assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+		assertArrayEquals(DATA, response.getContentAsByteArray());
+	}
+
+	/**
+	 * Maps all files to text/plain, the mock context needs the Java
+	 * Activation Framework, which is not part of Java 9 and later.
+	 */
+	private static class TextServletContext extends MockServletContext {
+
+		@Override
+		public String getMimeType(String filePath) {
+			return "text/plain";
+		}
+	}
+}
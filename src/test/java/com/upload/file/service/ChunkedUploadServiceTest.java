@@ -0,0 +1,315 @@
+package com.upload.file.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.upload.file.util.ChunkedUploadSession;
+import com.upload.file.util.FileUploadMetadata;
+import com.upload.file.util.FileUploadMetadataCodec;
+
+public class ChunkedUploadServiceTest {
+
+	private static final LocalDate DATE = LocalDate.of(2017, 6, 1);
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private ChunkedUploadService service;
+	private IUploadService uploadService;
+	private List<byte[]> saved;
+
+	@Before
+	public void setUp() {
+		saved = new ArrayList<byte[]>();
+		uploadService = mock(IUploadService.class);
+		when(uploadService.save(any(FileUploadMetadata.class), any(Path.class))).then(invocation -> {
+			byte[] data = Files.readAllBytes(invocation.getArgumentAt(1, Path.class));
+			synchronized (saved) {
+				saved.add(data);
+			}
+			return invocation.getArgumentAt(0, FileUploadMetadata.class);
+		});
+		service = new ChunkedUploadService();
+		service.setUploadService(uploadService);
+		service.setStagingDirectory(folder.getRoot().getPath());
+		service.init();
+	}
+
+	@After
+	public void tearDown() {
+		service.close();
+	}
+
+	@Test
+	public void completeSavesPartsInOrder() {
+		String uploadId = initiate();
+		service.savePart(uploadId, 2, stream("world"));
+		service.savePart(uploadId, 1, stream("hello "));
+
+		FileUploadMetadata metadata = service.complete(uploadId);
+
+		assertEquals("report.txt", metadata.getFileName());
+		assertEquals(1, saved.size());
+		assertEquals("hello world", new String(saved.get(0), StandardCharsets.UTF_8));
+		assertNull(service.getSession(uploadId));
+		assertFalse(Files.exists(Paths.get(service.getStagingDirectory(), uploadId + ChunkedUploadService.COMPLETING_SUFFIX)));
+	}
+
+	@Test
+	public void completeWithMissingPartKeepsSession() {
+		String uploadId = initiate();
+		service.savePart(uploadId, 1, stream("hello "));
+		service.savePart(uploadId, 3, stream("!"));
+
+		try {
+			service.complete(uploadId);
+			fail("Part 2 is missing");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		assertTrue(saved.isEmpty());
+		assertEquals(2, service.getSession(uploadId).getParts().size());
+
+		service.savePart(uploadId, 2, stream("world"));
+		service.complete(uploadId);
+		assertEquals("hello world!", new String(saved.get(0), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void singlePartIsKeptIfSaveFails() throws Exception {
+		doAnswer(invocation -> {
+			// the upload service takes over the file
+			Files.delete(invocation.getArgumentAt(1, Path.class));
+			throw new IllegalStateException("Disk full");
+		}).when(uploadService).save(any(FileUploadMetadata.class), any(Path.class));
+		String uploadId = initiate();
+		service.savePart(uploadId, 1, stream("hello"));
+
+		try {
+			service.complete(uploadId);
+			fail("The file can not be saved");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+		assertEquals(1, service.getSession(uploadId).getParts().size());
+		assertFalse(Files.exists(Paths.get(service.getStagingDirectory(), uploadId,
+				ChunkedUploadService.ASSEMBLED_FILE_NAME)));
+	}
+
+	@Test
+	public void concurrentCompletesSaveOnce() throws Exception {
+		CountDownLatch saving = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger saves = new AtomicInteger();
+		doAnswer(invocation -> {
+			saves.incrementAndGet();
+			saving.countDown();
+			release.await(10, TimeUnit.SECONDS);
+			return invocation.getArgumentAt(0, FileUploadMetadata.class);
+		}).when(uploadService).save(any(FileUploadMetadata.class), any(Path.class));
+		String uploadId = initiate();
+		service.savePart(uploadId, 1, stream("hello"));
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<FileUploadMetadata> first = executor.submit(() -> service.complete(uploadId));
+			assertTrue(saving.await(10, TimeUnit.SECONDS));
+			try {
+				service.complete(uploadId);
+				fail("The upload is being completed");
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+			release.countDown();
+			assertNotNull(first.get(10, TimeUnit.SECONDS));
+		} finally {
+			executor.shutdownNow();
+		}
+		assertEquals(1, saves.get());
+	}
+
+	@Test
+	public void existsChecksSessionFile() {
+		String uploadId = initiate();
+
+		assertTrue(service.exists(uploadId));
+		assertFalse(service.exists(UUID.randomUUID().toString()));
+		assertFalse(service.exists("../" + uploadId));
+
+		service.abort(uploadId);
+		assertFalse(service.exists(uploadId));
+	}
+
+	@Test
+	public void partOfUnknownUploadIsRejected() {
+		try {
+			service.savePart(UUID.randomUUID().toString(), 1, stream("hello"));
+			fail("The upload does not exist");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void partRacingWithCompleteIsRejected() throws Exception {
+		String uploadId = initiate();
+		Path sessionPath = Paths.get(service.getStagingDirectory(), uploadId);
+		Path claimedPath = sessionPath.resolveSibling(uploadId + ChunkedUploadService.COMPLETING_SUFFIX);
+		// the session is claimed while the part is received
+		InputStream data = new ByteArrayInputStream("hello".getBytes(StandardCharsets.UTF_8)) {
+			@Override
+			public synchronized int read(byte[] b, int off, int len) {
+				try {
+					if(Files.exists(sessionPath)) {
+						Files.move(sessionPath, claimedPath);
+					}
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+				return super.read(b, off, len);
+			}
+		};
+
+		try {
+			service.savePart(uploadId, 1, data);
+			fail("The upload is being completed");
+		} catch (IllegalArgumentException e) {
+			// expected
+		} finally {
+			Files.move(claimedPath, sessionPath);
+		}
+	}
+
+	@Test
+	public void sweepDeletesExpiredSessions() throws Exception {
+		service.setSessionTtl(3600);
+		String expired = initiate();
+		service.savePart(expired, 1, stream("old"));
+		String fresh = initiate();
+		Path expiredPath = Paths.get(service.getStagingDirectory(), expired);
+		Files.setLastModifiedTime(expiredPath, FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(2)));
+
+		assertTrue(service.sweep() >= 1);
+
+		assertFalse(Files.exists(expiredPath));
+		assertNull(service.getSession(expired));
+		assertNotNull(service.getSession(fresh));
+	}
+
+	@Test
+	public void sweepDuringCompleteKeepsParts() throws Exception {
+		service.setSessionTtl(3600);
+		AtomicInteger swept = new AtomicInteger();
+		doAnswer(invocation -> {
+			// the last part was received before the session TTL
+			swept.set(service.sweep());
+			saved.add(Files.readAllBytes(invocation.getArgumentAt(1, Path.class)));
+			return invocation.getArgumentAt(0, FileUploadMetadata.class);
+		}).when(uploadService).save(any(FileUploadMetadata.class), any(Path.class));
+		String uploadId = initiate();
+		service.savePart(uploadId, 1, stream("hello "));
+		service.savePart(uploadId, 2, stream("world"));
+		Files.setLastModifiedTime(Paths.get(service.getStagingDirectory(), uploadId),
+				FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(2)));
+
+		service.complete(uploadId);
+
+		assertEquals(0, swept.get());
+		assertEquals("hello world", new String(saved.get(0), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void sweepDeletesInterruptedCompletions() throws Exception {
+		service.setCompletionTtl(3600);
+		String uploadId = initiate();
+		Path claimedPath = Files.move(Paths.get(service.getStagingDirectory(), uploadId),
+				Paths.get(service.getStagingDirectory(), uploadId + ChunkedUploadService.COMPLETING_SUFFIX));
+
+		service.sweep();
+		assertTrue(Files.exists(claimedPath));
+
+		Files.setLastModifiedTime(claimedPath, FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(2)));
+		service.sweep();
+		assertFalse(Files.exists(claimedPath));
+	}
+
+	@Test
+	public void fileNameIsReducedToLastComponent() {
+		ChunkedUploadSession session = service.initiate("../../report.txt", "Poornima", DATE);
+
+		assertEquals("report.txt", session.getFileName());
+		assertEquals("report.txt", service.getSession(session.getUploadId()).getFileName());
+	}
+
+	@Test
+	public void sessionIsStoredWithCodec() throws Exception {
+		String uploadId = initiate();
+
+		byte[] bytes = Files.readAllBytes(Paths.get(service.getStagingDirectory(), uploadId,
+				ChunkedUploadService.SESSION_FILE_NAME));
+
+		assertEquals(FileUploadMetadataCodec.MAGIC, bytes[0]);
+		ChunkedUploadSession session = service.getSession(uploadId);
+		assertEquals("report.txt", session.getFileName());
+		assertEquals("Poornima", session.getAuthorName());
+		assertEquals(DATE, session.getUploadDate());
+	}
+
+	@Test
+	public void legacySessionIsRead() throws Exception {
+		String uploadId = UUID.randomUUID().toString();
+		Path sessionPath = Files.createDirectories(Paths.get(service.getStagingDirectory(), uploadId));
+		try (OutputStream out = Files.newOutputStream(sessionPath.resolve(ChunkedUploadService.LEGACY_SESSION_FILE_NAME))) {
+			new FileUploadMetadata(uploadId, "legacy.txt", "Poornima", DATE).createProperties().store(out, null);
+		}
+		service.savePart(uploadId, 1, stream("legacy"));
+
+		assertEquals("legacy.txt", service.getSession(uploadId).getFileName());
+		service.complete(uploadId);
+		assertArrayEquals("legacy".getBytes(StandardCharsets.UTF_8), saved.get(0));
+	}
+
+	private String initiate() {
+		return service.initiate("report.txt", "Poornima", DATE).getUploadId();
+	}
+
+	private static InputStream stream(String data) {
+		return new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8));
+	}
+}
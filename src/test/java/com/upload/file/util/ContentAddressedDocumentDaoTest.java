@@ -0,0 +1,103 @@
+package com.upload.file.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ContentAddressedDocumentDaoTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private String directory;
+	private ContentAddressedDocumentDao dao;
+	private byte[] data;
+
+	@Before
+	public void setUp() {
+		directory = new File(folder.getRoot(), FileSystemDocumentDao.DIRECTORY).getPath();
+		dao = open(false);
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 200; i++) {
+			text.append("line ").append(i).append(" of a compressible text file\n");
+		}
+		data = text.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	@After
+	public void tearDown() {
+		dao.close();
+	}
+
+	@Test
+	public void identicalFilesShareOneBlob() throws IOException {
+		FileUploadMetadata first = insert("first.txt");
+		FileUploadMetadata second = insert("second.txt");
+
+		assertEquals(first.getSha256(), second.getSha256());
+		assertNull(second.getContentEncoding());
+		assertEquals(1, countBlobs());
+		assertEquals(2, dao.getReferenceCount(first.getSha256()));
+
+		// the counts are rebuilt from the meta data
+		dao.close();
+		dao = open(false);
+		assertEquals(2, dao.getReferenceCount(first.getSha256()));
+	}
+
+	@Test
+	public void compressedCopyHasOwnBlob() throws IOException {
+		FileUploadMetadata plain = insert("plain.txt");
+		dao.close();
+		dao = open(true);
+		FileUploadMetadata compressed = insert("compressed.txt");
+
+		assertEquals(plain.getSha256(), compressed.getSha256());
+		assertEquals(FileUploadCompression.GZIP, compressed.getContentEncoding());
+		assertNotEquals(dao.getFilePath(plain), dao.getFilePath(compressed));
+		assertEquals(2, countBlobs());
+		assertEquals(1, dao.getReferenceCount(plain.getSha256()));
+		assertEquals(1, dao.getReferenceCount(plain.getSha256() + "." + FileUploadCompression.GZIP));
+	}
+
+	private ContentAddressedDocumentDao open(boolean compressionEnabled) {
+		ContentAddressedDocumentDao fileDao = new ContentAddressedDocumentDao();
+		fileDao.setDirectory(directory);
+		fileDao.setCompressionEnabled(compressionEnabled);
+		fileDao.setJournalEnabled(false);
+		fileDao.setFsyncEnabled(false);
+		fileDao.init();
+		return fileDao;
+	}
+
+	private FileUploadMetadata insert(String fileName) {
+		FileUploadMetadata metadata = new FileUploadMetadata(fileName, LocalDate.of(2017, 6, 1), "Poornima");
+		dao.insert(metadata, new ByteArrayInputStream(data));
+		return metadata;
+	}
+
+	private long countBlobs() throws IOException {
+		Path blobs = Paths.get(directory + ContentAddressedDocumentDao.BLOB_SUFFIX);
+		try (Stream<Path> paths = Files.walk(blobs)) {
+			return paths.filter(Files::isRegularFile)
+					.filter(path -> !path.getParent().getFileName().toString().equals("tmp"))
+					.count();
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package com.upload.file.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileSystemDocumentDaoTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private String directory;
+	private FileSystemDocumentDao dao;
+
+	@Before
+	public void setUp() {
+		directory = new File(folder.getRoot(), FileSystemDocumentDao.DIRECTORY).getPath();
+		dao = open(true);
+	}
+
+	@After
+	public void tearDown() {
+		dao.close();
+	}
+
+	@Test
+	public void corruptMetadataIsSkipped() throws IOException {
+		List<FileUploadMetadata> files = new ArrayList<FileUploadMetadata>();
+		for (int i = 0; i < 3; i++) {
+			files.add(insert("file-" + i + ".txt"));
+		}
+		FileUploadMetadata corrupt = files.get(1);
+		// bit rot or a version written by a newer release
+		Files.write(ShardedDirectoryLayout.resolve(Paths.get(directory), corrupt.getUuid())
+				.resolve(FileSystemDocumentDao.META_DATA_FILE_NAME),
+				new byte[] { FileUploadMetadataCodec.MAGIC, FileUploadMetadataCodec.VERSION + 1, 3 });
+		dao.close();
+
+		// the index is rebuilt from the meta data files
+		dao = open(true);
+		assertEquals(2, dao.find(new FileUploadQuery()).size());
+		assertNull(dao.loadMetadata(corrupt.getUuid()));
+		assertNotNull(dao.loadMetadata(files.get(2).getUuid()));
+		dao.close();
+
+		// queries scan the meta data files
+		dao = open(false);
+		assertEquals(2, dao.find(new FileUploadQuery()).size());
+		assertNull(dao.loadMetadata(corrupt.getUuid()));
+		assertEquals("file-0.txt", dao.loadMetadata(files.get(0).getUuid()).getFileName());
+	}
+
+	private FileSystemDocumentDao open(boolean indexEnabled) {
+		FileSystemDocumentDao fileDao = new FileSystemDocumentDao();
+		fileDao.setDirectory(directory);
+		fileDao.setIndexEnabled(indexEnabled);
+		fileDao.setJournalEnabled(false);
+		fileDao.setFsyncEnabled(false);
+		fileDao.init();
+		return fileDao;
+	}
+
+	private FileUploadMetadata insert(String fileName) {
+		FileUploadMetadata metadata = new FileUploadMetadata(fileName, LocalDate.of(2017, 6, 1), "Poornima");
+		dao.insert(metadata, new ByteArrayInputStream(fileName.getBytes(StandardCharsets.UTF_8)));
+		return metadata;
+	}
+}
@@ -0,0 +1,99 @@
+package com.upload.file.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeNotNull;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.Checksum;
+
+import org.junit.Test;
+
+public class FileUploadChecksumsTest {
+
+	private static final byte[] CHECK = "123456789".getBytes(StandardCharsets.US_ASCII);
+
+	@Test
+	public void crc32cCheckValue() {
+		FileUploadChecksums.Crc32c crc = new FileUploadChecksums.Crc32c();
+		crc.update(CHECK, 0, CHECK.length);
+
+		assertEquals(0xE3069283L, crc.getValue());
+		assertEquals("e3069283", FileUploadChecksums.toHex(crc));
+		assertEquals("e3069283", FileUploadChecksums.crc32c(CHECK, 0, CHECK.length));
+	}
+
+	@Test
+	public void crc32cMatchesJavaUtilZip() throws ReflectiveOperationException {
+		Class<?> type = findClass("java.util.zip.CRC32C");
+		// java.util.zip.CRC32C is available on Java 9 and later
+		assumeNotNull(type);
+		Random random = new Random(42);
+		for (int length : new int[] { 0, 1, 7, 8, 9, 63, 64, 65, 1000, 65536 + 3 }) {
+			byte[] data = new byte[length + 5];
+			random.nextBytes(data);
+			Checksum expected = (Checksum) type.getConstructor().newInstance();
+			expected.update(data, 5, length);
+			FileUploadChecksums.Crc32c actual = new FileUploadChecksums.Crc32c();
+			actual.update(data, 5, length);
+
+			assertEquals("Length " + length, expected.getValue(), actual.getValue());
+		}
+	}
+
+	@Test
+	public void crc32cUpdatesInPieces() {
+		byte[] data = new byte[1000];
+		new Random(7).nextBytes(data);
+		FileUploadChecksums.Crc32c whole = new FileUploadChecksums.Crc32c();
+		whole.update(data, 0, data.length);
+		FileUploadChecksums.Crc32c pieces = new FileUploadChecksums.Crc32c();
+		pieces.update(data, 0, 3);
+		pieces.update(data[3]);
+		pieces.update(data, 4, 500);
+		pieces.update(data, 504, data.length - 504);
+
+		assertEquals(whole.getValue(), pieces.getValue());
+
+		pieces.reset();
+		pieces.update(CHECK, 0, CHECK.length);
+		assertEquals(0xE3069283L, pieces.getValue());
+	}
+
+	@Test
+	public void newCrc32cComputesCrc32c() {
+		Checksum crc = FileUploadChecksums.newCrc32c();
+		FileUploadChecksums.update(crc, ByteBuffer.wrap(CHECK));
+
+		assertEquals("e3069283", FileUploadChecksums.toHex(crc));
+	}
+
+	@Test
+	public void updateWithDirectBuffer() {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(CHECK.length);
+		buffer.put(CHECK).flip();
+		Checksum crc = FileUploadChecksums.newCrc32c();
+		FileUploadChecksums.update(crc, buffer);
+
+		assertEquals("e3069283", FileUploadChecksums.toHex(crc));
+		assertEquals(0, buffer.position());
+	}
+
+	@Test
+	public void sha256AndHex() {
+		String sha256 = FileUploadChecksums.sha256(CHECK, 0, CHECK.length);
+
+		assertEquals("15e2b0d3c33891ebb0f1ef609ec419420c20e320ce94c65fbc8c3312448eb225", sha256);
+		assertEquals("FeKw08M4keuw8e9gnsQZQgwg4yDOlMZfvIwzEkSOsiU=", FileUploadChecksums.hexToBase64(sha256));
+		assertEquals("00ff10", FileUploadChecksums.toHex(new byte[] { 0, (byte) 0xff, 0x10 }));
+	}
+
+	private static Class<?> findClass(String name) {
+		try {
+			return Class.forName(name);
+		} catch (ClassNotFoundException e) {
+			return null;
+		}
+	}
+}
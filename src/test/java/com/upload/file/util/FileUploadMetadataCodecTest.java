@@ -0,0 +1,126 @@
+package com.upload.file.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.UUID;
+
+import org.junit.Test;
+
+public class FileUploadMetadataCodecTest {
+
+	@Test
+	public void roundTripOfAllFields() throws IOException {
+		FileUploadMetadata metadata = createMetadata(UUID.randomUUID().toString());
+
+		byte[] encoded = FileUploadMetadataCodec.encode(metadata);
+
+		assertEquals(FileUploadMetadataCodec.MAGIC, encoded[0]);
+		assertFields(metadata, FileUploadMetadataCodec.decode(encoded));
+	}
+
+	@Test
+	public void roundTripOfNonCanonicalUuid() throws IOException {
+		FileUploadMetadata metadata = createMetadata("Report-2017");
+
+		assertFields(metadata, FileUploadMetadataCodec.decode(FileUploadMetadataCodec.encode(metadata)));
+	}
+
+	@Test
+	public void absentFieldsAreNotWritten() throws IOException {
+		FileUploadMetadata metadata = new FileUploadMetadata(UUID.randomUUID().toString(), "a.txt", null, null);
+
+		FileUploadMetadata decoded = FileUploadMetadataCodec.decode(FileUploadMetadataCodec.encode(metadata));
+
+		assertEquals(metadata.getUuid(), decoded.getUuid());
+		assertNull(decoded.getAuthorName());
+		assertNull(decoded.getUploadDate());
+		assertNull(decoded.getSha256());
+		assertEquals(FileUploadMetadata.UNKNOWN_SIZE, decoded.getSize());
+	}
+
+	@Test
+	public void decodeMovesBufferToEndOfMetadata() throws IOException {
+		byte[] encoded = FileUploadMetadataCodec.encode(createMetadata(UUID.randomUUID().toString()));
+		ByteBuffer buffer = ByteBuffer.allocate(encoded.length + 8);
+		buffer.put(encoded).putLong(42);
+		buffer.flip();
+
+		FileUploadMetadataCodec.decode(buffer);
+
+		assertEquals(42, buffer.getLong());
+	}
+
+	@Test
+	public void unknownFieldsAreSkipped() throws IOException {
+		FileUploadMetadata metadata = createMetadata(UUID.randomUUID().toString());
+		byte[] encoded = FileUploadMetadataCodec.encode(metadata);
+		// a field of a newer version in front of the end tag
+		ByteBuffer buffer = ByteBuffer.allocate(encoded.length + 5);
+		buffer.put(encoded, 0, encoded.length - 1);
+		buffer.put((byte) 99).put((byte) 3).put(new byte[] { 1, 2, 3 });
+		buffer.put((byte) FileUploadMetadataCodec.TAG_END);
+
+		assertFields(metadata, FileUploadMetadataCodec.decode(buffer.array()));
+	}
+
+	@Test
+	public void decodeStoredProperties() throws IOException {
+		FileUploadMetadata metadata = createMetadata(UUID.randomUUID().toString());
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		metadata.createProperties().store(out, "File upload meta data");
+		byte[] stored = out.toByteArray();
+
+		assertFalse(FileUploadMetadataCodec.isBinary(ByteBuffer.wrap(stored)));
+		assertFields(metadata, FileUploadMetadataCodec.decode(stored));
+	}
+
+	@Test(expected = IOException.class)
+	public void unsupportedVersion() throws IOException {
+		byte[] encoded = FileUploadMetadataCodec.encode(createMetadata(UUID.randomUUID().toString()));
+		encoded[1] = FileUploadMetadataCodec.VERSION + 1;
+
+		FileUploadMetadataCodec.decode(encoded);
+	}
+
+	@Test(expected = IOException.class)
+	public void truncatedMetadata() throws IOException {
+		byte[] encoded = FileUploadMetadataCodec.encode(createMetadata(UUID.randomUUID().toString()));
+		ByteBuffer buffer = ByteBuffer.wrap(encoded, 0, encoded.length - 10);
+
+		FileUploadMetadataCodec.decode(buffer);
+	}
+
+	@Test
+	public void isBinary() {
+		assertTrue(FileUploadMetadataCodec.isBinary(ByteBuffer.wrap(new byte[] { FileUploadMetadataCodec.MAGIC })));
+		assertFalse(FileUploadMetadataCodec.isBinary(ByteBuffer.allocate(0)));
+	}
+
+	private static void assertFields(FileUploadMetadata expected, FileUploadMetadata actual) {
+		assertEquals(expected.getUuid(), actual.getUuid());
+		assertEquals(expected.getFileName(), actual.getFileName());
+		assertEquals(expected.getAuthorName(), actual.getAuthorName());
+		assertEquals(expected.getUploadDate(), actual.getUploadDate());
+		assertEquals(expected.getSha256(), actual.getSha256());
+		assertEquals(expected.getSize(), actual.getSize());
+		assertEquals(expected.getContentEncoding(), actual.getContentEncoding());
+		assertEquals(expected.getCrc32c(), actual.getCrc32c());
+	}
+
+	private static FileUploadMetadata createMetadata(String uuid) {
+		FileUploadMetadata metadata = new FileUploadMetadata(uuid, "Jahresbericht äöü.pdf", "Poornima",
+				LocalDate.of(2017, 6, 1));
+		metadata.setSha256("9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08");
+		metadata.setSize(123456789L);
+		metadata.setContentEncoding("gzip");
+		metadata.setCrc32c("e3069283");
+		return metadata;
+	}
+}
@@ -0,0 +1,157 @@
+package com.upload.file.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class FileUploadMetadataIndexTest {
+
+	private static final String[] AUTHORS = { "alice", "albert", "bob" };
+	private static final String[] EXTENSIONS = { "txt", "pdf", "PNG" };
+	private static final LocalDate DATE = LocalDate.of(2017, 6, 1);
+
+	private FileUploadMetadataIndex index;
+	private List<FileUploadMetadata> files;
+
+	@Before
+	public void setUp() {
+		index = new FileUploadMetadataIndex();
+		files = new ArrayList<FileUploadMetadata>();
+		for (int i = 0; i < 60; i++) {
+			// a few files share a name, so the UUID decides their order
+			FileUploadMetadata metadata = new FileUploadMetadata(String.format("%08d-0000-0000-0000-000000000000", (i * 37) % 60),
+					"file-" + (i % 25) + "." + EXTENSIONS[i % EXTENSIONS.length], AUTHORS[i % AUTHORS.length],
+					(i % 7 == 0) ? null : DATE.plusDays(i % 10));
+			if(i % 11 != 0) {
+				metadata.setSize(i * 100L);
+			}
+			files.add(metadata);
+		}
+		index.addAll(files);
+	}
+
+	@Test
+	public void getAndReplace() {
+		FileUploadMetadata first = files.get(0);
+		assertEquals(first, index.get(first.getUuid()));
+		assertNull(index.get("unknown"));
+
+		FileUploadMetadata renamed = new FileUploadMetadata(first.getUuid(), "renamed.txt", "carol", DATE);
+		index.add(renamed);
+
+		assertEquals(files.size(), index.size());
+		assertEquals(renamed, index.get(first.getUuid()));
+		assertTrue(index.find("alice", null).stream().noneMatch(metadata -> metadata.getUuid().equals(first.getUuid())));
+		assertEquals(1, index.find("carol", DATE).size());
+	}
+
+	@Test
+	public void findByAuthorAndDate() {
+		assertMatches(new FileUploadQuery("alice", null));
+		assertMatches(new FileUploadQuery(null, DATE.plusDays(3)));
+		assertMatches(new FileUploadQuery("bob", DATE.plusDays(5)));
+		assertEquals(files.size(), index.find(new FileUploadQuery()).size());
+	}
+
+	@Test
+	public void findByPrefixesExtensionAndRanges() {
+		FileUploadQuery query = new FileUploadQuery();
+		query.setAuthorPrefix("al");
+		assertMatches(query);
+
+		query = new FileUploadQuery();
+		query.setNamePrefix("file-1");
+		query.setExtension("png");
+		assertMatches(query);
+
+		query = new FileUploadQuery();
+		query.setFrom(DATE.plusDays(2));
+		query.setTo(DATE.plusDays(4));
+		assertMatches(query);
+
+		query = new FileUploadQuery();
+		query.setMinSize(1000L);
+		query.setMaxSize(3000L);
+		query.setAuthorPrefix("b");
+		assertMatches(query);
+
+		query = new FileUploadQuery();
+		query.setAuthor("nobody");
+		assertTrue(index.find(query).isEmpty());
+	}
+
+	@Test
+	public void pagesOfAllSortOrders() {
+		FileUploadQuery filtered = new FileUploadQuery();
+		filtered.setAuthorPrefix("al");
+		for (FileUploadQuery query : new FileUploadQuery[] { new FileUploadQuery(), filtered }) {
+			for (FileUploadSort sort : FileUploadSort.values()) {
+				for (boolean descending : new boolean[] { false, true }) {
+					for (int limit : new int[] { 1, 7, 100 }) {
+						assertPages(query, sort, descending, limit);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void cursorSurvivesEncoding() {
+		FileUploadPage page = index.findPage(new FileUploadQuery(), new FileUploadPage.Cursor(FileUploadSort.NAME, true), 10);
+		FileUploadPage.Cursor cursor = FileUploadPage.Cursor.decode(page.getNextCursor());
+
+		assertEquals(FileUploadSort.NAME, cursor.getSort());
+		assertTrue(cursor.isDescending());
+		FileUploadPage next = index.findPage(new FileUploadQuery(), cursor, 10);
+		assertTrue(cursor.getComparator().compare(page.getFiles().get(9), next.getFiles().get(0)) < 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidCursor() {
+		FileUploadPage.Cursor.decode("not a cursor");
+	}
+
+	/**
+	 * Reads all pages of the query and compares them with the sorted files.
+	 */
+	private void assertPages(FileUploadQuery query, FileUploadSort sort, boolean descending, int limit) {
+		Comparator<FileUploadMetadata> comparator = sort.getComparator(descending);
+		List<FileUploadMetadata> expected = files.stream().filter(query::matches).sorted(comparator).collect(Collectors.toList());
+		List<FileUploadMetadata> actual = new ArrayList<FileUploadMetadata>();
+		FileUploadPage.Cursor cursor = new FileUploadPage.Cursor(sort, descending);
+		while (true) {
+			FileUploadPage page = index.findPage(query, cursor, limit);
+			assertTrue(page.getFiles().size() <= limit);
+			actual.addAll(page.getFiles());
+			if(page.getNextCursor()==null) {
+				break;
+			}
+			assertEquals(limit, page.getFiles().size());
+			cursor = FileUploadPage.Cursor.decode(page.getNextCursor());
+		}
+		assertEquals(sort + (descending ? " desc" : "") + " limit " + limit, uuids(expected), uuids(actual));
+	}
+
+	private void assertMatches(FileUploadQuery query) {
+		List<FileUploadMetadata> expected = files.stream().filter(query::matches).collect(Collectors.toList());
+		assertTrue(!expected.isEmpty());
+		assertEquals(sortedUuids(expected), sortedUuids(index.find(query)));
+	}
+
+	private static List<String> uuids(List<FileUploadMetadata> metadataList) {
+		return metadataList.stream().map(FileUploadMetadata::getUuid).collect(Collectors.toList());
+	}
+
+	private static List<String> sortedUuids(List<FileUploadMetadata> metadataList) {
+		return metadataList.stream().map(FileUploadMetadata::getUuid).sorted().collect(Collectors.toList());
+	}
+}
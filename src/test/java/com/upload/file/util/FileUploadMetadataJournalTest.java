@@ -0,0 +1,215 @@
+package com.upload.file.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileUploadMetadataJournalTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File journalFile;
+	private File snapshotFile;
+	private FileUploadMetadataJournal journal;
+
+	@Before
+	public void setUp() {
+		journalFile = new File(folder.getRoot(), "uploads.journal");
+		snapshotFile = new File(folder.getRoot(), "uploads.snapshot");
+		journal = new FileUploadMetadataJournal(journalFile, snapshotFile, 3);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		journal.close();
+	}
+
+	@Test
+	public void recoverWithoutFiles() throws IOException {
+		assertFalse(journal.recover(new FileUploadMetadataIndex()));
+	}
+
+	@Test
+	public void recoverJournal() throws IOException {
+		FileUploadMetadata first = createMetadata("a.txt");
+		first.setSize(12);
+		first.setCrc32c("0badf00d");
+		assertFalse(journal.append(first));
+		assertFalse(journal.append(createMetadata("b.txt")));
+		assertTrue(journal.append(createMetadata("c.txt")));
+		journal.close();
+
+		FileUploadMetadataIndex index = new FileUploadMetadataIndex();
+		assertTrue(reopen().recover(index));
+		assertEquals(3, index.size());
+		FileUploadMetadata recovered = index.get(first.getUuid());
+		assertEquals("a.txt", recovered.getFileName());
+		assertEquals("Poornima", recovered.getAuthorName());
+		assertEquals(LocalDate.of(2017, 6, 1), recovered.getUploadDate());
+		assertEquals(12, recovered.getSize());
+		assertEquals("0badf00d", recovered.getCrc32c());
+	}
+
+	@Test
+	public void recoverSnapshotAndJournal() throws IOException {
+		List<FileUploadMetadata> files = new ArrayList<FileUploadMetadata>();
+		for (int i = 0; i < 3; i++) {
+			FileUploadMetadata metadata = createMetadata("file" + i + ".txt");
+			files.add(metadata);
+			journal.append(metadata);
+		}
+		journal.snapshot(() -> files);
+		journal.append(createMetadata("last.txt"));
+		journal.close();
+
+		FileUploadMetadataIndex index = new FileUploadMetadataIndex();
+		assertTrue(reopen().recover(index));
+		assertEquals(4, index.size());
+	}
+
+	@Test
+	public void recoverPositionOfPackedFiles() throws IOException {
+		FileUploadMetadata packed = createMetadata("packed.txt");
+		packed.setSegment(4);
+		packed.setSegmentOffset(1000);
+		packed.setSegmentLength(250);
+		FileUploadMetadata snapshotted = createMetadata("snapshotted.txt");
+		snapshotted.setSegment(2);
+		snapshotted.setSegmentOffset(13);
+		snapshotted.setSegmentLength(42);
+		List<FileUploadMetadata> files = new ArrayList<FileUploadMetadata>();
+		files.add(snapshotted);
+		journal.snapshot(() -> files);
+		journal.append(packed);
+		journal.append(createMetadata("plain.txt"));
+		journal.close();
+
+		FileUploadMetadataIndex index = new FileUploadMetadataIndex();
+		assertTrue(reopen().recover(index));
+		assertEquals(3, index.size());
+		FileUploadMetadata recovered = index.get(packed.getUuid());
+		assertEquals(4, recovered.getSegment());
+		assertEquals(1000, recovered.getSegmentOffset());
+		assertEquals(250, recovered.getSegmentLength());
+		recovered = index.get(snapshotted.getUuid());
+		assertEquals(2, recovered.getSegment());
+		assertEquals(13, recovered.getSegmentOffset());
+		assertEquals(42, recovered.getSegmentLength());
+	}
+
+	@Test
+	public void snapshotKeepsRecordsAppendedMeanwhile() throws IOException {
+		FileUploadMetadata before = createMetadata("before.txt");
+		FileUploadMetadata during = createMetadata("during.txt");
+		journal.append(before);
+		List<FileUploadMetadata> files = new ArrayList<FileUploadMetadata>();
+		files.add(before);
+		journal.snapshot(() -> {
+			// appended by another upload after the meta data was taken
+			try {
+				journal.append(during);
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+			return files;
+		});
+		journal.close();
+
+		FileUploadMetadataIndex index = new FileUploadMetadataIndex();
+		assertTrue(reopen().recover(index));
+		assertNotNull(index.get(before.getUuid()));
+		assertNotNull(index.get(during.getUuid()));
+	}
+
+	@Test
+	public void recoverDropsTornRecordAtTheEnd() throws IOException {
+		FileUploadMetadata first = createMetadata("a.txt");
+		FileUploadMetadata second = createMetadata("b.txt");
+		journal.append(first);
+		journal.append(second);
+		journal.close();
+		long length = journalFile.length();
+		try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+			file.setLength(length - 3);
+		}
+
+		FileUploadMetadataIndex index = new FileUploadMetadataIndex();
+		journal = reopen();
+		assertTrue(journal.recover(index));
+		assertNotNull(index.get(first.getUuid()));
+		assertNull(index.get(second.getUuid()));
+
+		// the torn record is cut off, new records follow the valid ones
+		FileUploadMetadata third = createMetadata("c.txt");
+		journal.append(third);
+		journal.close();
+		index = new FileUploadMetadataIndex();
+		assertTrue(reopen().recover(index));
+		assertEquals(2, index.size());
+		assertNotNull(index.get(third.getUuid()));
+	}
+
+	@Test
+	public void recoverFailsOnCorruptRecordInTheMiddle() throws IOException {
+		journal.append(createMetadata("a.txt"));
+		journal.append(createMetadata("b.txt"));
+		journal.close();
+		// flip a byte in the payload of the first record
+		byte[] bytes = Files.readAllBytes(journalFile.toPath());
+		bytes[20] ^= 0xff;
+		Files.write(journalFile.toPath(), bytes);
+
+		assertFalse(reopen().recover(new FileUploadMetadataIndex()));
+	}
+
+	@Test
+	public void recoverFailsOnOtherVersion() throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(5);
+		header.putInt(FileUploadMetadataJournal.JOURNAL_MAGIC).put((byte) (FileUploadMetadataJournal.VERSION - 1));
+		Files.write(journalFile.toPath(), header.array());
+
+		// the caller rebuilds the index from the meta data files
+		assertFalse(journal.recover(new FileUploadMetadataIndex()));
+	}
+
+	@Test
+	public void recoverFailsOnCorruptSnapshot() throws IOException {
+		List<FileUploadMetadata> files = new ArrayList<FileUploadMetadata>();
+		files.add(createMetadata("a.txt"));
+		journal.snapshot(() -> files);
+		journal.close();
+		byte[] bytes = Files.readAllBytes(snapshotFile.toPath());
+		bytes[bytes.length - 10] ^= 0xff;
+		Files.write(snapshotFile.toPath(), bytes);
+
+		assertFalse(reopen().recover(new FileUploadMetadataIndex()));
+	}
+
+	private FileUploadMetadataJournal reopen() {
+		journal = new FileUploadMetadataJournal(journalFile, snapshotFile, 3);
+		return journal;
+	}
+
+	private static FileUploadMetadata createMetadata(String fileName) {
+		return new FileUploadMetadata(UUID.randomUUID().toString(), fileName, "Poornima", LocalDate.of(2017, 6, 1));
+	}
+}
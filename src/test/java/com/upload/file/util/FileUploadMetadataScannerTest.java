@@ -0,0 +1,129 @@
+package com.upload.file.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileUploadMetadataScannerTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final Map<String, FileUploadMetadata> files = new ConcurrentHashMap<String, FileUploadMetadata>();
+	private FileUploadMetadataScanner scanner;
+
+	@After
+	public void tearDown() {
+		if(scanner!=null) {
+			scanner.close();
+		}
+	}
+
+	@Test
+	public void scanMatchesSequentialScan() throws IOException {
+		for (int i = 0; i < 200; i++) {
+			create(UUID.randomUUID().toString(), i % 3 == 0 ? "Poornima" : "Guest");
+		}
+		scanner = new FileUploadMetadataScanner(folder.getRoot().toPath(), 4, files::get);
+		Predicate<FileUploadMetadata> filter = metadata -> "Poornima".equals(metadata.getAuthorName());
+
+		assertEquals(uuids(scanSequentially(null, false, Integer.MAX_VALUE)), uuids(scanner.scan(null, false, Integer.MAX_VALUE)));
+		assertEquals(uuids(scanSequentially(filter, false, Integer.MAX_VALUE)), uuids(scanner.scan(filter, false, Integer.MAX_VALUE)));
+		assertEquals(uuids(scanSequentially(filter, true, Integer.MAX_VALUE)), uuids(scanner.scan(filter, true, Integer.MAX_VALUE)));
+		assertEquals(uuids(scanSequentially(filter, false, 10)), uuids(scanner.scan(filter, false, 10)));
+		assertEquals(uuids(scanSequentially(null, true, 25)), uuids(scanner.scan(null, true, 25)));
+	}
+
+	@Test
+	public void scanStopsAfterLimit() throws IOException {
+		int limit = 5;
+		for (int i = 0; i < limit; i++) {
+			create(shardedUuid(0), "Poornima");
+		}
+		int later = 0;
+		for (int shard = 1; shard <= 3; shard++) {
+			for (int i = 0; i < 10; i++) {
+				create(shardedUuid(shard), "Poornima");
+				later++;
+			}
+		}
+		// the later shards wait until the first shard is read and then
+		// read slowly, so the cutoff stops them
+		CountDownLatch firstShardRead = new CountDownLatch(limit);
+		AtomicInteger laterReads = new AtomicInteger();
+		scanner = new FileUploadMetadataScanner(folder.getRoot().toPath(), 4, uuid -> {
+			if(uuid.startsWith("00")) {
+				firstShardRead.countDown();
+				return files.get(uuid);
+			}
+			try {
+				firstShardRead.await(10, TimeUnit.SECONDS);
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			laterReads.incrementAndGet();
+			return files.get(uuid);
+		});
+
+		List<FileUploadMetadata> result = scanner.scan(null, false, limit);
+
+		assertEquals(uuids(scanSequentially(null, false, limit)), uuids(result));
+		assertTrue("read " + laterReads.get() + " of " + later + " later files", laterReads.get() < later / 2);
+	}
+
+	@Test
+	public void scanOfMissingRootIsEmpty() throws IOException {
+		scanner = new FileUploadMetadataScanner(folder.getRoot().toPath().resolve("missing"), 2, files::get);
+		assertTrue(scanner.scan(null, false, Integer.MAX_VALUE).isEmpty());
+	}
+
+	private void create(String uuid, String authorName) throws IOException {
+		FileUploadMetadata metadata = new FileUploadMetadata(uuid, "file.txt", authorName, LocalDate.of(2017, 6, 1));
+		Files.createDirectories(ShardedDirectoryLayout.resolve(folder.getRoot().toPath(), uuid));
+		files.put(uuid, metadata);
+	}
+
+	private static String shardedUuid(int shard) {
+		return String.format("%02x", shard) + UUID.randomUUID().toString().substring(2);
+	}
+
+	/**
+	 * Scans the folders one by one with the walk of the layout.
+	 */
+	private List<FileUploadMetadata> scanSequentially(Predicate<FileUploadMetadata> filter, boolean descending, int limit) throws IOException {
+		List<FileUploadMetadata> matches = new ArrayList<FileUploadMetadata>();
+		ShardedDirectoryLayout.walk(folder.getRoot().toPath(), (uuid, path) -> {
+			FileUploadMetadata metadata = files.get(uuid);
+			if(filter==null || filter.test(metadata)) {
+				matches.add(metadata);
+			}
+		});
+		Comparator<FileUploadMetadata> order = Comparator.comparing(FileUploadMetadata::getUuid);
+		matches.sort(descending ? order.reversed() : order);
+		return matches.subList(0, Math.min(limit, matches.size()));
+	}
+
+	private static List<String> uuids(List<FileUploadMetadata> metadataList) {
+		return metadataList.stream().map(FileUploadMetadata::getUuid).collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,37 @@
+package com.upload.file.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.time.LocalDate;
+
+import org.junit.Test;
+
+public class FileUploadMetadataTest {
+
+	@Test
+	public void fileNameIsReducedToLastComponent() {
+		assertEquals("x", new FileUploadMetadata("../../../x", LocalDate.of(2017, 6, 1), "Poornima").getFileName());
+		assertEquals("report.pdf", FileUploadMetadata.toFileName("/etc/report.pdf"));
+		assertEquals("report.pdf", FileUploadMetadata.toFileName("C:\\Users\\Poornima\\report.pdf"));
+		assertEquals("..report", FileUploadMetadata.toFileName("..report"));
+		assertNull(FileUploadMetadata.toFileName(null));
+
+		FileUploadMetadata metadata = new FileUploadMetadata();
+		metadata.setFileName("a/../b.txt");
+		assertEquals("b.txt", metadata.getFileName());
+	}
+
+	@Test
+	public void invalidFileNamesAreRejected() {
+		for (String name : new String[] { "", ".", "..", "dir/", "dir/..", "a\0b" }) {
+			try {
+				new FileUploadMetadata(name, null, "Poornima");
+				fail("Invalid file name: " + name);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package com.upload.file.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class FileUploadRateLimiterTest {
+
+	private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+	private static final long MILLISECOND = TimeUnit.MILLISECONDS.toNanos(1);
+
+	@Test
+	public void bucketAdmitsBurstThenWaitsThenRejects() {
+		FileUploadRateLimiter.Bucket bucket = new FileUploadRateLimiter.Bucket(10, 1);
+		long now = System.nanoTime();
+
+		assertEquals(0, bucket.acquire(10, now, 0));
+		assertEquals(0, bucket.acquire(1, now, 0));
+		long rejected = bucket.acquire(1, now, 0);
+		assertTrue(rejected < 0);
+		assertEquals(100 * MILLISECOND, -rejected, MILLISECOND);
+		assertEquals(100 * MILLISECOND, bucket.acquire(1, now, 200 * MILLISECOND), MILLISECOND);
+	}
+
+	@Test
+	public void bucketRefillsOverTime() {
+		FileUploadRateLimiter.Bucket bucket = new FileUploadRateLimiter.Bucket(10, 1);
+		long now = System.nanoTime();
+
+		bucket.acquire(11, now, 0);
+		assertTrue(bucket.acquire(1, now, 0) < 0);
+		assertEquals(0, bucket.acquire(1, now + 200 * MILLISECOND, 0));
+		assertFalse(bucket.isFull(now + SECOND));
+		assertTrue(bucket.isFull(now + 2 * SECOND));
+	}
+
+	@Test
+	public void releaseReturnsTokens() {
+		FileUploadRateLimiter.Bucket bucket = new FileUploadRateLimiter.Bucket(10, 1);
+		long now = System.nanoTime();
+
+		bucket.acquire(10, now, 0);
+		bucket.acquire(5, now, SECOND);
+		bucket.release(5);
+
+		assertEquals(0, bucket.acquire(1, now, 0));
+	}
+
+	@Test
+	public void chargeIsDebt() {
+		FileUploadRateLimiter.Bucket bucket = new FileUploadRateLimiter.Bucket(10, 1);
+		long now = System.nanoTime();
+
+		bucket.charge(30, now);
+
+		long rejected = bucket.acquire(1, now, 0);
+		assertEquals(2 * SECOND, -rejected, MILLISECOND);
+		assertTrue(bucket.isFull(now + 3 * SECOND));
+	}
+
+	@Test
+	public void clientsAreLimitedSeparately() {
+		FileUploadRateLimiter limiter = new FileUploadRateLimiter();
+		limiter.setClientRequestsPerSecond(1);
+		limiter.setMaxWait(0);
+		limiter.init();
+
+		// one request and the burst of one second
+		assertEquals(0, limiter.admit("10.0.0.1", 0));
+		assertEquals(0, limiter.admit("10.0.0.1", 0));
+		assertTrue(limiter.admit("10.0.0.1", 0) < 0);
+		assertEquals(0, limiter.admit("10.0.0.2", 0));
+	}
+
+	@Test
+	public void clientBytesAreCharged() {
+		FileUploadRateLimiter limiter = new FileUploadRateLimiter();
+		limiter.setClientBytesPerSecond(1000);
+		limiter.setMaxWait(0);
+		limiter.init();
+
+		assertEquals(0, limiter.admit("10.0.0.1", 0));
+		limiter.charge("10.0.0.1", 5000);
+
+		assertTrue(limiter.admit("10.0.0.1", 1) < 0);
+		assertEquals(0, limiter.admit("10.0.0.2", 1));
+	}
+
+	@Test
+	public void clientCountIsBounded() {
+		FileUploadRateLimiter limiter = new FileUploadRateLimiter();
+		limiter.setClientBytesPerSecond(1);
+		limiter.setMaxClients(100);
+		limiter.setMaxWait(TimeUnit.DAYS.toMillis(1));
+		limiter.init();
+
+		// every client is in debt, so no bucket is full
+		for (int i = 0; i < 1000; i++) {
+			limiter.admit("10.0." + (i / 256) + "." + (i % 256), 1000);
+			assertTrue(limiter.getClientCount() <= 101);
+		}
+	}
+}
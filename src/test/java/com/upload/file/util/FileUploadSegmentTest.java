@@ -0,0 +1,135 @@
+package com.upload.file.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileUploadSegmentTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void scanReturnsAppendedRecords() throws IOException {
+		FileUploadSegment segment = FileUploadSegment.create(folder.getRoot().toPath(), 1);
+		List<FileUploadMetadata> appended = new ArrayList<FileUploadMetadata>();
+		long recordSizes = 0;
+		for (int i = 0; i < 3; i++) {
+			FileUploadMetadata metadata = createMetadata("file-" + i + ".txt");
+			byte[] recordMetadata = FileUploadSegment.toRecordMetadata(metadata);
+			byte[] data = data(i);
+			long offset = segment.append(recordMetadata, data);
+			assertEquals(segment.getSize() - data.length, offset);
+			recordSizes += FileUploadSegment.getRecordSize(recordMetadata, data);
+			appended.add(metadata);
+		}
+		assertEquals(FileUploadSegment.HEADER_SIZE + recordSizes, segment.getSize());
+
+		List<FileUploadMetadata> scanned = scan(segment);
+
+		assertEquals(3, scanned.size());
+		long scannedSizes = 0;
+		for (int i = 0; i < 3; i++) {
+			FileUploadMetadata metadata = scanned.get(i);
+			assertEquals(appended.get(i).getUuid(), metadata.getUuid());
+			assertEquals(appended.get(i).getFileName(), metadata.getFileName());
+			assertEquals(1, metadata.getSegment());
+			assertArrayEquals(data(i), FileUploadSegment.toArray(
+					segment.read(metadata.getSegmentOffset(), (int) metadata.getSegmentLength())));
+			scannedSizes += FileUploadSegment.getRecordSize(metadata);
+		}
+		assertEquals(recordSizes, scannedSizes);
+		segment.close();
+	}
+
+	@Test
+	public void sealedSegmentIsReadFromMapping() throws IOException {
+		FileUploadSegment segment = FileUploadSegment.create(folder.getRoot().toPath(), 7);
+		long offset = segment.append(FileUploadSegment.toRecordMetadata(createMetadata("a.txt")), data(1));
+		segment.seal();
+		segment.close();
+
+		FileUploadSegment opened = FileUploadSegment.open(segment.getPath());
+
+		assertEquals(7, opened.getId());
+		assertTrue(opened.isSealed());
+		assertEquals(segment.getCreated(), opened.getCreated());
+		assertArrayEquals(data(1), FileUploadSegment.toArray(opened.read(offset, data(1).length)));
+		assertEquals(1, scan(opened).size());
+		opened.close();
+	}
+
+	@Test
+	public void scanStopsAtTornRecord() throws IOException {
+		FileUploadSegment segment = FileUploadSegment.create(folder.getRoot().toPath(), 2);
+		segment.append(FileUploadSegment.toRecordMetadata(createMetadata("a.txt")), data(1));
+		segment.append(FileUploadSegment.toRecordMetadata(createMetadata("b.txt")), data(2));
+		segment.close();
+		Path path = segment.getPath();
+		try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+			file.setLength(file.length() - 3);
+		}
+
+		FileUploadSegment opened = FileUploadSegment.open(path);
+		List<FileUploadMetadata> scanned = scan(opened);
+
+		assertEquals(1, scanned.size());
+		assertEquals("a.txt", scanned.get(0).getFileName());
+		opened.close();
+	}
+
+	@Test
+	public void scanStopsAtCorruptRecord() throws IOException {
+		FileUploadSegment segment = FileUploadSegment.create(folder.getRoot().toPath(), 3);
+		long offset = segment.append(FileUploadSegment.toRecordMetadata(createMetadata("a.txt")), data(1));
+		segment.append(FileUploadSegment.toRecordMetadata(createMetadata("b.txt")), data(2));
+		segment.close();
+		try (RandomAccessFile file = new RandomAccessFile(segment.getPath().toFile(), "rw")) {
+			file.seek(offset);
+			file.write(file.read() ^ 0xff);
+		}
+
+		FileUploadSegment opened = FileUploadSegment.open(segment.getPath());
+
+		assertTrue(scan(opened).isEmpty());
+		opened.close();
+	}
+
+	@Test
+	public void parseId() {
+		assertEquals(12, FileUploadSegment.parseId("000000000012.seg"));
+		assertEquals(-1, FileUploadSegment.parseId("000000000012.tmp"));
+		assertEquals(-1, FileUploadSegment.parseId("abc.seg"));
+	}
+
+	private static List<FileUploadMetadata> scan(FileUploadSegment segment) throws IOException {
+		List<FileUploadMetadata> scanned = new ArrayList<FileUploadMetadata>();
+		segment.scan(scanned::add);
+		return scanned;
+	}
+
+	private static byte[] data(int i) {
+		StringBuilder sb = new StringBuilder();
+		for (int j = 0; j <= i * 10; j++) {
+			sb.append("record ").append(i).append(' ');
+		}
+		return sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static FileUploadMetadata createMetadata(String fileName) {
+		return new FileUploadMetadata(UUID.randomUUID().toString(), fileName, "Poornima", LocalDate.of(2017, 6, 1));
+	}
+}
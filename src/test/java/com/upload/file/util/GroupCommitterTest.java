@@ -0,0 +1,70 @@
+package com.upload.file.util;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GroupCommitterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void syncForcesFilesAndDirectories() throws IOException {
+		File journalFile = new File(folder.getRoot(), "uploads.journal");
+		FileUploadMetadataJournal journal = new FileUploadMetadataJournal(journalFile,
+				new File(folder.getRoot(), "uploads.snapshot"), 10);
+		journal.recover(new FileUploadMetadataIndex());
+		Path file = Files.write(folder.getRoot().toPath().resolve("data"), new byte[] { 1, 2, 3 });
+		GroupCommitter committer = new GroupCommitter("test-group-commit", journal);
+		try {
+			committer.sync(Arrays.asList(file, folder.getRoot().toPath()), true);
+			committer.sync(Collections.singletonList(file), false);
+			committer.sync(Collections.<Path>emptyList(), true);
+		} finally {
+			committer.close();
+			journal.close();
+		}
+	}
+
+	@Test
+	public void syncFailsAfterClose() throws IOException {
+		GroupCommitter committer = new GroupCommitter("test-group-commit", null);
+		committer.close();
+		try {
+			committer.sync(Collections.singletonList(folder.getRoot().toPath()), false);
+			fail("The committer is closed");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void closeNeverLeavesSyncWaiting() throws Exception {
+		Path directory = folder.getRoot().toPath();
+		for (int i = 0; i < 200; i++) {
+			GroupCommitter committer = new GroupCommitter("test-group-commit", null);
+			Thread syncing = new Thread(() -> {
+				try {
+					committer.sync(Collections.singletonList(directory), false);
+				} catch (IOException e) {
+					// closed before the request was queued
+				}
+			});
+			syncing.start();
+			committer.close();
+			syncing.join(10000);
+			assertFalse("sync is still waiting after close", syncing.isAlive());
+		}
+	}
+}
@@ -0,0 +1,186 @@
+package com.upload.file.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PackedDocumentDaoTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private PackedDocumentDao dao;
+
+	@Before
+	public void setUp() {
+		dao = open();
+	}
+
+	@After
+	public void tearDown() {
+		dao.close();
+	}
+
+	@Test
+	public void liveBytesCountWholeRecords() {
+		FileUploadMetadata metadata = insert(500);
+		FileUploadSegment segment = getSegment(metadata);
+
+		assertEquals(segment.getSize() - FileUploadSegment.HEADER_SIZE, segment.getLiveBytes());
+		assertEquals(FileUploadSegment.getRecordSize(dao.loadMetadata(metadata.getUuid())), segment.getLiveBytes());
+
+		dao.close();
+		dao = open();
+
+		segment = getSegment(metadata);
+		assertEquals(segment.getSize() - FileUploadSegment.HEADER_SIZE, segment.getLiveBytes());
+	}
+
+	@Test
+	public void insertAllIsAllOrNothing() {
+		FileUploadMetadata small = new FileUploadMetadata("small.txt", LocalDate.of(2017, 6, 1), "Poornima");
+		List<FileUploadSource> batch = Arrays.asList(new Source(small, data(100)), new FailingSource(2048));
+		try {
+			dao.insertAll(batch);
+			fail("The large file can not be read");
+		} catch (RuntimeException e) {
+			// expected
+		}
+
+		assertNull(dao.loadMetadata(small.getUuid()));
+		FileUploadSegment segment = dao.getSegments().iterator().next();
+		assertEquals(0, segment.getLiveBytes());
+	}
+
+	@Test
+	public void compactionMovesReferencedFiles() throws IOException {
+		FileUploadMetadata kept = insert(500);
+		byte[] keptData = dao.load(kept.getUuid()).getFileData();
+		// the record of a failed batch is not referenced
+		try {
+			dao.insertAll(Arrays.asList(new Source(new FileUploadMetadata("dead.bin", null, "Poornima"), data(1000)),
+					new FailingSource(2048)));
+			fail("The large file can not be read");
+		} catch (RuntimeException e) {
+			// expected
+		}
+		// seals the first segment
+		insert(1000);
+		FileUploadSegment first = getSegment(kept);
+		assertEquals(2, dao.getSegments().size());
+		assertEquals(FileUploadSegment.getRecordSize(dao.loadMetadata(kept.getUuid())), first.getLiveBytes());
+
+		dao.compact();
+
+		assertNotEquals(first.getId(), dao.loadMetadata(kept.getUuid()).getSegment());
+		assertArrayEquals(keptData, dao.load(kept.getUuid()).getFileData());
+
+		dao.compact();
+
+		assertFalse(Files.exists(first.getPath()));
+		assertEquals(1, dao.getSegments().size());
+		assertArrayEquals(keptData, dao.load(kept.getUuid()).getFileData());
+	}
+
+	private PackedDocumentDao open() {
+		PackedDocumentDao packed = new PackedDocumentDao();
+		packed.setDirectory(new File(folder.getRoot(), FileSystemDocumentDao.DIRECTORY).getPath());
+		packed.setJournalEnabled(false);
+		packed.setFsyncEnabled(false);
+		packed.setCompactionInterval(0);
+		packed.setMaxFileSize(1024);
+		packed.setSegmentSize(2048);
+		packed.init();
+		return packed;
+	}
+
+	private FileUploadMetadata insert(int size) {
+		FileUploadMetadata metadata = new FileUploadMetadata("file-" + size + ".bin", LocalDate.of(2017, 6, 1), "Poornima");
+		dao.insert(metadata, new ByteArrayInputStream(data(size)));
+		return metadata;
+	}
+
+	private FileUploadSegment getSegment(FileUploadMetadata metadata) {
+		long id = dao.loadMetadata(metadata.getUuid()).getSegment();
+		for (FileUploadSegment segment : dao.getSegments()) {
+			if(segment.getId() == id) {
+				return segment;
+			}
+		}
+		throw new AssertionError("No segment " + id);
+	}
+
+	private static byte[] data(int size) {
+		byte[] data = new byte[size];
+		new Random(size).nextBytes(data);
+		return data;
+	}
+
+	private static class Source implements FileUploadSource {
+
+		private final FileUploadMetadata metadata;
+		private final byte[] data;
+
+		Source(FileUploadMetadata metadata, byte[] data) {
+			this.metadata = metadata;
+			this.data = data;
+		}
+
+		@Override
+		public FileUploadMetadata getMetadata() {
+			return metadata;
+		}
+
+		@Override
+		public InputStream openStream() {
+			return new ByteArrayInputStream(data);
+		}
+	}
+
+	/**
+	 * A file larger than the packed files, which can be read only once.
+	 */
+	private static class FailingSource implements FileUploadSource {
+
+		private final FileUploadMetadata metadata = new FileUploadMetadata("large.bin", null, "Poornima");
+		private final int size;
+		private boolean opened;
+
+		FailingSource(int size) {
+			this.size = size;
+		}
+
+		@Override
+		public FileUploadMetadata getMetadata() {
+			return metadata;
+		}
+
+		@Override
+		public InputStream openStream() throws IOException {
+			if(opened) {
+				throw new IOException("Can not be read again");
+			}
+			opened = true;
+			return new ByteArrayInputStream(data(size));
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package com.upload.file.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ShardedDirectoryLayoutTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void resolveUsesPrefixesOfUuid() {
+		Path root = folder.getRoot().toPath();
+		String uuid = "abcd1234-0000-0000-0000-000000000000";
+		assertEquals(root.resolve("ab").resolve("cd").resolve(uuid), ShardedDirectoryLayout.resolve(root, uuid));
+	}
+
+	@Test
+	public void migrateMovesFlatLayout() throws IOException {
+		Path root = folder.getRoot().toPath();
+		List<String> uuids = new ArrayList<String>();
+		for (int i = 0; i < 20; i++) {
+			String uuid = UUID.randomUUID().toString();
+			Path flat = Files.createDirectory(root.resolve(uuid));
+			Files.write(flat.resolve(FileSystemDocumentDao.META_DATA_FILE_NAME), uuid.getBytes(StandardCharsets.UTF_8));
+			uuids.add(uuid);
+		}
+		// files and short names are not folders of files
+		Files.write(root.resolve("notes.txt"), new byte[] { 1 });
+		Files.createDirectory(root.resolve("tmp"));
+
+		assertEquals(uuids.size(), ShardedDirectoryLayout.migrate(root));
+
+		for (String uuid : uuids) {
+			assertFalse(Files.exists(root.resolve(uuid)));
+			Path sharded = ShardedDirectoryLayout.resolve(root, uuid);
+			assertArrayEquals(uuid.getBytes(StandardCharsets.UTF_8),
+					Files.readAllBytes(sharded.resolve(FileSystemDocumentDao.META_DATA_FILE_NAME)));
+		}
+		assertTrue(Files.exists(root.resolve("notes.txt")));
+		assertTrue(Files.isDirectory(root.resolve("tmp")));
+
+		List<String> visited = new ArrayList<String>();
+		ShardedDirectoryLayout.walk(root, (uuid, path) -> visited.add(uuid));
+		Collections.sort(uuids);
+		Collections.sort(visited);
+		assertEquals(uuids, visited);
+	}
+
+	@Test
+	public void migrateTwiceIsNoOp() throws IOException {
+		Path root = folder.getRoot().toPath();
+		String uuid = UUID.randomUUID().toString();
+		Files.createDirectory(root.resolve(uuid));
+
+		assertEquals(1, ShardedDirectoryLayout.migrate(root));
+		assertEquals(0, ShardedDirectoryLayout.migrate(root));
+		assertTrue(Files.isDirectory(ShardedDirectoryLayout.resolve(root, uuid)));
+	}
+
+	@Test
+	public void migrateMissingRoot() throws IOException {
+		assertEquals(0, ShardedDirectoryLayout.migrate(folder.getRoot().toPath().resolve("missing")));
+	}
+}